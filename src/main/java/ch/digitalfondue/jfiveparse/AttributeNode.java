@@ -88,7 +88,15 @@ public final class AttributeNode {
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, getValue(), prefix, namespace);
+        return hashCode(name, rawValue(), prefix, namespace);
+    }
+
+    // as Objects.hash(name, value, prefix, namespace), without the varargs array and without creating the value
+    static int hashCode(String name, Object value, String prefix, String namespace) {
+        int h = 31 + Objects.hashCode(name);
+        h = 31 * h + (value instanceof ResizableCharBuilder builder ? builder.contentHashCode() : Objects.hashCode(value));
+        h = 31 * h + Objects.hashCode(prefix);
+        return 31 * h + Objects.hashCode(namespace);
     }
 
     @Override
@@ -99,10 +107,23 @@ public final class AttributeNode {
 
         if (obj instanceof AttributeNode other) {
             return name.equals(other.name) && //
-                    getValue().equals(other.getValue()) && //
+                    valueEquals(rawValue(), other.rawValue()) && //
                     Objects.equals(prefix, other.prefix) && //
                     Objects.equals(namespace, other.namespace);
         }
         return false;
     }
+
+    // the value as a String or a ResizableCharBuilder
+    Object rawValue() {
+        return valueBuilder != null ? valueBuilder : value;
+    }
+
+    // compare two values, each a String or a ResizableCharBuilder
+    static boolean valueEquals(Object value1, Object value2) {
+        if (value1 instanceof ResizableCharBuilder builder1) {
+            return value2 instanceof ResizableCharBuilder builder2 ? builder1.contentEquals(builder2) : builder1.contentEquals((String) value2);
+        }
+        return value2 instanceof ResizableCharBuilder builder2 ? builder2.contentEquals((String) value1) : Objects.equals(value1, value2);
+    }
 }
@@ -19,17 +19,43 @@ import java.util.*;
 
 public final class Attributes implements Iterable<AttributeNode> {
 
-    private Map<String, AttributeNode> attributes;
+    private static final Object[] EMPTY = new Object[0];
+    // most of the elements have less attributes
+    private static final int INITIAL_CAPACITY = 4;
+
+    // above this number of attributes, the keys are found through a hash index instead of a linear scan
+    private static final int INDEX_THRESHOLD = 8;
+
+    // key and value of each attribute, interleaved, in insertion order. The value is a String (or a
+    // ResizableCharBuilder, converted on the first access) for an attribute coming from the tokenizer with the key as
+    // name and original name and with a double quoted value. It's an AttributeNode for all the others, and for the
+    // attributes whose node has been requested: the nodes are created only on demand.
+    private Object[] data = EMPTY;
+    private int size;
+    // open addressing hash table of the positions + 1, null below the threshold
+    private int[] index;
 
     public Attributes() {
     }
 
+    /**
+     * Create the attributes from the entries of the map, in its iteration order. The entries are copied: the map is
+     * not kept, and its later changes are not visible in the attributes (and the other way around). The attribute nodes
+     * are not copied, they are shared with the map.
+     *
+     * @param attributes
+     *            the attributes by key, may be null
+     */
     public Attributes(Map<String, AttributeNode> attributes) {
-        this.attributes = attributes;
+        if (attributes != null) {
+            for (Map.Entry<String, AttributeNode> e : attributes.entrySet()) {
+                set(e.getKey(), e.getValue());
+            }
+        }
     }
 
     public boolean containsKey(String key) {
-        return attributes != null && attributes.containsKey(key);
+        return indexOf(key) >= 0;
     }
 
     @Override
@@ -39,71 +65,281 @@ public final class Attributes implements Iterable<AttributeNode> {
         }
 
         if (obj instanceof Attributes a) {
-            return Objects.equals(attributes, a.attributes);
+            if (size != a.size) {
+                return false;
+            }
+            // as the equality of the maps of the nodes, whatever the order
+            for (int i = 0; i < size; i++) {
+                int j = a.indexOf(keyAt(i));
+                if (j < 0 || !nameAt(i).equals(a.nameAt(j)) || //
+                        !AttributeNode.valueEquals(rawValueAt(i), a.rawValueAt(j)) || //
+                        !Objects.equals(prefixAt(i), a.prefixAt(j)) || //
+                        !Objects.equals(namespaceAt(i), a.namespaceAt(j))) {
+                    return false;
+                }
+            }
+            return true;
         }
         return false;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(attributes);
+        // as the hash code of the map of the nodes
+        int h = 0;
+        for (int i = 0; i < size; i++) {
+            h += keyAt(i).hashCode() ^ AttributeNode.hashCode(nameAt(i), rawValueAt(i), prefixAt(i), namespaceAt(i));
+        }
+        return h;
     }
 
     public Attributes copy() {
         Attributes a = new Attributes();
-        if (attributes != null) {
-            for (var v : attributes.values()) {
-                a.put(new AttributeNode(v));
+        if (size > 0) {
+            a.data = Arrays.copyOf(data, size * 2);
+            a.size = size;
+            a.index = index == null ? null : index.clone();
+            for (int i = 1; i < size * 2; i += 2) {
+                if (a.data[i] instanceof AttributeNode node) {
+                    a.data[i] = new AttributeNode(node);
+                }
             }
-            return a;
         }
         return a;
     }
 
     public AttributeNode get(String key) {
-        return attributes == null ? null : attributes.get(key);
+        int i = indexOf(key);
+        return i < 0 ? null : nodeAt(i);
     }
 
     Set<String> keySet() {
-        return attributes == null ? Set.of() : attributes.keySet();
-    }
-
-    private void ensureMap() {
-        if (attributes == null) {
-            attributes = new LinkedHashMap<>(8);
+        Set<String> keys = new LinkedHashSet<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            keys.add(keyAt(i));
         }
+        return Collections.unmodifiableSet(keys);
     }
 
     public void put(AttributeNode attribute) {
-        ensureMap();
-        attributes.put(attribute.getName(), attribute);
+        set(attribute.getName(), attribute);
     }
 
     public void put(String key, String value) {
-        ensureMap();
-        attributes.put(key, new AttributeNode(key, value));
+        set(key, new AttributeNode(key, value));
+    }
+
+    // an attribute from the tokenizer, not yet present
+    void add(String key, String originalName, ResizableCharBuilder value, int attributeQuoteType) {
+        if (attributeQuoteType == TokenizerState.ATTRIBUTE_VALUE_DOUBLE_QUOTED_STATE && key.equals(originalName)) {
+            append(key, value);
+        } else {
+            append(key, new AttributeNode(key, originalName, value, attributeQuoteType));
+        }
+    }
+
+    private void set(String key, Object value) {
+        int i = indexOf(key);
+        if (i >= 0) {
+            data[i * 2 + 1] = value;
+        } else {
+            append(key, value);
+        }
+    }
+
+    private void append(String key, Object value) {
+        if (size * 2 == data.length) {
+            data = size == 0 ? new Object[INITIAL_CAPACITY * 2] : Arrays.copyOf(data, data.length * 2);
+        }
+        data[size * 2] = key;
+        data[size * 2 + 1] = value;
+        size++;
+        if (index != null) {
+            if (size * 2 > index.length) {
+                rebuildIndex();
+            } else {
+                addToIndex(key, size - 1);
+            }
+        } else if (size > INDEX_THRESHOLD) {
+            rebuildIndex();
+        }
     }
 
     public void remove(String key) {
-        if (attributes != null) {
-            attributes.remove(key);
+        int i = indexOf(key);
+        if (i >= 0) {
+            removeAt(i);
+        }
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(data, (i + 1) * 2, data, i * 2, (size - i - 1) * 2);
+        size--;
+        data[size * 2] = null;
+        data[size * 2 + 1] = null;
+        if (index != null) {
+            // the positions after the removed one have changed
+            if (size > INDEX_THRESHOLD) {
+                rebuildIndex();
+            } else {
+                index = null;
+            }
         }
     }
 
     public boolean isEmpty() {
-        return attributes == null || attributes.isEmpty();
+        return size == 0;
+    }
+
+    int size() {
+        return size;
     }
 
     @Override
     public Iterator<AttributeNode> iterator() {
-        return attributes == null ? Collections.emptyIterator() : attributes.values().iterator();
+        return new Iterator<>() {
+            int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public AttributeNode next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return nodeAt(next++);
+            }
+
+            @Override
+            public void remove() {
+                if (next == 0) {
+                    throw new IllegalStateException();
+                }
+                removeAt(--next);
+            }
+        };
     }
 
     public String getNamedItem(String name) {
-        if (attributes == null) {
+        int i = indexOf(name);
+        if (i < 0) {
             return null;
         }
-        AttributeNode node = attributes.get(name);
-        return node != null ? node.getValue() : null;
+        Object value = data[i * 2 + 1];
+        return value instanceof AttributeNode node ? node.getValue() : valueAt(i);
+    }
+
+    // ------------
+    // access by position, without creating the nodes
+
+    String keyAt(int i) {
+        return (String) data[i * 2];
+    }
+
+    String nameAt(int i) {
+        return data[i * 2 + 1] instanceof AttributeNode node ? node.name : keyAt(i);
+    }
+
+    private String prefixAt(int i) {
+        return data[i * 2 + 1] instanceof AttributeNode node ? node.prefix : null;
+    }
+
+    private String namespaceAt(int i) {
+        return data[i * 2 + 1] instanceof AttributeNode node ? node.namespace : null;
+    }
+
+    // the value as a String or a ResizableCharBuilder
+    private Object rawValueAt(int i) {
+        Object value = data[i * 2 + 1];
+        return value instanceof AttributeNode node ? node.rawValue() : value;
+    }
+
+    // the value of a plain attribute
+    private String valueAt(int i) {
+        Object value = data[i * 2 + 1];
+        if (value instanceof ResizableCharBuilder builder) {
+            value = builder.toString();
+            data[i * 2 + 1] = value;
+        }
+        return (String) value;
+    }
+
+    AttributeNode nodeAt(int i) {
+        Object value = data[i * 2 + 1];
+        if (value instanceof AttributeNode node) {
+            return node;
+        }
+        String key = keyAt(i);
+        AttributeNode node = new AttributeNode(key, key, null, TokenizerState.ATTRIBUTE_VALUE_DOUBLE_QUOTED_STATE);
+        node.setValue(valueAt(i));
+        data[i * 2 + 1] = node;
+        return node;
+    }
+
+    /**
+     * The node at the given position if it has already been created, or else the given node set to the plain
+     * attribute: for reading all the attributes without creating the nodes. The returned node must not be kept.
+     */
+    AttributeNode peekNodeAt(int i, AttributeNode scratch) {
+        Object value = data[i * 2 + 1];
+        if (value instanceof AttributeNode node) {
+            return node;
+        }
+        String key = keyAt(i);
+        scratch.name = key;
+        scratch.originalName = key;
+        scratch.prefix = null;
+        scratch.namespace = null;
+        scratch.attributeQuoteType = TokenizerState.ATTRIBUTE_VALUE_DOUBLE_QUOTED_STATE;
+        scratch.setValue(valueAt(i));
+        return scratch;
+    }
+
+    // ------------
+
+    private int indexOf(String key) {
+        if (index != null) {
+            int mask = index.length - 1;
+            for (int slot = spread(key.hashCode()) & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+                int i = index[slot] - 1;
+                String k = keyAt(i);
+                if (k == key || k.equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        for (int i = 0; i < size; i++) {
+            String k = keyAt(i);
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void rebuildIndex() {
+        // at most half full
+        int capacity = Integer.highestOneBit(size * 4 - 1);
+        index = new int[Math.max(32, capacity)];
+        for (int i = 0; i < size; i++) {
+            addToIndex(keyAt(i), i);
+        }
+    }
+
+    private void addToIndex(String key, int i) {
+        int mask = index.length - 1;
+        int slot = spread(key.hashCode()) & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = i + 1;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
     }
 }
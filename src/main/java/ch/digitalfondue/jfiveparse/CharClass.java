@@ -0,0 +1,78 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+/**
+ * Character classes used by the tokenizer, precomputed in a table for the ASCII range and {@link Characters#EOF}.
+ *
+ * A class is a bit: a character can be tested against one or more classes with a single lookup. Characters outside the
+ * ASCII range don't belong to any class.
+ */
+final class CharClass {
+
+    // tab, LF, FF, CR, space
+    static final int WHITESPACE = 1;
+    static final int UPPER_CASE_LETTER = 1 << 1;
+    static final int LOWER_CASE_LETTER = 1 << 2;
+    static final int DIGIT = 1 << 3;
+    // a-f, A-F
+    static final int HEX_LETTER = 1 << 4;
+    // characters that end the tag name in readUntilTagName
+    static final int TAG_NAME_STOP = 1 << 5;
+    // characters that end the attribute name in readUntilAttributeName
+    static final int ATTRIBUTE_NAME_STOP = 1 << 6;
+    // characters that end the unquoted attribute value in readUntilAttributeValueUnquoted
+    static final int ATTRIBUTE_VALUE_UNQUOTED_STOP = 1 << 7;
+
+    static final int LETTER = UPPER_CASE_LETTER | LOWER_CASE_LETTER;
+    static final int ALPHANUMERIC = LETTER | DIGIT;
+    static final int HEX_DIGIT = DIGIT | HEX_LETTER;
+
+    // indexed by character + 1, EOF being -1
+    private static final short[] CLASSES = new short[129];
+
+    static {
+        add(WHITESPACE | TAG_NAME_STOP | ATTRIBUTE_NAME_STOP | ATTRIBUTE_VALUE_UNQUOTED_STOP, Characters.TAB, Characters.LF, Characters.FF, Characters.CR, Characters.SPACE);
+        add(TAG_NAME_STOP | ATTRIBUTE_NAME_STOP | ATTRIBUTE_VALUE_UNQUOTED_STOP, Characters.GREATERTHAN_SIGN, Characters.NULL, Characters.EOF);
+        add(TAG_NAME_STOP | ATTRIBUTE_NAME_STOP, Characters.SOLIDUS);
+        add(ATTRIBUTE_NAME_STOP | ATTRIBUTE_VALUE_UNQUOTED_STOP, Characters.EQUALS_SIGN, Characters.QUOTATION_MARK, Characters.APOSTROPHE, Characters.LESSTHAN_SIGN);
+        add(ATTRIBUTE_VALUE_UNQUOTED_STOP, Characters.AMPERSAND, Characters.GRAVE_ACCENT);
+        for (int c = 'A'; c <= 'Z'; c++) {
+            add(UPPER_CASE_LETTER | (c <= 'F' ? HEX_LETTER : 0), c);
+            add(LOWER_CASE_LETTER | (c <= 'F' ? HEX_LETTER : 0), c + ('a' - 'A'));
+        }
+        for (int c = '0'; c <= '9'; c++) {
+            add(DIGIT, c);
+        }
+    }
+
+    private CharClass() {
+    }
+
+    private static void add(int classes, int... chars) {
+        for (int c : chars) {
+            CLASSES[c + 1] |= (short) classes;
+        }
+    }
+
+    /**
+     * Return true if chr (a character or {@link Characters#EOF}) belongs to at least one of the given classes. Any other
+     * value doesn't belong to any class.
+     */
+    static boolean is(int chr, int classes) {
+        return chr >= Characters.EOF && chr < 128 && (CLASSES[chr + 1] & classes) != 0;
+    }
+}
@@ -53,25 +53,23 @@ final class Common {
     }
 
     static boolean isUpperOrLowerCaseASCIILetter(int chr) {
-        return (chr >= Characters.LATIN_SMALL_LETTER_A && chr <= Characters.LATIN_SMALL_LETTER_Z) || isUpperCaseASCIILetter(chr);
+        return CharClass.is(chr, CharClass.LETTER);
     }
 
     static boolean isUpperCaseASCIILetter(int chr) {
-        return chr >= Characters.LATIN_CAPITAL_LETTER_A && chr <= Characters.LATIN_CAPITAL_LETTER_Z;
+        return CharClass.is(chr, CharClass.UPPER_CASE_LETTER);
     }
 
     static boolean isASCIIHexDigit(int chr) {
-        return (chr >= 0x0030 && chr <= 0x0039) || //
-                (chr >= 0x0041 && chr <= 0x0046) || //
-                (chr >= 0x0061 && chr <= 0x0066);//
+        return CharClass.is(chr, CharClass.HEX_DIGIT);
     }
 
     static boolean isASCIIDigit(int chr) {
-        return chr >= 0x0030 && chr <= 0x0039;
+        return CharClass.is(chr, CharClass.DIGIT);
     }
 
     static boolean isAlphaNumericASCII(int chr) {
-        return isUpperOrLowerCaseASCIILetter(chr) || isASCIIDigit(chr);
+        return CharClass.is(chr, CharClass.ALPHANUMERIC);
     }
 
     static final char[] SYSTEM = new char[] {'s', 'y', 's', 't', 'e', 'm'}; //system
@@ -169,12 +167,13 @@ final class Common {
             return;
         }
         ArrayList<String> toAdjust = null;
-        for (AttributeNode attr : attrs) {
-            if (SVG_ATTRIBUTES.containsKey(attr.name)) {
+        for (int i = 0; i < attrs.size(); i++) {
+            String name = attrs.nameAt(i);
+            if (SVG_ATTRIBUTES.containsKey(name)) {
                 if (toAdjust == null) {
                     toAdjust = new ArrayList<>(4);
                 }
-                toAdjust.add(attr.name);
+                toAdjust.add(name);
             }
         }
         if (toAdjust != null) {
@@ -209,12 +208,13 @@ final class Common {
         }
 
         ArrayList<String> toAdjust = null;
-        for (AttributeNode attr : attrs) {
-            if (FOREIGN_ATTRIBUTES_TO_ADJUST.containsKey(attr.name)) {
+        for (int i = 0; i < attrs.size(); i++) {
+            String name = attrs.nameAt(i);
+            if (FOREIGN_ATTRIBUTES_TO_ADJUST.containsKey(name)) {
                 if (toAdjust == null) {
                     toAdjust = new ArrayList<>(4);
                 }
-                toAdjust.add(attr.name);
+                toAdjust.add(name);
             }
         }
 
@@ -294,7 +294,7 @@ final class Common {
     // carriage return
     // space
     static boolean isTabLfFfCrOrSpace(int chr) {
-        return chr == Characters.TAB || chr == Characters.LF || chr == Characters.FF || chr == Characters.CR || chr == Characters.SPACE;
+        return CharClass.is(chr, CharClass.WHITESPACE);
     }
 
     static boolean isStartTagNamed(int tokenType, int namedID, int tagNameID) {
@@ -547,6 +547,8 @@ final class Common {
     static final int ELEMENT_SUB_ID = 110;
     static final int ELEMENT_SUP_ID = 111;
     static final int ELEMENT_VAR_ID = 112;
+    // number of ids, 0 included: keep it after the last one
+    static final int ELEMENT_ID_COUNT = 113;
 
     static boolean isSpecialCategory(Element element) {
     	String nodeName = element.nodeName;
@@ -54,6 +54,34 @@ public final class Document extends Node {
         return doctype;
     }
 
+    /**
+     * Return a read-only copy of this document, with a compact representation. The copy does not follow the
+     * changes made to this document afterwards.
+     *
+     * @return
+     */
+    public FrozenDocument freeze() {
+        return freeze(false);
+    }
+
+    /**
+     * Return a read-only copy of this document, see {@link #freeze()}. If offHeap is true, the copy is stored outside
+     * of the garbage collected heap, and {@link FrozenDocument#close()} releases it.
+     *
+     * On Java 22 and later, the copy is a memory segment, freed by {@link FrozenDocument#close()}. On the earlier
+     * versions, it is a direct buffer of at most 2GB, that counts against the direct memory limit of the JVM
+     * ({@code -XX:MaxDirectMemorySize}, by default the maximum heap size): past it, an {@link OutOfMemoryError} is
+     * thrown. A direct buffer can't be freed explicitly, the memory is released by its cleaner only after the buffer
+     * has been garbage collected: many short lived off-heap copies can exhaust the direct memory before a collection
+     * happens. Use it for the copies that are kept for a long time, like the entries of a cache.
+     *
+     * @param offHeap
+     * @return
+     */
+    public FrozenDocument freeze(boolean offHeap) {
+        return new FrozenDocument(this, offHeap);
+    }
+
     public Element getDocumentElement() {
         return getFirstElementChild();
     }
@@ -114,8 +142,8 @@ public final class Document extends Node {
         if (!deep) {
             return cloned;
         }
-        for (Node child : childNodes) {
-            Node clonedChild = child.cloneNode(true);
+        for (int i = 0; i < childNodes.size(); i++) {
+            Node clonedChild = childNodes.get(i).cloneNode(true);
             clonedChild.parentNode = cloned;
             cloned.childNodes.add(clonedChild);
         }
@@ -0,0 +1,153 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * A {@link Flow.Subscriber} parsing the received bytes with an
+ * {@link IncrementalSession}. The buffers are requested one at a time: the
+ * next one is requested only when the previous one has been parsed, so no
+ * thread is ever blocked waiting for the input.
+ * 
+ * The parsed document is available through {@link #getDocument()}. Cancelling
+ * the returned future cancels the subscription.
+ * 
+ * For a publisher of {@code List<ByteBuffer>}, like the ones used by
+ * {@code java.net.http.HttpResponse.BodySubscribers}, use
+ * {@link #forLists()}. Use {@link Parser#newDocumentSubscriber()} for
+ * creating a subscriber. A subscriber can be subscribed only once.
+ */
+public final class DocumentSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+    private final IncrementalSession session;
+    private final CompletableFuture<Document> document = new CompletableFuture<>();
+    private volatile Flow.Subscription subscription;
+
+    DocumentSubscriber(IncrementalSession session) {
+        this.session = session;
+        document.whenComplete((doc, t) -> {
+            if (document.isCancelled()) {
+                cancelSubscription();
+            }
+        });
+    }
+
+    /**
+     * @return the future completed with the parsed {@link Document} when the
+     *         publisher completes, or exceptionally if the publisher or the
+     *         parser fails.
+     */
+    public CompletableFuture<Document> getDocument() {
+        return document;
+    }
+
+    /**
+     * @return a view of this subscriber accepting lists of buffers. All the
+     *         buffers of a list are parsed before requesting the next one.
+     */
+    public Flow.Subscriber<List<ByteBuffer>> forLists() {
+        return new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                DocumentSubscriber.this.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> items) {
+                Objects.requireNonNull(items);
+                if (feed(items)) {
+                    subscription.request(1);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                DocumentSubscriber.this.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                DocumentSubscriber.this.onComplete();
+            }
+        };
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if (this.subscription != null || document.isDone()) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        Objects.requireNonNull(item);
+        if (feed(List.of(item))) {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        Objects.requireNonNull(throwable);
+        document.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (document.isDone()) {
+            return;
+        }
+        try {
+            document.complete(session.finish());
+        } catch (RuntimeException e) {
+            document.completeExceptionally(e);
+        }
+    }
+
+    // return true if more input can be requested
+    private boolean feed(List<ByteBuffer> items) {
+        if (document.isDone()) {
+            return false;
+        }
+        try {
+            for (ByteBuffer item : items) {
+                session.feed(item);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            cancelSubscription();
+            document.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    private void cancelSubscription() {
+        Flow.Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+    }
+}
@@ -28,6 +28,11 @@ public final class Element extends Node implements SelectableNode.SelectableElem
     final int namespaceID;
     final int nodeNameID;
     Attributes attributes;
+    // state of the tree constructor building it: the position in the stack of open elements (only meaningful while
+    // the element is in the stack, see TreeConstructor.openElementsIndexOf) and the entry in the list of active
+    // formatting elements (cleared at the end of the parsing)
+    int openElementsIndex;
+    TreeConstructorActiveFormattingElements.Entry formattingEntry;
 
     private List<Node> childNodes = null;
 
@@ -103,6 +108,19 @@ public final class Element extends Node implements SelectableNode.SelectableElem
         return childNodes;
     }
 
+    // move all the children, with their list, to an element without children
+    void moveChildrenTo(Element target) {
+        List<Node> childs = childNodes;
+        if (childs == null) {
+            return;
+        }
+        childNodes = null;
+        for (int i = 0; i < childs.size(); i++) {
+            childs.get(i).parentNode = target;
+        }
+        target.childNodes = childs;
+    }
+
     @Override
     public int getNodeType() {
         return ELEMENT_NODE;
@@ -166,7 +184,9 @@ public final class Element extends Node implements SelectableNode.SelectableElem
                 }
                 node.parentNode = parentNode;
                 List<Node> parentChildNodes = parentNode.getMutableChildNodes();
-                parentChildNodes.addAll(parentChildNodes.indexOf(this) + 1, Collections.singletonList(node));
+                int idx = indexIn(parentChildNodes) + 1;
+                parentChildNodes.addAll(idx, Collections.singletonList(node));
+                updateSiblingIndexes(parentChildNodes, idx);
                 break;
             default:
                 throw new ParserException("The position provided ('" + position + "') is not one of 'beforeBegin', 'afterBegin', 'beforeEnd', or 'afterEnd'.");
@@ -217,7 +237,9 @@ public final class Element extends Node implements SelectableNode.SelectableElem
                     node.parentNode = parentNode;
                 }
                 List<Node> parentChildNodes = parentNode.getMutableChildNodes();
-                parentChildNodes.addAll(parentChildNodes.indexOf(this) + 1, newNodeList);
+                int idx = indexIn(parentChildNodes) + 1;
+                parentChildNodes.addAll(idx, newNodeList);
+                updateSiblingIndexes(parentChildNodes, idx);
                 break;
             default:
                 throw new ParserException("The position provided ('" + position + "') is not one of 'beforeBegin', 'afterBegin', 'beforeEnd', or 'afterEnd'.");
@@ -349,9 +371,10 @@ public final class Element extends Node implements SelectableNode.SelectableElem
             return clone;
         }
         if (childNodes != null) {
-            clone.childNodes = new ArrayList<>(childNodes.size());
-            for (Node node : childNodes) {
-                Node clonedChild = node.cloneNode(true);
+            int count = childNodes.size();
+            clone.childNodes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Node clonedChild = childNodes.get(i).cloneNode(true);
                 clonedChild.parentNode = clone;
                 clone.childNodes.add(clonedChild);
             }
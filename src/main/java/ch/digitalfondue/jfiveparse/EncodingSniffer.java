@@ -0,0 +1,372 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Implement the encoding sniffing algorithm as described in
+ * <a href="https://html.spec.whatwg.org/multipage/parsing.html#encoding-sniffing-algorithm">https://html.spec.whatwg.org/multipage/parsing.html#encoding-sniffing-algorithm</a>.
+ *
+ * The BOM is checked first, then the first {@link #PRESCAN_LENGTH} bytes are prescanned for a meta element declaring the
+ * encoding. If nothing is found, UTF-8 is used.
+ */
+final class EncodingSniffer {
+
+    static final int PRESCAN_LENGTH = 1024;
+
+    static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    // labels where the encoding standard differ from the java charset aliases
+    private static final Map<String, String> LABELS = new HashMap<>();
+
+    static {
+        for (String label : new String[] { "ansi_x3.4-1968", "ascii", "cp1252", "cp819", "csisolatin1", "ibm819", "iso-8859-1", "iso-ir-100", "iso8859-1", "iso88591",
+                "iso_8859-1", "iso_8859-1:1987", "l1", "latin1", "us-ascii", "windows-1252", "x-cp1252" }) {
+            LABELS.put(label, "windows-1252");
+        }
+        for (String label : new String[] { "cp1254", "csisolatin5", "iso-8859-9", "iso-ir-148", "iso8859-9", "iso88599", "iso_8859-9", "iso_8859-9:1989", "l5", "latin5",
+                "windows-1254", "x-cp1254" }) {
+            LABELS.put(label, "windows-1254");
+        }
+        for (String label : new String[] { "dos-874", "iso-8859-11", "iso8859-11", "iso885911", "tis-620", "windows-874" }) {
+            LABELS.put(label, "x-windows-874");
+        }
+        for (String label : new String[] { "chinese", "csgb2312", "csiso58gb231280", "gb2312", "gb_2312", "gb_2312-80", "gbk", "iso-ir-58", "x-gbk" }) {
+            LABELS.put(label, "GBK");
+        }
+        for (String label : new String[] { "cseuckr", "csksc56011987", "euc-kr", "iso-ir-149", "korean", "ks_c_5601-1987", "ks_c_5601-1989", "ksc5601", "ksc_5601",
+                "windows-949" }) {
+            LABELS.put(label, "x-windows-949");
+        }
+        for (String label : new String[] { "csshiftjis", "ms932", "ms_kanji", "shift-jis", "shift_jis", "sjis", "windows-31j", "x-sjis" }) {
+            LABELS.put(label, "windows-31j");
+        }
+        for (String label : new String[] { "big5", "big5-hkscs", "cn-big5", "csbig5", "x-x-big5" }) {
+            LABELS.put(label, "Big5-HKSCS");
+        }
+        for (String label : new String[] { "unicode-1-1-utf-8", "unicode11utf8", "unicode20utf8", "utf-8", "utf8", "x-unicode20utf8" }) {
+            LABELS.put(label, "UTF-8");
+        }
+        for (String label : new String[] { "csunicode", "iso-10646-ucs-2", "ucs-2", "unicode", "unicodefeff", "utf-16", "utf-16le" }) {
+            LABELS.put(label, "UTF-16LE");
+        }
+        for (String label : new String[] { "unicodefffe", "utf-16be" }) {
+            LABELS.put(label, "UTF-16BE");
+        }
+        LABELS.put("x-user-defined", "x-user-defined");
+    }
+
+    private EncodingSniffer() {
+    }
+
+    /**
+     * Return the length of the BOM at the current position of the buffer, or 0 if there is none.
+     */
+    static int bomLength(ByteBuffer bytes) {
+        int p = bytes.position();
+        int remaining = bytes.remaining();
+        if (remaining >= 3 && (bytes.get(p) & 0xFF) == 0xEF && (bytes.get(p + 1) & 0xFF) == 0xBB && (bytes.get(p + 2) & 0xFF) == 0xBF) {
+            return 3;
+        }
+        if (remaining >= 2 && (((bytes.get(p) & 0xFF) == 0xFE && (bytes.get(p + 1) & 0xFF) == 0xFF) || ((bytes.get(p) & 0xFF) == 0xFF && (bytes.get(p + 1) & 0xFF) == 0xFE))) {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Detect the encoding of the buffer, starting at its current position. If a BOM is present, the position of the
+     * buffer is moved after it.
+     */
+    static Charset sniff(ByteBuffer bytes) {
+        int bom = bomLength(bytes);
+        if (bom > 0) {
+            int b = bytes.get(bytes.position()) & 0xFF;
+            bytes.position(bytes.position() + bom);
+            return b == 0xEF ? StandardCharsets.UTF_8 : (b == 0xFE ? StandardCharsets.UTF_16BE : StandardCharsets.UTF_16LE);
+        }
+        Charset charset = prescan(bytes, bytes.position(), Math.min(bytes.limit(), bytes.position() + PRESCAN_LENGTH));
+        return charset != null ? charset : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * See <a href="https://html.spec.whatwg.org/multipage/parsing.html#prescan-a-byte-stream-to-determine-its-encoding">https://html.spec.whatwg.org/multipage/parsing.html#prescan-a-byte-stream-to-determine-its-encoding</a>.
+     *
+     * @return the detected charset or null
+     */
+    static Charset prescan(ByteBuffer bytes, int start, int end) {
+        Prescanner p = new Prescanner(bytes, start, end);
+        while (p.pos < end) {
+            if (p.matches("<!--")) {
+                // the "--" of the comment start can be the end too
+                int i = p.pos + 4;
+                while (i < end && !(bytes.get(i) == '>' && bytes.get(i - 1) == '-' && bytes.get(i - 2) == '-')) {
+                    i++;
+                }
+                p.pos = i;
+            } else if (p.matchesIgnoreCase("<meta") && p.pos + 5 < end && isWhitespaceOrSolidus(bytes.get(p.pos + 5))) {
+                p.pos += 6;
+                Charset charset = p.meta();
+                if (charset != null) {
+                    return charset;
+                }
+            } else if (p.byteAt(0) == '<' && (isAsciiLetter(p.byteAt(1)) || (p.byteAt(1) == '/' && isAsciiLetter(p.byteAt(2))))) {
+                while (p.pos < end && !isWhitespace(bytes.get(p.pos)) && bytes.get(p.pos) != '>') {
+                    p.pos++;
+                }
+                while (p.attribute()) {
+                    // skip
+                }
+            } else if (p.matches("<!") || p.matches("</") || p.matches("<?")) {
+                while (p.pos < end && bytes.get(p.pos) != '>') {
+                    p.pos++;
+                }
+            }
+            p.pos++;
+        }
+        return null;
+    }
+
+    private static final class Prescanner {
+        private final ByteBuffer bytes;
+        private final int end;
+        private int pos;
+        private final StringBuilder name = new StringBuilder();
+        private final StringBuilder value = new StringBuilder();
+
+        Prescanner(ByteBuffer bytes, int start, int end) {
+            this.bytes = bytes;
+            this.pos = start;
+            this.end = end;
+        }
+
+        int byteAt(int offset) {
+            int i = pos + offset;
+            return i < end ? bytes.get(i) : -1;
+        }
+
+        boolean matches(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                if (byteAt(i) != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean matchesIgnoreCase(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                if (Common.toLowerCase(byteAt(i)) != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Charset meta() {
+            boolean gotPragma = false;
+            // 0: null, 1: true, 2: false
+            int needPragma = 0;
+            Charset charset = null;
+            Set<String> attributes = new HashSet<>();
+            while (attribute()) {
+                String attributeName = name.toString();
+                if (!attributes.add(attributeName)) {
+                    continue;
+                }
+                if ("http-equiv".equals(attributeName)) {
+                    gotPragma = gotPragma || "content-type".contentEquals(value);
+                } else if ("content".equals(attributeName) && charset == null) {
+                    Charset fromContent = extractFromMetaContent(value);
+                    if (fromContent != null) {
+                        charset = fromContent;
+                        needPragma = 1;
+                    }
+                } else if ("charset".equals(attributeName)) {
+                    charset = getEncoding(value);
+                    needPragma = 2;
+                }
+            }
+            if (needPragma == 0 || (needPragma == 1 && !gotPragma) || charset == null) {
+                return null;
+            }
+            if (charset == StandardCharsets.UTF_16BE || charset == StandardCharsets.UTF_16LE) {
+                return StandardCharsets.UTF_8;
+            }
+            return charset;
+        }
+
+        /**
+         * See <a href="https://html.spec.whatwg.org/multipage/parsing.html#concept-get-attributes-when-sniffing">https://html.spec.whatwg.org/multipage/parsing.html#concept-get-attributes-when-sniffing</a>.
+         *
+         * @return true if an attribute has been found, the name and value are then available in the respective fields.
+         */
+        boolean attribute() {
+            name.setLength(0);
+            value.setLength(0);
+            while (pos < end && isWhitespaceOrSolidus(bytes.get(pos))) {
+                pos++;
+            }
+            if (pos >= end || bytes.get(pos) == '>') {
+                return false;
+            }
+            // name
+            for (;; pos++) {
+                if (pos >= end) {
+                    return false;
+                }
+                byte b = bytes.get(pos);
+                if (b == '=' && name.length() > 0) {
+                    pos++;
+                    break;
+                } else if (isWhitespace(b)) {
+                    while (pos < end && isWhitespace(bytes.get(pos))) {
+                        pos++;
+                    }
+                    if (pos >= end) {
+                        return false;
+                    }
+                    if (bytes.get(pos) != '=') {
+                        return true;
+                    }
+                    pos++;
+                    break;
+                } else if (b == '/' || b == '>') {
+                    return true;
+                } else {
+                    name.append((char) Common.toLowerCase(b & 0xFF));
+                }
+            }
+            // value
+            while (pos < end && isWhitespace(bytes.get(pos))) {
+                pos++;
+            }
+            if (pos >= end) {
+                return false;
+            }
+            byte b = bytes.get(pos);
+            if (b == '"' || b == '\'') {
+                for (pos++; pos < end; pos++) {
+                    byte c = bytes.get(pos);
+                    if (c == b) {
+                        pos++;
+                        return true;
+                    }
+                    value.append((char) Common.toLowerCase(c & 0xFF));
+                }
+                return false;
+            } else if (b == '>') {
+                return true;
+            }
+            for (; pos < end; pos++) {
+                byte c = bytes.get(pos);
+                if (isWhitespace(c) || c == '>') {
+                    return true;
+                }
+                value.append((char) Common.toLowerCase(c & 0xFF));
+            }
+            return false;
+        }
+    }
+
+    /**
+     * See <a href="https://html.spec.whatwg.org/multipage/urls-and-fetching.html#algorithm-for-extracting-a-character-encoding-from-a-meta-element">https://html.spec.whatwg.org/multipage/urls-and-fetching.html#algorithm-for-extracting-a-character-encoding-from-a-meta-element</a>.
+     * The content is expected to be already in lower case.
+     */
+    static Charset extractFromMetaContent(CharSequence content) {
+        String s = content.toString();
+        int pos = 0;
+        for (;;) {
+            int idx = s.indexOf("charset", pos);
+            if (idx == -1) {
+                return null;
+            }
+            pos = skipWhitespace(s, idx + 7);
+            if (pos < s.length() && s.charAt(pos) == '=') {
+                pos = skipWhitespace(s, pos + 1);
+                break;
+            }
+        }
+        if (pos >= s.length()) {
+            return null;
+        }
+        char c = s.charAt(pos);
+        if (c == '"' || c == '\'') {
+            int endQuote = s.indexOf(c, pos + 1);
+            return endQuote == -1 ? null : getEncoding(s.substring(pos + 1, endQuote));
+        }
+        int end = pos;
+        while (end < s.length() && !Common.isTabLfFfCrOrSpace(s.charAt(end)) && s.charAt(end) != ';') {
+            end++;
+        }
+        return getEncoding(s.substring(pos, end));
+    }
+
+    private static int skipWhitespace(String s, int pos) {
+        while (pos < s.length() && Common.isTabLfFfCrOrSpace(s.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * See <a href="https://encoding.spec.whatwg.org/#concept-encoding-get">https://encoding.spec.whatwg.org/#concept-encoding-get</a>.
+     * The x-user-defined encoding is mapped to windows-1252, as done by the prescan algorithm.
+     *
+     * @return the charset or null if the label is not supported
+     */
+    static Charset getEncoding(CharSequence label) {
+        String l = label.toString().strip().toLowerCase(Locale.ROOT);
+        String name = LABELS.getOrDefault(l, l);
+        if ("x-user-defined".equals(name)) {
+            return WINDOWS_1252;
+        }
+        if ("UTF-8".equals(name)) {
+            return StandardCharsets.UTF_8;
+        } else if ("UTF-16LE".equals(name)) {
+            return StandardCharsets.UTF_16LE;
+        } else if ("UTF-16BE".equals(name)) {
+            return StandardCharsets.UTF_16BE;
+        }
+        try {
+            return Charset.isSupported(name) ? Charset.forName(name) : null;
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return null;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == 0x09 || b == 0x0A || b == 0x0C || b == 0x0D || b == 0x20;
+    }
+
+    private static boolean isWhitespaceOrSolidus(byte b) {
+        return isWhitespace(b) || b == 0x2F;
+    }
+
+    private static boolean isAsciiLetter(int b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Trie of the named character references, flattened in breadth first order: the children of a node are contiguous
+ * and sorted by label, so a node is only an index in a few arrays and a lookup is a binary search in a range of
+ * {@link #labels}.
+ *
+ * The arrays are stored as they are, in big endian order, in the file "entities-trie" in the classpath, generated by
+ * GenerateEntities in the test directory: loading them is a few bulk copies. The file is not compressed, as the jar
+ * already is.
+ *
+ * This class is initialized only when the first named character reference is found ({@link #MAX_REPLACEMENT_LENGTH}
+ * is a constant), so documents without any do not pay for loading the table.
+ */
+final class Entities {
+
+    static final Entities ENTITIES = load("/ch/digitalfondue/jfiveparse/entities-trie");
+
+    static final int ROOT = 0;
+
+    // the characters of a replacement, at most 2 code points
+    static final int MAX_REPLACEMENT_LENGTH = 4;
+
+    // label of each node, the root has none
+    private final char[] labels;
+    // the children of the node n are the nodes from firstChild[n] (inclusive) to firstChild[n + 1] (exclusive)
+    private final int[] firstChild;
+    // 0 if the node does not complete a name, else (offset << 3) | length in replacements
+    private final int[] values;
+    private final char[] replacements;
+
+    private Entities(char[] labels, int[] firstChild, int[] values, char[] replacements) {
+        this.labels = labels;
+        this.firstChild = firstChild;
+        this.values = values;
+        this.replacements = replacements;
+    }
+
+    private static Entities load(String resource) {
+        try (InputStream is = Entities.class.getResourceAsStream(resource)) {
+            return read(ByteBuffer.wrap(is.readAllBytes()));
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    static Entities read(ByteBuffer buffer) {
+        int nodeCount = buffer.getInt();
+        int replacementsLength = buffer.getInt();
+        char[] labels = new char[nodeCount];
+        int[] firstChild = new int[nodeCount + 1];
+        int[] values = new int[nodeCount];
+        char[] replacements = new char[replacementsLength];
+
+        buffer.asCharBuffer().get(labels);
+        buffer.position(buffer.position() + nodeCount * 2);
+        // stored as the number of children of each node
+        firstChild[0] = 1;
+        for (int i = 0; i < nodeCount; i++) {
+            firstChild[i + 1] = firstChild[i] + (buffer.get() & 0xFF);
+        }
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + nodeCount * 4);
+        buffer.asCharBuffer().get(replacements);
+        return new Entities(labels, firstChild, values, replacements);
+    }
+
+    /**
+     * @return the child of node with the given label, or -1
+     */
+    int child(int node, int chr) {
+        int from = firstChild[node];
+        int to = firstChild[node + 1];
+        if (chr < 0 || from == to) {
+            return -1;
+        }
+        int idx = Arrays.binarySearch(labels, from, to, (char) chr);
+        return idx < 0 ? -1 : idx;
+    }
+
+    char label(int node) {
+        return labels[node];
+    }
+
+    boolean isComplete(int node) {
+        return values[node] != 0;
+    }
+
+    /**
+     * Copy the replacement of a complete node in dest.
+     *
+     * @return the number of characters copied
+     */
+    int copyReplacement(int node, char[] dest) {
+        int value = values[node];
+        int length = value & 7;
+        System.arraycopy(replacements, value >>> 3, dest, 0, length);
+        return length;
+    }
+}
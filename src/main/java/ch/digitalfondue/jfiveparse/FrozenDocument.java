@@ -0,0 +1,859 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * A read-only copy of a {@link Document}, see {@link Document#freeze()}.
+ *
+ * The tree is stored as a struct of arrays: the nodes are numbered in tree order (the document itself is the node 0)
+ * and linked by their positions, the names are shared in a string pool, and the text, comment and attribute values
+ * are slices of a single buffer, one byte per char when they are all in the Latin-1 range. The nodes are handles created on access, as {@link FrozenNode} and
+ * {@link FrozenElement}, that can be queried with a {@link FrozenSelector} and serialized with the
+ * {@link HtmlSerializer}.
+ *
+ * The node and attribute tables and the chars can be stored off-heap: large documents, or large caches of documents,
+ * are then kept outside of the garbage collected heap. On Java 22 and later, the memory is freed by {@link #close()}.
+ * See {@link Document#freeze(boolean)} for the limits of the off-heap memory.
+ */
+public final class FrozenDocument implements AutoCloseable {
+
+    private static final int NONE = -1;
+
+    // the columns of the node table. The last child and the previous sibling are not stored: in tree order, the node
+    // before a node is its parent or the last descendant of its previous sibling
+    private static final int TYPE = 0;
+    private static final int PARENT = 1;
+    private static final int FIRST_CHILD = 2;
+    private static final int NEXT_SIBLING = 3;
+    // element: name, doctype: name, processing instruction: target
+    private static final int NAME = 4;
+    // text, comment, processing instruction: slice of the chars (length NONE for a null value)
+    // element: position in the element table and number of attributes
+    private static final int DATA_START = 5;
+    private static final int DATA_LENGTH = 6;
+    private static final int NODE_COLUMNS = 7;
+
+    // the columns of the element table
+    private static final int NAMESPACE = 0;
+    private static final int ORIGINAL_NAME = 1;
+    private static final int FIRST_ATTRIBUTE = 2;
+    private static final int ELEMENT_COLUMNS = 3;
+
+    // the columns of the attribute table
+    // the key in the attributes of the element, that is the name before the adjustments for svg and mathml
+    private static final int KEY = 0;
+    private static final int ATTRIBUTE_NAME = 1;
+    private static final int ATTRIBUTE_ORIGINAL_NAME = 2;
+    private static final int PREFIX = 3;
+    private static final int ATTRIBUTE_NAMESPACE = 4;
+    private static final int VALUE_START = 5;
+    private static final int VALUE_LENGTH = 6;
+    private static final int QUOTE_TYPE = 7;
+    private static final int ATTRIBUTE_COLUMNS = 8;
+
+    private final int nodeCount;
+    private final int elementCount;
+    private final int attributeCount;
+
+    // the tables, column after column, and the chars: in bytes if they are all in the Latin-1 range, otherwise in
+    // UTF-16. On the heap in the arrays, or off-heap one after the other in the memory, at the offsets
+    private final boolean latin1;
+    private final int[] nodes;
+    private final int[] elements;
+    private final int[] attributes;
+    private final byte[] bytes;
+    private final char[] chars;
+    private final OffHeapMemory memory;
+    private final long elementsOffset;
+    private final long attributesOffset;
+    private final long charsOffset;
+
+    // names and namespaces: shared by many nodes, they stay on the heap, with their ids
+    private final String[] strings;
+    private final int[] nameIds;
+    private final int[] namespaceIds;
+    private final DocumentType doctype;
+
+    FrozenDocument(Document document, boolean offHeap) {
+        Counter counter = new Counter();
+        document.traverseWithCurrentNode(counter);
+
+        nodeCount = counter.nodes;
+        elementCount = counter.elements;
+        attributeCount = counter.attributes;
+        latin1 = counter.latin1;
+        // the positions in the chars are stored in the tables
+        if (counter.chars > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot freeze a document with more than " + Integer.MAX_VALUE + " chars");
+        }
+        long nodeInts = (long) NODE_COLUMNS * nodeCount;
+        long elementInts = (long) ELEMENT_COLUMNS * elementCount;
+        long attributeInts = (long) ATTRIBUTE_COLUMNS * attributeCount;
+        if (offHeap) {
+            elementsOffset = nodeInts * Integer.BYTES;
+            attributesOffset = elementsOffset + elementInts * Integer.BYTES;
+            charsOffset = attributesOffset + attributeInts * Integer.BYTES;
+            memory = new OffHeapMemory(charsOffset + counter.chars * (latin1 ? 1 : Character.BYTES));
+            nodes = null;
+            elements = null;
+            attributes = null;
+            bytes = null;
+            chars = null;
+        } else {
+            nodes = new int[arrayLength(nodeInts)];
+            elements = new int[arrayLength(elementInts)];
+            attributes = new int[arrayLength(attributeInts)];
+            bytes = latin1 ? new byte[(int) counter.chars] : null;
+            chars = latin1 ? null : new char[(int) counter.chars];
+            memory = null;
+            elementsOffset = 0;
+            attributesOffset = 0;
+            charsOffset = 0;
+        }
+
+        Filler filler = new Filler();
+        document.traverseWithCurrentNode(filler);
+        strings = filler.pool.keySet().toArray(new String[0]);
+        nameIds = new int[strings.length];
+        namespaceIds = new int[strings.length];
+        for (int i = 0; i < strings.length; i++) {
+            nameIds[i] = Common.tagNameToID(strings[i]);
+            namespaceIds[i] = Node.toNamespaceId(strings[i]);
+        }
+
+        DocumentType dt = document.getDoctype();
+        doctype = dt == null ? null : (DocumentType) dt.cloneNode(false);
+    }
+
+    private static int arrayLength(long size) {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot freeze a document with a table of " + size + " entries on the heap");
+        }
+        return (int) size;
+    }
+
+    private int intAt(int[] table, long offset, long index) {
+        return memory == null ? table[(int) index] : memory.getInt(offset + index * Integer.BYTES);
+    }
+
+    private void setInt(int[] table, long offset, long index, int value) {
+        if (memory == null) {
+            table[(int) index] = value;
+        } else {
+            memory.putInt(offset + index * Integer.BYTES, value);
+        }
+    }
+
+    private int at(int column, int node) {
+        return intAt(nodes, 0, (long) column * nodeCount + node);
+    }
+
+    private void set(int column, int node, int value) {
+        setInt(nodes, 0, (long) column * nodeCount + node, value);
+    }
+
+    // for an element node
+    private int elementAt(int column, int node) {
+        return intAt(elements, elementsOffset, (long) column * elementCount + at(DATA_START, node));
+    }
+
+    private void setElement(int column, int element, int value) {
+        setInt(elements, elementsOffset, (long) column * elementCount + element, value);
+    }
+
+    private int attributeAt(int column, int attribute) {
+        return intAt(attributes, attributesOffset, (long) column * attributeCount + attribute);
+    }
+
+    private void setAttribute(int column, int attribute, int value) {
+        setInt(attributes, attributesOffset, (long) column * attributeCount + attribute, value);
+    }
+
+    private int nameId(int node) {
+        return nameIds[at(NAME, node)];
+    }
+
+    private int namespaceId(int node) {
+        int namespace = elementAt(NAMESPACE, node);
+        return namespace == NONE ? 0 : namespaceIds[namespace];
+    }
+
+    private static final class Counter implements NodesVisitor {
+        final AttributeNode scratch = new AttributeNode(null, null);
+        int nodes;
+        int elements;
+        int attributes;
+        long chars;
+        boolean latin1 = true;
+
+        @Override
+        public void start(Node node) {
+            nodes++;
+            if (node instanceof Element e) {
+                elements++;
+                Attributes elementAttributes = e.getAttributes();
+                for (int i = 0; i < elementAttributes.size(); i++) {
+                    attributes++;
+                    add(elementAttributes.peekNodeAt(i, scratch).getValue());
+                }
+            } else if (node instanceof Text t) {
+                add(t.getData());
+            } else if (node instanceof Comment c) {
+                add(c.getData());
+            } else if (node instanceof ProcessingInstruction pi) {
+                add(pi.getData());
+            }
+        }
+
+        private void add(String s) {
+            if (s == null) {
+                return;
+            }
+            chars += s.length();
+            for (int i = 0; latin1 && i < s.length(); i++) {
+                latin1 = s.charAt(i) <= 0xFF;
+            }
+        }
+    }
+
+    private final class Filler implements NodesVisitor {
+        // insertion ordered, for building the array of the pool at the end
+        final Map<String, Integer> pool = new LinkedHashMap<>();
+        final AttributeNode scratch = new AttributeNode(null, null);
+        // the open nodes and their last child so far
+        int[] open = new int[32];
+        int[] lastChild = new int[32];
+        int openCount;
+        int node;
+        int element;
+        int attribute;
+        int charsPos;
+
+        @Override
+        public void start(Node n) {
+            int i = node++;
+            int parent = openCount == 0 ? NONE : open[openCount - 1];
+            set(TYPE, i, n.getNodeType());
+            set(PARENT, i, parent);
+            set(FIRST_CHILD, i, NONE);
+            set(NEXT_SIBLING, i, NONE);
+            if (parent != NONE) {
+                int last = lastChild[openCount - 1];
+                if (last == NONE) {
+                    set(FIRST_CHILD, parent, i);
+                } else {
+                    set(NEXT_SIBLING, last, i);
+                }
+                lastChild[openCount - 1] = i;
+            }
+            set(NAME, i, NONE);
+            set(DATA_START, i, 0);
+            set(DATA_LENGTH, i, NONE);
+
+            if (n instanceof Element e) {
+                int el = element++;
+                set(NAME, i, intern(e.nodeName));
+                set(DATA_START, i, el);
+                setElement(NAMESPACE, el, intern(e.namespaceURI));
+                setElement(ORIGINAL_NAME, el, intern(e.originalNodeName));
+                setElement(FIRST_ATTRIBUTE, el, attribute);
+                Attributes attributes = e.getAttributes();
+                for (int j = 0; j < attributes.size(); j++) {
+                    AttributeNode a = attributes.peekNodeAt(j, scratch);
+                    int k = attribute++;
+                    setAttribute(KEY, k, intern(attributes.keyAt(j)));
+                    setAttribute(ATTRIBUTE_NAME, k, intern(a.name));
+                    setAttribute(ATTRIBUTE_ORIGINAL_NAME, k, intern(a.originalName));
+                    setAttribute(PREFIX, k, intern(a.prefix));
+                    setAttribute(ATTRIBUTE_NAMESPACE, k, intern(a.namespace));
+                    String value = a.getValue();
+                    setAttribute(VALUE_START, k, charsPos);
+                    setAttribute(VALUE_LENGTH, k, copy(value));
+                    setAttribute(QUOTE_TYPE, k, a.attributeQuoteType);
+                }
+                set(DATA_LENGTH, i, attributes.size());
+            } else if (n instanceof Text t) {
+                setData(i, t.getData());
+            } else if (n instanceof Comment c) {
+                setData(i, c.getData());
+            } else if (n instanceof ProcessingInstruction pi) {
+                set(NAME, i, intern(pi.getTarget()));
+                setData(i, pi.getData());
+            } else if (n instanceof DocumentType dt) {
+                set(NAME, i, intern(dt.getName()));
+            }
+
+            if (openCount == open.length) {
+                open = Arrays.copyOf(open, openCount * 2);
+                lastChild = Arrays.copyOf(lastChild, openCount * 2);
+            }
+            open[openCount] = i;
+            lastChild[openCount] = NONE;
+            openCount++;
+        }
+
+        @Override
+        public void end(Node n) {
+            openCount--;
+        }
+
+        private void setData(int i, String data) {
+            set(DATA_START, i, charsPos);
+            set(DATA_LENGTH, i, copy(data));
+        }
+
+        private int copy(String s) {
+            if (s == null) {
+                return NONE;
+            }
+            int length = s.length();
+            if (latin1 && memory != null) {
+                for (int i = 0; i < length; i++) {
+                    memory.putByte(charsOffset + charsPos + i, (byte) s.charAt(i));
+                }
+            } else if (latin1) {
+                for (int i = 0; i < length; i++) {
+                    bytes[charsPos + i] = (byte) s.charAt(i);
+                }
+            } else if (memory != null) {
+                memory.putChars(charsOffset + (long) charsPos * Character.BYTES, s);
+            } else {
+                s.getChars(0, length, chars, charsPos);
+            }
+            charsPos += length;
+            return length;
+        }
+
+        private int intern(String s) {
+            if (s == null) {
+                return NONE;
+            }
+            Integer idx = pool.get(s);
+            if (idx == null) {
+                idx = pool.size();
+                pool.put(s, idx);
+            }
+            return idx;
+        }
+    }
+
+    private String string(int idx) {
+        return idx == NONE ? null : strings[idx];
+    }
+
+    private String slice(int start, int length) {
+        if (length == NONE) {
+            return null;
+        }
+        if (latin1) {
+            if (memory != null) {
+                byte[] b = new byte[length];
+                memory.getBytes(charsOffset + start, b);
+                return new String(b, StandardCharsets.ISO_8859_1);
+            }
+            return new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+        }
+        if (memory != null) {
+            char[] c = new char[length];
+            memory.getChars(charsOffset + (long) start * Character.BYTES, c);
+            return new String(c);
+        }
+        return new String(chars, start, length);
+    }
+
+    private void appendSlice(StringBuilder sb, int start, int length) {
+        if (memory != null) {
+            sb.append(slice(start, length));
+        } else if (latin1) {
+            for (int i = start, end = start + length; i < end; i++) {
+                sb.append((char) (bytes[i] & 0xFF));
+            }
+        } else {
+            sb.append(chars, start, length);
+        }
+    }
+
+    FrozenNode node(int i) {
+        if (i == NONE) {
+            return null;
+        }
+        return at(TYPE, i) == Node.ELEMENT_NODE ? new FrozenElement(this, i) : new FrozenNode(this, i);
+    }
+
+    private FrozenElement element(int i) {
+        return i == NONE ? null : new FrozenElement(this, i);
+    }
+
+    // the position after the last descendant of the node
+    private int subtreeEnd(int i) {
+        int n = i;
+        while (n != NONE && at(NEXT_SIBLING, n) == NONE) {
+            n = at(PARENT, n);
+        }
+        return n == NONE ? nodeCount : at(NEXT_SIBLING, n);
+    }
+
+    private int nextElement(int i) {
+        while (i != NONE && at(TYPE, i) != Node.ELEMENT_NODE) {
+            i = at(NEXT_SIBLING, i);
+        }
+        return i;
+    }
+
+    private int previousElement(int i) {
+        while (i != NONE && at(TYPE, i) != Node.ELEMENT_NODE) {
+            i = previousSibling(i);
+        }
+        return i;
+    }
+
+    // the ancestor of the last descendant that is a child of the node
+    private int lastChild(int i) {
+        if (at(FIRST_CHILD, i) == NONE) {
+            return NONE;
+        }
+        int n = subtreeEnd(i) - 1;
+        while (at(PARENT, n) != i) {
+            n = at(PARENT, n);
+        }
+        return n;
+    }
+
+    // the ancestor of the preceding node that is a child of the same parent
+    private int previousSibling(int i) {
+        int parent = at(PARENT, i);
+        if (parent == NONE || parent == i - 1) {
+            return NONE;
+        }
+        int n = i - 1;
+        while (at(PARENT, n) != parent) {
+            n = at(PARENT, n);
+        }
+        return n;
+    }
+
+    // for test
+    boolean isLatin1() {
+        return latin1;
+    }
+
+    /**
+     * Return true if the tables of the document are stored outside of the heap, see {@link Document#freeze(boolean)}.
+     */
+    public boolean isOffHeap() {
+        return memory != null;
+    }
+
+    /**
+     * Release the off-heap memory of the document. On Java 22 and later the memory is freed immediately, on the earlier
+     * versions once the direct buffer is collected. The document and its nodes must not be used anymore after it. Does
+     * nothing for a document on the heap.
+     */
+    @Override
+    public void close() {
+        if (memory != null) {
+            memory.close();
+        }
+    }
+
+    /**
+     * The number of nodes, the document included.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public FrozenNode getDocumentNode() {
+        return node(0);
+    }
+
+    public DocumentType getDoctype() {
+        return doctype;
+    }
+
+    public FrozenElement getDocumentElement() {
+        return element(nextElement(at(FIRST_CHILD, 0)));
+    }
+
+    public FrozenElement getHead() {
+        return getChildOfDocumentElementMatching(Common.ELEMENT_HEAD_ID, Common.ELEMENT_HEAD_ID);
+    }
+
+    public FrozenElement getBody() {
+        return getChildOfDocumentElementMatching(Common.ELEMENT_BODY_ID, Common.ELEMENT_FRAMESET_ID);
+    }
+
+    private FrozenElement getChildOfDocumentElementMatching(int nameId1, int nameId2) {
+        int documentElement = nextElement(at(FIRST_CHILD, 0));
+        if (documentElement == NONE) {
+            return null;
+        }
+        for (int c = at(FIRST_CHILD, documentElement); c != NONE; c = at(NEXT_SIBLING, c)) {
+            if (at(TYPE, c) == Node.ELEMENT_NODE && namespaceId(c) == Node.NAMESPACE_HTML_ID && (nameId(c) == nameId1 || nameId(c) == nameId2)) {
+                return element(c);
+            }
+        }
+        return null;
+    }
+
+    public List<FrozenNode> getAllNodesMatching(NodeMatcher<FrozenNode> matcher) {
+        return getDocumentNode().getAllNodesMatching(matcher);
+    }
+
+    public List<FrozenNode> getAllNodesMatching(NodeMatcher<FrozenNode> matcher, boolean onlyFirstMatch) {
+        return getDocumentNode().getAllNodesMatching(matcher, onlyFirstMatch);
+    }
+
+    /**
+     * A node of a {@link FrozenDocument}. Two handles of the same node are equals.
+     */
+    public static class FrozenNode implements SelectableNode<FrozenNode> {
+
+        final FrozenDocument document;
+        final int index;
+
+        FrozenNode(FrozenDocument document, int index) {
+            this.document = document;
+            this.index = index;
+        }
+
+        public FrozenDocument getOwnerDocument() {
+            return document;
+        }
+
+        @Override
+        public int getNodeType() {
+            return document.at(TYPE, index);
+        }
+
+        @Override
+        public String getNodeName() {
+            return switch (getNodeType()) {
+                case Node.ELEMENT_NODE, Node.PROCESSING_INSTRUCTION_NODE -> document.string(document.at(NAME, index));
+                case Node.TEXT_NODE -> "#text";
+                case Node.COMMENT_NODE -> "#comment";
+                case Node.DOCUMENT_TYPE_NODE -> "#doctype";
+                default -> "#document";
+            };
+        }
+
+        /**
+         * The data of a text, comment or processing instruction node, null for the other nodes.
+         */
+        public String getData() {
+            int type = getNodeType();
+            if (type == Node.TEXT_NODE || type == Node.COMMENT_NODE || type == Node.PROCESSING_INSTRUCTION_NODE) {
+                return document.slice(document.at(DATA_START, index), document.at(DATA_LENGTH, index));
+            }
+            return null;
+        }
+
+        @Override
+        public FrozenNode getParentNode() {
+            return document.node(document.at(PARENT, index));
+        }
+
+        @Override
+        public FrozenNode getFirstChild() {
+            return document.node(document.at(FIRST_CHILD, index));
+        }
+
+        @Override
+        public FrozenNode getLastChild() {
+            return document.node(document.lastChild(index));
+        }
+
+        public FrozenNode getNextSibling() {
+            return document.node(document.at(NEXT_SIBLING, index));
+        }
+
+        public FrozenNode getPreviousSibling() {
+            return document.node(document.previousSibling(index));
+        }
+
+        @Override
+        public FrozenElement getFirstElementChild() {
+            return document.element(document.nextElement(document.at(FIRST_CHILD, index)));
+        }
+
+        @Override
+        public FrozenElement getLastElementChild() {
+            return document.element(document.previousElement(document.lastChild(index)));
+        }
+
+        public FrozenElement getNextElementSibling() {
+            return document.element(document.nextElement(document.at(NEXT_SIBLING, index)));
+        }
+
+        @Override
+        public FrozenElement getPreviousElementSibling() {
+            return document.element(document.previousElement(document.previousSibling(index)));
+        }
+
+        public boolean hasChildNodes() {
+            return document.at(FIRST_CHILD, index) != NONE;
+        }
+
+        public int getChildCount() {
+            int count = 0;
+            for (int c = document.at(FIRST_CHILD, index); c != NONE; c = document.at(NEXT_SIBLING, c)) {
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public List<FrozenNode> getChildNodes() {
+            int[] children = new int[getChildCount()];
+            int count = 0;
+            for (int c = document.at(FIRST_CHILD, index); c != NONE; c = document.at(NEXT_SIBLING, c)) {
+                children[count++] = c;
+            }
+            return new Common.NodeList<>(count, i -> document.node(children[i]));
+        }
+
+        /**
+         * Get the text content of the node, as {@link Node#getTextContent()}.
+         */
+        @Override
+        public String getTextContent() {
+            if (getNodeType() == Node.TEXT_NODE) {
+                return getData();
+            }
+            if (!hasChildNodes()) {
+                return "";
+            }
+            FrozenDocument d = document;
+            StringBuilder sb = new StringBuilder();
+            for (int i = index + 1, end = d.subtreeEnd(index); i < end; i++) {
+                if (d.at(TYPE, i) == Node.TEXT_NODE && d.at(DATA_LENGTH, i) != NONE) {
+                    d.appendSlice(sb, d.at(DATA_START, i), d.at(DATA_LENGTH, i));
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Get all the nodes matching the given matcher, in "tree order". See {@link FrozenSelector}.
+         */
+        public List<FrozenNode> getAllNodesMatching(NodeMatcher<FrozenNode> matcher) {
+            return getAllNodesMatching(matcher, false);
+        }
+
+        public List<FrozenNode> getAllNodesMatching(NodeMatcher<FrozenNode> matcher, boolean onlyFirstMatch) {
+            return getAllNodesMatchingAsStream(matcher, onlyFirstMatch, this).toList();
+        }
+
+        @Override
+        public Stream<FrozenNode> getAllNodesMatchingAsStream(NodeMatcher<FrozenNode> matcher, boolean onlyFirstMatch, FrozenNode base) {
+            var nm = new NodeMatchers<>(matcher.matcher::test, onlyFirstMatch, base);
+            // the descendants are the nodes that follow in tree order, up to the end of the subtree
+            for (int i = index + 1, end = document.subtreeEnd(index); i < end && !nm.complete(); i++) {
+                nm.start(document.node(i));
+            }
+            return nm.result();
+        }
+
+        @Override
+        public boolean isSameNode(FrozenNode node) {
+            return equals(node);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof FrozenNode other && other.document == document && other.index == index;
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+
+        void serialize(HtmlSerializer serializer, boolean withCurrentNode) {
+            FrozenDocument d = document;
+            try {
+                if (withCurrentNode) {
+                    d.start(serializer, index);
+                }
+                int n = d.at(FIRST_CHILD, index);
+                while (n != NONE) {
+                    d.start(serializer, n);
+                    if (d.at(FIRST_CHILD, n) != NONE) {
+                        n = d.at(FIRST_CHILD, n);
+                        continue;
+                    }
+                    while (n != index && d.at(NEXT_SIBLING, n) == NONE) {
+                        d.end(serializer, n);
+                        n = d.at(PARENT, n);
+                    }
+                    if (n == index) {
+                        break;
+                    }
+                    d.end(serializer, n);
+                    n = d.at(NEXT_SIBLING, n);
+                }
+                if (withCurrentNode) {
+                    d.end(serializer, index);
+                }
+            } catch (IOException ioe) {
+                throw new HtmlSerializer.SerializationException(ioe);
+            }
+        }
+    }
+
+    /**
+     * An element of a {@link FrozenDocument}.
+     */
+    public static final class FrozenElement extends FrozenNode implements SelectableNode.SelectableElement<FrozenNode> {
+
+        FrozenElement(FrozenDocument document, int index) {
+            super(document, index);
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            return document.string(document.elementAt(NAMESPACE, index));
+        }
+
+        /**
+         * Get the attribute value. Return null if the attribute is not present. Case-sensitive.
+         */
+        @Override
+        public String getAttributeValue(String name) {
+            FrozenDocument d = document;
+            for (int k = d.elementAt(FIRST_ATTRIBUTE, index), end = k + d.at(DATA_LENGTH, index); k < end; k++) {
+                if (d.strings[d.attributeAt(KEY, k)].equals(name)) {
+                    return d.slice(d.attributeAt(VALUE_START, k), d.attributeAt(VALUE_LENGTH, k));
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Get the attribute value. Return null if the attribute is not present. Case-insensitive.
+         */
+        public String getAttribute(String name) {
+            return getAttributeValue(Common.convertToAsciiLowerCase(name));
+        }
+
+        public boolean hasAttributes() {
+            return document.at(DATA_LENGTH, index) > 0;
+        }
+
+        public String getOuterHTML() {
+            return getOuterHTML(Set.of());
+        }
+
+        public String getOuterHTML(Set<Option> options) {
+            StringBuilder sb = new StringBuilder();
+            serialize(new HtmlSerializer(sb, options), true);
+            return sb.toString();
+        }
+
+        public String getInnerHTML() {
+            return getInnerHTML(Set.of());
+        }
+
+        public String getInnerHTML(Set<Option> options) {
+            StringBuilder sb = new StringBuilder();
+            serialize(new HtmlSerializer(sb, options), false);
+            return sb.toString();
+        }
+    }
+
+    private void start(HtmlSerializer serializer, int n) throws IOException {
+        switch (at(TYPE, n)) {
+            case Node.ELEMENT_NODE -> {
+                serializer.appendStartTag(serializer.getNodeName(strings[at(NAME, n)], string(elementAt(ORIGINAL_NAME, n))));
+                for (int k = elementAt(FIRST_ATTRIBUTE, n), end = k + at(DATA_LENGTH, n); k < end; k++) {
+                    serializer.appendAttribute(attributeNode(k));
+                }
+                serializer.appendStartTagEnd();
+                int first = at(FIRST_CHILD, n);
+                if (HtmlSerializer.isLeadingNewLineDropped(namespaceId(n), nameId(n)) && first != NONE && at(TYPE, first) == Node.TEXT_NODE) {
+                    serializer.appendLeadingNewLine(slice(at(DATA_START, first), at(DATA_LENGTH, first)));
+                }
+            }
+            case Node.TEXT_NODE -> {
+                int p = at(PARENT, n);
+                boolean literal = p != NONE && at(TYPE, p) == Node.ELEMENT_NODE && serializer.isLiteralTextParent(namespaceId(p), nameId(p));
+                serializer.appendText(slice(at(DATA_START, n), at(DATA_LENGTH, n)), literal);
+            }
+            case Node.COMMENT_NODE -> serializer.appendComment(slice(at(DATA_START, n), at(DATA_LENGTH, n)));
+            case Node.PROCESSING_INSTRUCTION_NODE -> serializer.appendProcessingInstruction(string(at(NAME, n)), slice(at(DATA_START, n), at(DATA_LENGTH, n)));
+            case Node.DOCUMENT_TYPE_NODE -> serializer.appendDoctype(string(at(NAME, n)));
+            default -> {
+            }
+        }
+    }
+
+    private void end(HtmlSerializer serializer, int n) throws IOException {
+        if (at(TYPE, n) == Node.ELEMENT_NODE && !HtmlSerializer.skipEndTag(namespaceId(n), nameId(n))) {
+            serializer.appendEndTag(serializer.getNodeName(strings[at(NAME, n)], string(elementAt(ORIGINAL_NAME, n))));
+        }
+    }
+
+    // a transient attribute node, for the serializer hooks
+    private AttributeNode attributeNode(int k) {
+        AttributeNode a = new AttributeNode(strings[attributeAt(ATTRIBUTE_NAME, k)], slice(attributeAt(VALUE_START, k), attributeAt(VALUE_LENGTH, k)), string(attributeAt(PREFIX, k)), string(attributeAt(ATTRIBUTE_NAMESPACE, k)));
+        a.originalName = string(attributeAt(ATTRIBUTE_ORIGINAL_NAME, k));
+        a.attributeQuoteType = attributeAt(QUOTE_TYPE, k);
+        return a;
+    }
+
+    /**
+     * A selector for the nodes of a {@link FrozenDocument}, see {@link Selector}.
+     */
+    public static final class FrozenSelector extends BaseSelector<FrozenNode, FrozenSelector> {
+
+        private FrozenSelector(Map<String, String> namespaceAlias) {
+            super(node -> node, node -> (FrozenNode) node, namespaceAlias);
+        }
+
+        /**
+         * Parse a CSS selector string.
+         *
+         * @param selector
+         * @return
+         */
+        public static NodeMatcher<FrozenNode> parseSelector(String selector) {
+            return parseSelector(selector, Map.of());
+        }
+
+        public static NodeMatcher<FrozenNode> parseSelector(String selector, Map<String, String> namespaceAlias) {
+            return new NodeMatcher<>(new FrozenSelector(namespaceAlias).parseSelectorInstance(selector));
+        }
+
+        @Override
+        FrozenSelector inst() {
+            return this;
+        }
+
+        @Override
+        FrozenSelector newInst() {
+            return select();
+        }
+    }
+
+    public static FrozenSelector select() {
+        return new FrozenSelector(Map.of());
+    }
+}
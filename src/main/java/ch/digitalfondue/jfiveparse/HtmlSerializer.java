@@ -38,6 +38,9 @@ public class HtmlSerializer implements NodesVisitor {
     protected final boolean printOriginalAttributeCase;
     protected final boolean printOriginalTagName;
 
+    // the attributes without a node are passed to the hooks through this reused node, instead of creating one for each
+    private final AttributeNode scratch = new AttributeNode(null, null);
+
     public HtmlSerializer(Appendable appendable, Set<Option> options) {
         this.appendable = appendable;
         this.transformEntities = !options.contains(Option.DONT_TRANSFORM_ENTITIES);
@@ -101,55 +104,35 @@ public class HtmlSerializer implements NodesVisitor {
     }
 
     protected static boolean skipEndTag(Element e) {
-        return Node.NAMESPACE_HTML_ID == e.namespaceID && isNoEndTag(e.nodeNameID);
+        return skipEndTag(e.namespaceID, e.nodeNameID);
     }
 
     @Override
     public void start(Node node) {
         try {
             if (node instanceof Element e) {
-                // TODO: for tag outside of html,mathml,svg namespace : use qualified name!
-                appendable.append('<').append(getNodeName(e));
-                for (AttributeNode attr : e.getAttributes()) {
-                    appendable.append(' ').append(serializeAttributeName(attr));//
-
-                    if ((hideEmptyAttributeValue || (printOriginalAttributeQuote && attr.attributeQuoteType == TokenizerState.ATTRIBUTE_VALUE_UNQUOTED_STATE))
-                            && (attr.getValue() == null || attr.getValue().isEmpty())) {
-                        continue;
-                    }
-                    appendable.append('=').append(quoteCharacters(attr)).append(escapeAttributeValue(attr)).append(quoteCharacters(attr));
+                appendStartTag(getNodeName(e));
+                Attributes attributes = e.getAttributes();
+                for (int i = 0; i < attributes.size(); i++) {
+                    appendAttribute(attributes.peekNodeAt(i, scratch));
                 }
-                appendable.append('>');
-                if ((Common.isHtmlNS(e, Common.ELEMENT_PRE_ID) || Common.isHtmlNS(e, Common.ELEMENT_TEXTAREA_ID) || Common.isHtmlNS(e, Common.ELEMENT_LISTING_ID)) && //
+                appendStartTagEnd();
+                if (isLeadingNewLineDropped(e.namespaceID, e.nodeNameID) && //
                         e.hasChildNodes() && //
                         e.getFirstChild() instanceof Text textNode) {
-                    String text = textNode.getData();
-                    if (!text.isEmpty() && text.charAt(0) == Characters.LF) {
-                        appendable.append(Characters.LF);
-                    }
+                    appendLeadingNewLine(textNode.getData());
                 }
 
             } else if (node instanceof Text t) {
                 // TODO: handle the case when the nodes are created with scripting disabled
                 Node parent = node.getParentNode();
-                boolean literalAppend = false;
-                if (parent instanceof Element p) {
-                    literalAppend = Node.NAMESPACE_HTML_ID == p.namespaceID
-                            && (isTextNodeParent(p.nodeNameID) || (Common.ELEMENT_NOSCRIPT_ID == p.nodeNameID && !scriptingDisabled));
-                }
-                appendable.append(literalAppend ? t.getData() : escapeTextData(t.getData()));
-
+                appendText(t.getData(), parent instanceof Element p && isLiteralTextParent(p.namespaceID, p.nodeNameID));
             } else if (node instanceof Comment comment) {
-                appendable.append("<!--").append(comment.getData()).append("-->");
+                appendComment(comment.getData());
             } else if (node instanceof ProcessingInstruction processingInstruction) {
-                appendable.append("<?").append(processingInstruction.getTarget());
-                if (processingInstruction.getData() != null) {
-                    appendable.append(' ').append(processingInstruction.getData());
-                }
-                appendable.append("?>");
+                appendProcessingInstruction(processingInstruction.getTarget(), processingInstruction.getData());
             } else if (node instanceof DocumentType dt) {
-                // TODO: should append the rest of the attributes if present
-                appendable.append("<!DOCTYPE ").append(dt.getName()).append('>');
+                appendDoctype(dt.getName());
             }
         } catch (IOException ioe) {
             throw new SerializationException(ioe);
@@ -157,7 +140,7 @@ public class HtmlSerializer implements NodesVisitor {
     }
 
     protected String getNodeName(Element e) {
-        return printOriginalTagName ? e.originalNodeName : e.getNodeName();
+        return getNodeName(e.getNodeName(), e.originalNodeName);
     }
 
     @Override
@@ -165,7 +148,7 @@ public class HtmlSerializer implements NodesVisitor {
         try {
             if (node instanceof Element e) {
                 if (!skipEndTag(e)) {
-                    appendable.append("</").append(getNodeName(e)).append(">");
+                    appendEndTag(getNodeName(e));
                 }
             }
         } catch (IOException ioe) {
@@ -173,6 +156,79 @@ public class HtmlSerializer implements NodesVisitor {
         }
     }
 
+    // the parts of start and end that don't depend on the node classes, shared with the serialization of a
+    // FrozenDocument
+
+    String getNodeName(String nodeName, String originalNodeName) {
+        return printOriginalTagName ? originalNodeName : nodeName;
+    }
+
+    void appendStartTag(String name) throws IOException {
+        // TODO: for tag outside of html,mathml,svg namespace : use qualified name!
+        appendable.append('<').append(name);
+    }
+
+    void appendAttribute(AttributeNode attr) throws IOException {
+        appendable.append(' ').append(serializeAttributeName(attr));//
+
+        if ((hideEmptyAttributeValue || (printOriginalAttributeQuote && attr.attributeQuoteType == TokenizerState.ATTRIBUTE_VALUE_UNQUOTED_STATE))
+                && (attr.getValue() == null || attr.getValue().isEmpty())) {
+            return;
+        }
+        appendable.append('=').append(quoteCharacters(attr)).append(escapeAttributeValue(attr)).append(quoteCharacters(attr));
+    }
+
+    void appendStartTagEnd() throws IOException {
+        appendable.append('>');
+    }
+
+    // pre, textarea and listing: a new line at the start of the first text child is dropped by the parser, so it
+    // must be doubled
+    static boolean isLeadingNewLineDropped(int namespaceID, int nodeNameID) {
+        return Node.NAMESPACE_HTML_ID == namespaceID
+                && (nodeNameID == ELEMENT_PRE_ID || nodeNameID == ELEMENT_TEXTAREA_ID || nodeNameID == ELEMENT_LISTING_ID);
+    }
+
+    void appendLeadingNewLine(String firstChildText) throws IOException {
+        if (!firstChildText.isEmpty() && firstChildText.charAt(0) == Characters.LF) {
+            appendable.append(Characters.LF);
+        }
+    }
+
+    boolean isLiteralTextParent(int namespaceID, int nodeNameID) {
+        return Node.NAMESPACE_HTML_ID == namespaceID
+                && (isTextNodeParent(nodeNameID) || (Common.ELEMENT_NOSCRIPT_ID == nodeNameID && !scriptingDisabled));
+    }
+
+    void appendText(String data, boolean literal) throws IOException {
+        appendable.append(literal ? data : escapeTextData(data));
+    }
+
+    void appendComment(String data) throws IOException {
+        appendable.append("<!--").append(data).append("-->");
+    }
+
+    void appendProcessingInstruction(String target, String data) throws IOException {
+        appendable.append("<?").append(target);
+        if (data != null) {
+            appendable.append(' ').append(data);
+        }
+        appendable.append("?>");
+    }
+
+    void appendDoctype(String name) throws IOException {
+        // TODO: should append the rest of the attributes if present
+        appendable.append("<!DOCTYPE ").append(name).append('>');
+    }
+
+    static boolean skipEndTag(int namespaceID, int nodeNameID) {
+        return Node.NAMESPACE_HTML_ID == namespaceID && isNoEndTag(nodeNameID);
+    }
+
+    void appendEndTag(String name) throws IOException {
+        appendable.append("</").append(name).append(">");
+    }
+
     public static class SerializationException extends RuntimeException {
 
         @Serial
@@ -203,6 +259,25 @@ public class HtmlSerializer implements NodesVisitor {
         return sb.toString();
     }
 
+    public static void serialize(FrozenDocument.FrozenNode node, Writer writer) throws IOException {
+        serialize(node, Set.of(), writer);
+    }
+
+    public static void serialize(FrozenDocument.FrozenNode node, Set<Option> options, Writer writer) throws IOException {
+        node.serialize(new HtmlSerializer(writer, options), true);
+        writer.flush();
+    }
+
+    public static String serialize(FrozenDocument.FrozenNode node) {
+        return serialize(node, Set.of());
+    }
+
+    public static String serialize(FrozenDocument.FrozenNode node, Set<Option> options) {
+        StringBuilder sb = new StringBuilder();
+        node.serialize(new HtmlSerializer(sb, options), true);
+        return sb.toString();
+    }
+
     private static boolean isNoEndTag(int nodeName) {
         return switch (nodeName) {
             case ELEMENT_AREA_ID, ELEMENT_BASE_ID, ELEMENT_BASEFONT_ID, ELEMENT_BGSOUND_ID,
@@ -0,0 +1,137 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Objects;
+
+/**
+ * Push based parsing of a document: the input is fed in chunks as they arrive,
+ * the chunk boundaries can be anywhere. Each chunk is parsed as soon as it's
+ * fed, so no thread is blocked waiting for the input.
+ * 
+ * A session accepts either characters or bytes. For bytes, the encoding is
+ * detected as in {@link Parser#parse(java.io.InputStream)}.
+ * 
+ * Use {@link Parser#newIncrementalSession()} for creating a session. A session
+ * is not thread-safe.
+ */
+public final class IncrementalSession {
+
+    private final TreeConstructor tokenHandler;
+    private final Tokenizer tokenizer;
+    private ProcessedInputStream.IncrementalCharProcessedInputStream chars;
+    private ProcessedInputStream.IncrementalByteProcessedInputStream bytes;
+    private boolean finished;
+
+    IncrementalSession(TreeConstructor tokenHandler, Tokenizer tokenizer) {
+        this.tokenHandler = tokenHandler;
+        this.tokenizer = tokenizer;
+    }
+
+    /**
+     * Feed the next characters. The array is copied, it can be reused after
+     * this call.
+     * 
+     * @param chunk
+     */
+    public void feed(char[] chunk) {
+        feed(chunk, 0, chunk.length);
+    }
+
+    /**
+     * @see #feed(char[])
+     * 
+     * @param chunk
+     * @param offset
+     * @param length
+     */
+    public void feed(char[] chunk, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, chunk.length);
+        charInput().append(chunk, offset, length);
+        tokenizer.tokenize(chars);
+    }
+
+    /**
+     * Feed the remaining characters of the buffer. The buffer is fully
+     * consumed: its position is moved to its limit.
+     * 
+     * @param chunk
+     */
+    public void feed(CharBuffer chunk) {
+        charInput().append(chunk);
+        tokenizer.tokenize(chars);
+    }
+
+    /**
+     * Feed the remaining bytes of the buffer. The buffer is fully consumed:
+     * its position is moved to its limit.
+     * 
+     * @param chunk
+     */
+    public void feed(ByteBuffer chunk) {
+        byteInput().append(chunk);
+        tokenizer.tokenize(bytes);
+    }
+
+    /**
+     * Signal the end of the input and return the parsed document.
+     * 
+     * @return the parsed {@link Document}
+     */
+    public Document finish() {
+        ProcessedInputStream input;
+        if (bytes != null) {
+            bytes.finish();
+            input = bytes;
+        } else {
+            charInput().finish();
+            input = chars;
+        }
+        finished = true;
+        tokenizer.tokenize(input);
+        return tokenHandler.getDocument();
+    }
+
+    private ProcessedInputStream.IncrementalCharProcessedInputStream charInput() {
+        ensureNotFinished();
+        if (bytes != null) {
+            throw new IllegalStateException("The session has already been fed with bytes");
+        }
+        if (chars == null) {
+            chars = new ProcessedInputStream.IncrementalCharProcessedInputStream();
+        }
+        return chars;
+    }
+
+    private ProcessedInputStream.IncrementalByteProcessedInputStream byteInput() {
+        ensureNotFinished();
+        if (chars != null) {
+            throw new IllegalStateException("The session has already been fed with characters");
+        }
+        if (bytes == null) {
+            bytes = new ProcessedInputStream.IncrementalByteProcessedInputStream();
+        }
+        return bytes;
+    }
+
+    private void ensureNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("The session is already finished");
+        }
+    }
+}
@@ -16,13 +16,15 @@
 package ch.digitalfondue.jfiveparse;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Set;
 
 /**
- * Expose convenient static methods for parsing String or Reader as Html document and serializing nodes back to String.
+ * Expose convenient static methods for parsing String, Reader, InputStream or Path as Html document and serializing nodes back to String.
  */
 public final class JFiveParse {
 
@@ -61,6 +63,35 @@ public final class JFiveParse {
         return new Parser(options).parse(input);
     }
 
+    /**
+     * Parse a full html document using an {@link InputStream} as an input with the default options. The encoding is
+     * detected, see {@link Parser#parse(InputStream)}.
+     *
+     * @param input
+     * @return
+     */
+    public static Document parse(InputStream input) {
+        return parse(input, Set.of());
+    }
+
+    public static Document parse(InputStream input, Set<Option> options) {
+        return new Parser(options).parse(input);
+    }
+
+    /**
+     * Parse a full html file with the default options. The file is memory mapped, see {@link Parser#parse(Path)}.
+     *
+     * @param input
+     * @return
+     */
+    public static Document parse(Path input) {
+        return parse(input, Set.of());
+    }
+
+    public static Document parse(Path input, Set<Option> options) {
+        return new Parser(options).parse(input);
+    }
+
     /**
      * Parse a html fragment, with a "div" element as a parent node.
      *
@@ -83,6 +114,24 @@ public final class JFiveParse {
         return new Parser(options).parseFragment(parent, input);
     }
 
+    /**
+     * Parse a html fragment from a file, with a "div" element as a parent node.
+     *
+     * @param input
+     * @return
+     */
+    public static List<Node> parseFragment(Path input) {
+        return parseFragment(input, Set.of());
+    }
+
+    public static List<Node> parseFragment(Path input, Set<Option> options) {
+        return parseFragment(new Element("div", Node.NAMESPACE_HTML), input, options);
+    }
+
+    public static List<Node> parseFragment(Element parent, Path input, Set<Option> options) {
+        return new Parser(options).parseFragment(parent, input);
+    }
+
     /**
      * Parse a html fragment, with a "div" element as a parent node.
      *
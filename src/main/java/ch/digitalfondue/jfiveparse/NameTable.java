@@ -0,0 +1,228 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+/**
+ * Open addressing hash table of the tag and attribute names. A name is resolved directly from the builder content,
+ * with the ASCII case folding done while hashing and comparing: for the names already in the table, no String is
+ * created.
+ *
+ * {@link #SHARED} is prefilled with the known element names and the common attribute names, and never modified. Each
+ * tokenizer uses its own copy of it, where the other names are added, up to {@link #MAX_SIZE} entries: the copy shares
+ * the arrays of the table until the first name is added.
+ *
+ * The names come from the input: the multiplier of the hash is chosen randomly for each JVM, and a lookup probes at
+ * most {@link #MAX_PROBES} slots. A name that can't be resolved within them is not added, the callers then lower case
+ * it themselves.
+ */
+final class NameTable {
+
+    static final int MAX_SIZE = 4096;
+    static final int MAX_PROBES = 16;
+    // odd, for keeping all the bits of the characters
+    private static final int MULTIPLIER = new java.security.SecureRandom().nextInt() | 1;
+
+    // for test: each name once
+    static final String[] KNOWN_NAMES = {
+            // elements with an id, see Common.tagNameToID
+            "address", "applet", "area", "article", "aside", "base", "basefont", "bgsound", "blockquote", "body", "br",
+            "button", "caption", "center", "col", "colgroup", "dd", "details", "dir", "div", "dl", "dt", "embed",
+            "fieldset", "figcaption", "figure", "footer", "form", "frame", "frameset", "h1", "h2", "h3", "h4", "h5", "h6",
+            "head", "header", "hgroup", "hr", "html", "iframe", "img", "input", "li", "link", "listing", "main",
+            "marquee", "menu", "meta", "nav", "noembed", "noframes", "noscript", "object", "ol", "p", "param",
+            "plaintext", "pre", "script", "section", "select", "source", "style", "summary", "table", "tbody", "td",
+            "template", "textarea", "tfoot", "th", "thead", "title", "tr", "track", "ul", "wbr", "xmp", "optgroup",
+            "option", "rb", "rp", "rt", "rtc", "a", "dialog", "search", "b", "big", "code", "em", "font", "i", "s",
+            "small", "strike", "strong", "tt", "u", "nobr", "keygen", "image", "math", "svg", "ruby", "span", "sub",
+            "sup", "var",
+            // other common elements
+            "abbr", "audio", "canvas", "cite", "label", "mark", "picture", "q", "time", "video", "path", "g", "circle",
+            "rect", "use",
+            // common attributes, "style" is already an element name
+            "id", "class", "href", "src", "alt", "type", "name", "value", "rel", "content", "width",
+            "height", "lang", "charset", "action", "method", "for", "role", "target", "srcset", "sizes", "loading",
+            "tabindex", "property", "http-equiv", "async", "defer", "crossorigin", "integrity", "media", "colspan",
+            "rowspan", "placeholder", "disabled", "checked", "selected", "xmlns", "viewbox", "d", "fill", "data-id",
+            "aria-label", "aria-hidden", "onclick"
+    };
+
+    static final NameTable SHARED = new NameTable(512, MULTIPLIER);
+
+    static {
+        for (String name : KNOWN_NAMES) {
+            SHARED.add(name, SHARED.hash(name), Common.tagNameToID(name));
+        }
+    }
+
+    private String[] names;
+    private int[] hashes;
+    private int[] ids;
+    private int size;
+    private boolean shared;
+    private final int multiplier;
+
+    // for test: an empty table with a known multiplier
+    NameTable(int capacity, int multiplier) {
+        this.multiplier = multiplier;
+        names = new String[capacity];
+        hashes = new int[capacity];
+        ids = new int[capacity];
+    }
+
+    /**
+     * @return a modifiable copy of this table, the arrays are copied on the first insertion
+     */
+    NameTable copy() {
+        NameTable copy = new NameTable(0, multiplier);
+        copy.names = names;
+        copy.hashes = hashes;
+        copy.ids = ids;
+        copy.size = size;
+        copy.shared = true;
+        return copy;
+    }
+
+    private int hash(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            h = multiplier * h + name.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * Return the slot of the lower cased name, adding it if it's missing. The {@link ResizableCharBuilder#containsUpperCase}
+     * flag of the builder is updated, as {@link ResizableCharBuilder#toLowerCase()} does.
+     *
+     * @return the slot, or -1 if the name is missing and can't be added: the table is full, or the name is not in the
+     *         first {@link #MAX_PROBES} slots
+     */
+    int lookup(ResizableCharBuilder name) {
+        final int length = name.pos();
+        int h = 0;
+        boolean upperCase = false;
+        for (int i = 0; i < length; i++) {
+            char c = name.at(i);
+            if (Common.isUpperCaseASCIILetter(c)) {
+                upperCase = true;
+                c += 0x0020;
+            }
+            h = multiplier * h + c;
+        }
+        name.containsUpperCase = upperCase;
+
+        final String[] names = this.names;
+        final int mask = names.length - 1;
+        int slot = mix(h) & mask;
+        String candidate;
+        int probes = 0;
+        while ((candidate = names[slot]) != null) {
+            if (hashes[slot] == h && equalsLowerCase(name, candidate)) {
+                return slot;
+            }
+            // a long cluster: the name is not added, no empty slot has been seen so it can't be there twice
+            if (++probes == MAX_PROBES) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (isFull()) {
+            return -1;
+        }
+        String lowerCased = name.toLowerCase();
+        return add(lowerCased, h, Common.tagNameToID(lowerCased));
+    }
+
+    boolean isFull() {
+        return size >= MAX_SIZE;
+    }
+
+    String name(int slot) {
+        return names[slot];
+    }
+
+    int id(int slot) {
+        return ids[slot];
+    }
+
+    /**
+     * @return the canonical lower cased name
+     */
+    String intern(ResizableCharBuilder name) {
+        int slot = lookup(name);
+        return slot >= 0 ? names[slot] : name.toLowerCase();
+    }
+
+    private static boolean equalsLowerCase(ResizableCharBuilder name, String candidate) {
+        final int length = name.pos();
+        if (length != candidate.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Common.toLowerCase(name.at(i)) != candidate.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private int add(String name, int h, int id) {
+        if ((size + 1) * 2 > names.length) {
+            rehash(names.length * 2);
+        } else if (shared) {
+            names = names.clone();
+            hashes = hashes.clone();
+            ids = ids.clone();
+            shared = false;
+        }
+        final int mask = names.length - 1;
+        int slot = mix(h) & mask;
+        while (names[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        names[slot] = name;
+        hashes[slot] = h;
+        ids[slot] = id;
+        size++;
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        String[] oldNames = names;
+        int[] oldHashes = hashes;
+        int[] oldIds = ids;
+        names = new String[capacity];
+        hashes = new int[capacity];
+        ids = new int[capacity];
+        shared = false;
+        size = 0;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                add(oldNames[i], oldHashes[i], oldIds[i]);
+            }
+        }
+    }
+
+    // for test
+    int size() {
+        return size;
+    }
+}
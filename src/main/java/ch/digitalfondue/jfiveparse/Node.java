@@ -29,6 +29,10 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
 
     Node parentNode;
 
+    // position in the child nodes of the parent: updated by the methods changing the child nodes and checked before
+    // use, see indexIn
+    int siblingIndex;
+
     public static final String NAMESPACE_HTML = "http://www.w3.org/1999/xhtml";
     static final int NAMESPACE_HTML_ID = 1;
     public static final String NAMESPACE_SVG = "http://www.w3.org/2000/svg";
@@ -115,6 +119,31 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
         return EMPTY_LIST;
     }
 
+    /**
+     * Same result as siblings.indexOf(this), in constant time when the cached position is up to date.
+     */
+    int indexIn(List<Node> siblings) {
+        int idx = siblingIndex;
+        if (idx >= siblings.size() || siblings.get(idx) != this) {
+            idx = siblings.indexOf(this);
+            siblingIndex = Math.max(idx, 0);
+        }
+        return idx;
+    }
+
+    static void updateSiblingIndexes(List<Node> childs, int from) {
+        for (int i = from, size = childs.size(); i < size; i++) {
+            childs.get(i).siblingIndex = i;
+        }
+    }
+
+    // remove the node from the child nodes of its parent
+    private static void removeFromParent(Node parent, Node node, int idx) {
+        List<Node> childs = parent.getMutableChildNodes();
+        childs.remove(idx);
+        updateSiblingIndexes(childs, idx);
+    }
+
     /**
      * Get the child nodes without generating allocations (wrapping with unmodifiable _or_ creating a mutable array).
      *
@@ -159,7 +188,10 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
         }
 
         if (node.parentNode == this) {
-            childs.remove(node);
+            int idx = node.indexIn(childs);
+            if (idx >= 0) {
+                removeFromParent(this, node, idx);
+            }
             node.parentNode = null;
         }
 
@@ -183,16 +215,20 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
         }
 
         Node previousParent = node.parentNode;
+        int previousIdx = previousParent == null ? -1 : node.indexIn(previousParent.getRawChildNodes());
         node.parentNode = this;
 
         if (position == childs.size()) {
             childs.add(node);
+            node.siblingIndex = position;
         } else {
             childs.add(position, node);
+            updateSiblingIndexes(childs, position);
         }
 
-        if (previousParent != null) {
-            previousParent.getMutableChildNodes().remove(node);
+        if (previousIdx >= 0) {
+            // the first occurrence is removed: the inserted one if it's before the previous position
+            removeFromParent(previousParent, node, previousParent == this && position <= previousIdx ? position : previousIdx);
         }
     }
 
@@ -208,7 +244,7 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
     public void insertBefore(Node toInsert, Node before) {
         Objects.requireNonNull(toInsert);
         Objects.requireNonNull(before);
-        int idx = getRawChildNodes().indexOf(before);
+        int idx = before.indexIn(getRawChildNodes());
         if (idx >= 0) {
             insertChildren(idx, toInsert);
         }
@@ -229,13 +265,16 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
         if (childs == EMPTY_LIST) {
             return;
         }
-        int idx = childs.indexOf(oldChild);
+        int idx = oldChild.indexIn(childs);
         if (idx >= 0) {
             Node previousParent = node.parentNode;
+            int previousIdx = previousParent == null ? -1 : node.indexIn(previousParent.getRawChildNodes());
             node.parentNode = this;
             childs.set(idx, node);
-            if (previousParent != null) {
-                previousParent.getMutableChildNodes().remove(node);
+            node.siblingIndex = idx;
+            if (previousIdx >= 0) {
+                // the first occurrence is removed: the replacing one if it's before the previous position
+                removeFromParent(previousParent, node, previousParent == this && idx < previousIdx ? idx : previousIdx);
             }
             oldChild.parentNode = null;
         }
@@ -253,7 +292,9 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
         if (childs == EMPTY_LIST) {
             return;
         }
-        if (childs.remove(node)) {
+        int idx = node.indexIn(childs);
+        if (idx >= 0) {
+            removeFromParent(this, node, idx);
             node.parentNode = null;
         }
     }
@@ -271,7 +312,12 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
      */
     public Node getFirstChild() {
         List<Node> childs = getRawChildNodes();
-        return childs.isEmpty() ? null : childs.get(0);
+        if (childs.isEmpty()) {
+            return null;
+        }
+        Node first = childs.get(0);
+        first.siblingIndex = 0;
+        return first;
     }
 
     /**
@@ -280,7 +326,13 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
     @Override
     public Node getLastChild() {
         List<Node> childs = getRawChildNodes();
-        return childs.isEmpty() ? null : childs.get(childs.size() - 1);
+        if (childs.isEmpty()) {
+            return null;
+        }
+        int idx = childs.size() - 1;
+        Node last = childs.get(idx);
+        last.siblingIndex = idx;
+        return last;
     }
 
     /**
@@ -322,8 +374,8 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
         }
 
         List<Node> siblings = parentNode.getRawChildNodes();
-        int currentElemIdx = siblings.indexOf(this);
-        return currentElemIdx == 0 ? null : siblings.get(currentElemIdx - 1);
+        int currentElemIdx = indexIn(siblings);
+        return currentElemIdx == 0 ? null : sibling(siblings, currentElemIdx - 1);
     }
 
     /**
@@ -335,9 +387,9 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
             return null;
         }
         List<Node> siblings = parentNode.getRawChildNodes();
-        int currentElemIdx = siblings.indexOf(this);
+        int currentElemIdx = indexIn(siblings);
         for (int i = currentElemIdx - 1; i >= 0; i--) {
-            if (siblings.get(i) instanceof Element e) {
+            if (sibling(siblings, i) instanceof Element e) {
                 return e;
             }
         }
@@ -353,9 +405,9 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
         }
 
         List<Node> siblings = parentNode.getRawChildNodes();
-        int currentElemIdx = siblings.indexOf(this);
+        int currentElemIdx = indexIn(siblings);
 
-        return currentElemIdx == siblings.size() - 1 ? null : siblings.get(currentElemIdx + 1);
+        return currentElemIdx == siblings.size() - 1 ? null : sibling(siblings, currentElemIdx + 1);
     }
 
     /**
@@ -367,17 +419,25 @@ public sealed abstract class Node implements SelectableNode<Node> permits Commen
             return null;
         }
         List<Node> siblings = parentNode.getRawChildNodes();
-        int currentElemIdx = siblings.indexOf(this);
+        int currentElemIdx = indexIn(siblings);
         int count = siblings.size();
 
         for (int i = currentElemIdx + 1; i < count; i++) {
-            if (siblings.get(i) instanceof Element e) {
+            if (sibling(siblings, i) instanceof Element e) {
                 return e;
             }
         }
         return null;
     }
 
+    // the sibling at the given position, with its position cached: a walk through the siblings stays linear even
+    // after the child nodes have been changed directly
+    private static Node sibling(List<Node> siblings, int idx) {
+        Node sibling = siblings.get(idx);
+        sibling.siblingIndex = idx;
+        return sibling;
+    }
+
     /**
      * @return true if this node has at least one child.
      */
@@ -0,0 +1,72 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+
+/**
+ * A block of memory outside of the garbage collected heap, for an off-heap {@link FrozenDocument}.
+ *
+ * This version uses a direct buffer: it is limited to 2GB, and the memory can't be released explicitly, {@link #close()}
+ * only drops the buffer, which is freed once collected. On Java 22 and later, the version in META-INF/versions/22 uses
+ * a memory segment that is freed by {@link #close()}.
+ */
+final class OffHeapMemory implements AutoCloseable {
+
+    private ByteBuffer buffer;
+    private CharBuffer chars;
+
+    OffHeapMemory(long size) {
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cannot allocate " + size + " bytes in a direct buffer");
+        }
+        buffer = ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+        chars = buffer.asCharBuffer();
+    }
+
+    int getInt(long offset) {
+        return buffer.getInt((int) offset);
+    }
+
+    void putInt(long offset, int value) {
+        buffer.putInt((int) offset, value);
+    }
+
+    void putByte(long offset, byte value) {
+        buffer.put((int) offset, value);
+    }
+
+    void getBytes(long offset, byte[] dst) {
+        buffer.get((int) offset, dst);
+    }
+
+    // the offset of the chars must be even
+    void putChars(long offset, String s) {
+        chars.put((int) (offset / Character.BYTES), s.toCharArray());
+    }
+
+    void getChars(long offset, char[] dst) {
+        chars.get((int) (offset / Character.BYTES), dst);
+    }
+
+    @Override
+    public void close() {
+        buffer = null;
+        chars = null;
+    }
+}
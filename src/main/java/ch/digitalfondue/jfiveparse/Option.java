@@ -94,5 +94,15 @@ public enum Option {
      */
     INTERPRET_SELF_CLOSING_ANYTHING_ELSE,
 
-    DISABLE_IN_TABLE_TEXT_FOSTER_PARENTING
+    DISABLE_IN_TABLE_TEXT_FOSTER_PARENTING,
+
+    /**
+     * <p>
+     * Parser parameter. When parsing a {@link String}, the text, the attribute values and the comments refer to a
+     * slice of the input until they are read, instead of being copied while parsing.
+     * </p>
+     * Less is allocated while parsing, but the whole input is kept in memory as long as a value of the document has
+     * not been read: avoid it for the documents that are kept around.
+     */
+    SHARE_INPUT
 }
\ No newline at end of file
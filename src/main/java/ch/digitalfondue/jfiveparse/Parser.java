@@ -15,9 +15,17 @@
  */
 package ch.digitalfondue.jfiveparse;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -30,6 +38,7 @@ public class Parser {
     private final boolean disableIgnoreTokenInBodyStartTag;
     private final boolean interpretSelfClosingAnythingElse;
     private final boolean disableInTableTextForsterParenting;
+    private final boolean shareInput;
 
     /**
      * Instantiate a parser with the default configuration.
@@ -44,6 +53,7 @@ public class Parser {
         disableIgnoreTokenInBodyStartTag = false;
         interpretSelfClosingAnythingElse = false;
         disableInTableTextForsterParenting = false;
+        shareInput = false;
     }
 
     /**
@@ -55,6 +65,7 @@ public class Parser {
      * <li>{@link Option#DISABLE_IGNORE_TOKEN_IN_BODY_START_TAG}</li>
      * <li>{@link Option#INTERPRET_SELF_CLOSING_ANYTHING_ELSE}</li>
      * <li>{@link Option#DISABLE_IN_TABLE_TEXT_FOSTER_PARENTING}</li>
+     * <li>{@link Option#SHARE_INPUT}</li>
      * </ul>
      * 
      * @param options
@@ -65,6 +76,7 @@ public class Parser {
         this.disableIgnoreTokenInBodyStartTag = options.contains(Option.DISABLE_IGNORE_TOKEN_IN_BODY_START_TAG);
         this.interpretSelfClosingAnythingElse = options.contains(Option.INTERPRET_SELF_CLOSING_ANYTHING_ELSE);
         this.disableInTableTextForsterParenting = options.contains(Option.DISABLE_IN_TABLE_TEXT_FOSTER_PARENTING);
+        this.shareInput = options.contains(Option.SHARE_INPUT);
     }
 
     /**
@@ -75,7 +87,53 @@ public class Parser {
      * @return the parsed {@link Document}
      */
     public Document parse(String input) {
-        return parse(new ProcessedInputStream.StringProcessedInputStream(input));
+        return parse(processedInputStreamOf(input));
+    }
+
+    /**
+     * Parse a {@link CharSequence}. The content is copied in small blocks
+     * while parsing, a full copy is never done.
+     * 
+     * @param input
+     *            the {@link CharSequence} to parse
+     * @return the parsed {@link Document}
+     */
+    public Document parse(CharSequence input) {
+        return parse(processedInputStreamOf(input));
+    }
+
+    /**
+     * Parse a slice of a char array. The array is used as is, without any
+     * defensive copy: it must not be modified while parsing.
+     * 
+     * @param input
+     *            the char array
+     * @param offset
+     *            the start of the slice
+     * @param length
+     *            the length of the slice
+     * @return the parsed {@link Document}
+     */
+    public Document parse(char[] input, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, input.length);
+        return parse(new ProcessedInputStream.CharSliceProcessedInputStream(input, offset, length));
+    }
+
+    /**
+     * Parse the remaining characters of the buffer. If the buffer is backed
+     * by an accessible array, it's used as is, see
+     * {@link #parse(char[], int, int)}. The position of the given buffer is
+     * not modified.
+     * 
+     * @param input
+     *            the {@link CharBuffer} to parse
+     * @return the parsed {@link Document}
+     */
+    public Document parse(CharBuffer input) {
+        if (input.hasArray()) {
+            return parse(input.array(), input.arrayOffset() + input.position(), input.remaining());
+        }
+        return parse(new ProcessedInputStream.CharSequenceProcessedInputStream(input));
     }
 
     /**
@@ -90,6 +148,145 @@ public class Parser {
         return parse(new ProcessedInputStream.ReaderProcessedInputStream(input));
     }
 
+    /**
+     * Parse a byte stream. The encoding is detected following the <a href=
+     * "https://html.spec.whatwg.org/multipage/parsing.html#encoding-sniffing-algorithm">encoding
+     * sniffing algorithm</a>: the BOM is checked first, then the first 1024
+     * bytes are prescanned for a meta element declaring the charset. If
+     * nothing is found, UTF-8 is used.
+     * 
+     * Can launch a {@link ParserException} if the input stream launch a
+     * IOException. The stream is not closed.
+     * 
+     * @param input
+     *            the {@link InputStream} to parse
+     * @return the parsed {@link Document}
+     */
+    public Document parse(InputStream input) {
+        return parse(new ProcessedInputStream.InputStreamProcessedInputStream(input, null));
+    }
+
+    /**
+     * Parse the remaining bytes of the buffer. The encoding is detected as in
+     * {@link #parse(InputStream)}. The position of the given buffer is not
+     * modified.
+     * 
+     * @param input
+     *            the {@link ByteBuffer} to parse
+     * @return the parsed {@link Document}
+     */
+    public Document parse(ByteBuffer input) {
+        return parse(new ProcessedInputStream.ByteProcessedInputStream(input.duplicate(), null));
+    }
+
+    /**
+     * Parse a file. The file is memory mapped and decoded incrementally, its
+     * content is never fully loaded in the heap. The encoding is detected as
+     * in {@link #parse(InputStream)}.
+     * 
+     * Can launch a {@link ParserException} if an IOException is thrown while
+     * accessing the file.
+     * 
+     * @param input
+     *            the {@link Path} of the file to parse
+     * @return the parsed {@link Document}
+     */
+    public Document parse(Path input) {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            return parse(new ProcessedInputStream.FileChannelProcessedInputStream(channel, null));
+        } catch (IOException ioe) {
+            throw new ParserException(ioe);
+        }
+    }
+
+    /**
+     * Tokenize the input and notify the tokens to the handler, without
+     * building any node. This method is thread-safe.
+     * 
+     * @param input
+     *            the {@link String} to tokenize
+     * @param handler
+     *            the {@link TokenHandler} receiving the tokens
+     */
+    public void tokenize(String input, TokenHandler handler) {
+        tokenize(processedInputStreamOf(input), handler);
+    }
+
+    /**
+     * @see #tokenize(String, TokenHandler)
+     * @see #parse(Reader)
+     * 
+     * @param input
+     * @param handler
+     */
+    public void tokenize(Reader input, TokenHandler handler) {
+        tokenize(new ProcessedInputStream.ReaderProcessedInputStream(input), handler);
+    }
+
+    /**
+     * @see #tokenize(String, TokenHandler)
+     * @see #parse(InputStream)
+     * 
+     * @param input
+     * @param handler
+     */
+    public void tokenize(InputStream input, TokenHandler handler) {
+        tokenize(new ProcessedInputStream.InputStreamProcessedInputStream(input, null), handler);
+    }
+
+    private void tokenize(ProcessedInputStream is, TokenHandler handler) {
+        TokenHandlerAdapter tokenHandler = new TokenHandlerAdapter(handler, scriptingFlag);
+        Tokenizer tokenizer = new Tokenizer(tokenHandler, transformEntities);
+        tokenHandler.setTokenizer(tokenizer);
+        tokenizer.tokenize(is);
+    }
+
+    /**
+     * Create a new {@link IncrementalSession}, for parsing a document fed in
+     * chunks. This method is thread-safe, each call returns an independent
+     * session.
+     * 
+     * @return a new {@link IncrementalSession}
+     */
+    public IncrementalSession newIncrementalSession() {
+        TreeConstructor tokenHandler = newDocumentTreeConstructor();
+        return new IncrementalSession(tokenHandler, tokenHandler.getTokenizer());
+    }
+
+    /**
+     * Create a new {@link DocumentSubscriber}, for parsing the bytes published
+     * by a {@link java.util.concurrent.Flow.Publisher}. The encoding is
+     * detected as in {@link #parse(InputStream)}.
+     * 
+     * @return a new {@link DocumentSubscriber}
+     */
+    public DocumentSubscriber newDocumentSubscriber() {
+        return new DocumentSubscriber(newIncrementalSession());
+    }
+
+    /**
+     * Create a new {@link ParserSession}, for parsing many documents one after
+     * the other while reusing the internal state of the parser. This method is
+     * thread-safe, but the returned session is not.
+     * 
+     * @return a new {@link ParserSession}
+     */
+    public ParserSession newSession() {
+        return new ParserSession(newDocumentTreeConstructor(), null);
+    }
+
+    /**
+     * Create a new {@link ParserSessionPool}, for sharing the
+     * {@link ParserSession} between threads, including virtual threads.
+     * 
+     * @param maxIdleSessions
+     *            the maximum number of idle sessions kept by the pool
+     * @return a new {@link ParserSessionPool}
+     */
+    public ParserSessionPool newSessionPool(int maxIdleSessions) {
+        return new ParserSessionPool(this, maxIdleSessions);
+    }
+
     /***
      * Parse a fragment.
      * 
@@ -101,7 +298,7 @@ public class Parser {
      * @return
      */
     public List<Node> parseFragment(Element node, String input) {
-        return parseFragment(new ProcessedInputStream.StringProcessedInputStream(input), node);
+        return parseFragment(processedInputStreamOf(input), node);
     }
 
     /**
@@ -115,6 +312,22 @@ public class Parser {
         return parseFragment(new ProcessedInputStream.ReaderProcessedInputStream(input), node);
     }
 
+    /**
+     * @see #parseFragment(Element, String)
+     * @see #parse(Path)
+     * 
+     * @param node
+     * @param input
+     * @return
+     */
+    public List<Node> parseFragment(Element node, Path input) {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            return parseFragment(new ProcessedInputStream.FileChannelProcessedInputStream(channel, null), node);
+        } catch (IOException ioe) {
+            throw new ParserException(ioe);
+        }
+    }
+
     private List<Node> parseFragment(ProcessedInputStream is, Element node) {
 
         // 1 when creating a tree constructor, a document is automatically
@@ -123,7 +336,7 @@ public class Parser {
         //
         tokenHandler.isHtmlFragmentParsing = true;
         tokenHandler.scriptingFlag = scriptingFlag;
-        Tokenizer tokenizer = new Tokenizer(tokenHandler, transformEntities);
+        Tokenizer tokenizer = new Tokenizer(tokenHandler, transformEntities, shareInput);
         tokenHandler.setTokenizer(tokenizer);
 
         int namespaceID = node.namespaceID;
@@ -180,6 +393,21 @@ public class Parser {
         return new ArrayList<>(root.getRawChildNodes());
     }
 
+    // if possible, use the compact Latin-1 representation
+    static ProcessedInputStream processedInputStreamOf(String input) {
+        byte[] latin1 = ProcessedInputStream.Latin1ProcessedInputStream.toLatin1(input);
+        return latin1 != null ? new ProcessedInputStream.Latin1ProcessedInputStream(latin1) : new ProcessedInputStream.StringProcessedInputStream(input);
+    }
+
+    static ProcessedInputStream processedInputStreamOf(CharSequence input) {
+        if (input instanceof String s) {
+            return processedInputStreamOf(s);
+        } else if (input instanceof CharBuffer cb && cb.hasArray()) {
+            return new ProcessedInputStream.CharSliceProcessedInputStream(cb.array(), cb.arrayOffset() + cb.position(), cb.remaining());
+        }
+        return new ProcessedInputStream.CharSequenceProcessedInputStream(input);
+    }
+
     private static Element getFirstFormElementFrom(Node node) {
         while (node != null) {
             if (node instanceof Element element && Common.isHtmlNS(element, Common.ELEMENT_FORM_ID)) {
@@ -191,17 +419,22 @@ public class Parser {
     }
 
     private Document parse(ProcessedInputStream is) {
+        TreeConstructor tokenHandler = newDocumentTreeConstructor();
+        tokenHandler.getTokenizer().tokenize(is);
+
+        return tokenHandler.getDocument();
+    }
+
+    TreeConstructor newDocumentTreeConstructor() {
         TreeConstructor tokenHandler = new TreeConstructor(
                 disableIgnoreTokenInBodyStartTag,
                 interpretSelfClosingAnythingElse,
                 disableInTableTextForsterParenting
         );
         tokenHandler.scriptingFlag = scriptingFlag;
-        Tokenizer tokenizer = new Tokenizer(tokenHandler, transformEntities);
+        Tokenizer tokenizer = new Tokenizer(tokenHandler, transformEntities, shareInput);
         tokenHandler.setTokenizer(tokenizer);
-        tokenizer.tokenize(is);
-
-        return tokenHandler.getDocument();
+        return tokenHandler;
     }
 
 }
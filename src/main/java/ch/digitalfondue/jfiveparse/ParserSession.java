@@ -0,0 +1,154 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * A parser that reuses its internal state (buffers, stacks, name table)
+ * between the documents, for avoiding to allocate and grow it again for each
+ * of them. The documents are parsed as with the {@link Parser} that created
+ * the session.
+ * 
+ * Use {@link Parser#newSession()} for a standalone session, or a
+ * {@link ParserSessionPool} for sharing the sessions between threads. A
+ * session is not thread-safe.
+ */
+public final class ParserSession implements AutoCloseable {
+
+    private final Tokenizer tokenizer;
+    private final TreeConstructor tokenHandler;
+    private final ParserSessionPool pool;
+    // for the sessions of a pool: true between ParserSessionPool.acquire and close
+    boolean acquired;
+
+    ParserSession(TreeConstructor tokenHandler, ParserSessionPool pool) {
+        this.tokenizer = tokenHandler.getTokenizer();
+        this.tokenHandler = tokenHandler;
+        this.pool = pool;
+    }
+
+    /**
+     * @see Parser#parse(String)
+     * 
+     * @param input
+     * @return the parsed {@link Document}
+     */
+    public Document parse(String input) {
+        return parse(Parser.processedInputStreamOf(input));
+    }
+
+    /**
+     * @see Parser#parse(CharSequence)
+     * 
+     * @param input
+     * @return the parsed {@link Document}
+     */
+    public Document parse(CharSequence input) {
+        return parse(Parser.processedInputStreamOf(input));
+    }
+
+    /**
+     * @see Parser#parse(char[], int, int)
+     * 
+     * @param input
+     * @param offset
+     * @param length
+     * @return the parsed {@link Document}
+     */
+    public Document parse(char[] input, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, input.length);
+        return parse(new ProcessedInputStream.CharSliceProcessedInputStream(input, offset, length));
+    }
+
+    /**
+     * @see Parser#parse(Reader)
+     * 
+     * @param input
+     * @return the parsed {@link Document}
+     */
+    public Document parse(Reader input) {
+        return parse(new ProcessedInputStream.ReaderProcessedInputStream(input));
+    }
+
+    /**
+     * @see Parser#parse(InputStream)
+     * 
+     * @param input
+     * @return the parsed {@link Document}
+     */
+    public Document parse(InputStream input) {
+        return parse(new ProcessedInputStream.InputStreamProcessedInputStream(input, null));
+    }
+
+    /**
+     * @see Parser#parse(ByteBuffer)
+     * 
+     * @param input
+     * @return the parsed {@link Document}
+     */
+    public Document parse(ByteBuffer input) {
+        return parse(new ProcessedInputStream.ByteProcessedInputStream(input.duplicate(), null));
+    }
+
+    /**
+     * @see Parser#parse(Path)
+     * 
+     * @param input
+     * @return the parsed {@link Document}
+     */
+    public Document parse(Path input) {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            return parse(new ProcessedInputStream.FileChannelProcessedInputStream(channel, null));
+        } catch (IOException ioe) {
+            throw new ParserException(ioe);
+        }
+    }
+
+    private Document parse(ProcessedInputStream is) {
+        if (pool != null && !acquired) {
+            throw new IllegalStateException("The session has been returned to its pool");
+        }
+        try {
+            tokenizer.tokenize(is);
+            return tokenHandler.getDocument();
+        } finally {
+            // also when the parsing fails: the session must not keep any reference to the document
+            tokenizer.reset();
+            tokenHandler.reset();
+        }
+    }
+
+    /**
+     * Return the session to its pool, if it has been acquired from a
+     * {@link ParserSessionPool}: it must not be used anymore. Does nothing for
+     * a standalone session.
+     */
+    @Override
+    public void close() {
+        if (pool != null && acquired) {
+            acquired = false;
+            pool.release(this);
+        }
+    }
+}
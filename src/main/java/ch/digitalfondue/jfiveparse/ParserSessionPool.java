@@ -0,0 +1,79 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of {@link ParserSession}. The idle sessions are shared by all the
+ * threads instead of being bound to a thread: with virtual threads, each task
+ * running in its own thread, sessions bound to a thread would never be reused.
+ * The pool does not block nor lock, and it's thread-safe.
+ * 
+ * <pre>
+ * try (ParserSession session = pool.acquire()) {
+ *     Document document = session.parse(input);
+ * }
+ * </pre>
+ * 
+ * Use {@link Parser#newSessionPool(int)} for creating a pool.
+ */
+public final class ParserSessionPool {
+
+    private final Parser parser;
+    private final int maxIdleSessions;
+    private final ConcurrentLinkedQueue<ParserSession> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    ParserSessionPool(Parser parser, int maxIdleSessions) {
+        if (maxIdleSessions < 0) {
+            throw new IllegalArgumentException("maxIdleSessions must not be negative");
+        }
+        this.parser = parser;
+        this.maxIdleSessions = maxIdleSessions;
+    }
+
+    /**
+     * Take an idle session, or create a new one if there are none. The session
+     * must be closed for returning it to the pool.
+     * 
+     * @return a {@link ParserSession} used only by the caller until it's closed
+     */
+    public ParserSession acquire() {
+        ParserSession session = idle.poll();
+        if (session != null) {
+            idleCount.decrementAndGet();
+        } else {
+            session = new ParserSession(parser.newDocumentTreeConstructor(), this);
+        }
+        session.acquired = true;
+        return session;
+    }
+
+    void release(ParserSession session) {
+        // beyond the maximum, the session is simply dropped
+        if (idleCount.incrementAndGet() <= maxIdleSessions) {
+            idle.offer(session);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    int idleSessions() {
+        return idleCount.get();
+    }
+}
@@ -16,7 +16,15 @@
 package ch.digitalfondue.jfiveparse;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Wrapped and abstracted input. Can most likely be optimized.
@@ -27,6 +35,22 @@ abstract class ProcessedInputStream {
 
     protected abstract int read();
 
+    /**
+     * If true, the content is only composed of Latin-1 characters: the builders that receive it can use a compact
+     * storage.
+     */
+    boolean isLatin1() {
+        return false;
+    }
+
+    /**
+     * If true, the array passed by the readUntil* methods to {@link ResizableCharBuilder#appendInput} holds the whole
+     * input and is never modified afterwards: the builders can keep a slice of it instead of a copy.
+     */
+    boolean isStable() {
+        return false;
+    }
+
     int readUntil(ResizableCharBuilder builder, boolean stopAtAmpersand, boolean stopAtLessThan) {
         int chr;
         while (!buffer.isEmpty) {
@@ -39,6 +63,19 @@ abstract class ProcessedInputStream {
         return readUntilInternal(builder, stopAtAmpersand, stopAtLessThan);
     }
 
+    // stop at the first ASCII character stop1 or stop2, NULL or EOF: the stop character is consumed and returned
+    int readUntilAny(ResizableCharBuilder builder, int stop1, int stop2) {
+        int chr;
+        while (!buffer.isEmpty) {
+            chr = buffer.removeFirst();
+            if (chr == stop1 || chr == stop2 || chr == Characters.NULL || chr == Characters.EOF) {
+                return chr;
+            }
+            builder.append((char) chr);
+        }
+        return readUntilAnyInternal(builder, stop1, stop2);
+    }
+
     int readUntilAttributeValue(ResizableCharBuilder builder, int quoteChar, boolean stopAtAmpersand) {
         int chr;
         while (!buffer.isEmpty) {
@@ -52,10 +89,7 @@ abstract class ProcessedInputStream {
     }
 
     private static boolean mustStopReadUntilAttributeValueUnquoted(int chr) {
-        return Common.isTabLfFfCrOrSpace(chr) || chr == Characters.AMPERSAND || chr == Characters.GREATERTHAN_SIGN
-                || chr == Characters.NULL || chr == Characters.QUOTATION_MARK ||
-                chr == Characters.APOSTROPHE || chr == Characters.LESSTHAN_SIGN ||
-                chr == Characters.EQUALS_SIGN || chr == Characters.GRAVE_ACCENT || chr == Characters.EOF;
+        return CharClass.is(chr, CharClass.ATTRIBUTE_VALUE_UNQUOTED_STOP);
     }
 
     int readUntilAttributeValueUnquoted(ResizableCharBuilder builder) {
@@ -74,7 +108,7 @@ abstract class ProcessedInputStream {
         int chr;
         while (!buffer.isEmpty) {
             chr = buffer.removeFirst();
-            if (Common.isTabLfFfCrOrSpace(chr) || chr == Characters.SOLIDUS || chr == Characters.GREATERTHAN_SIGN || chr == Characters.NULL || chr == Characters.EOF) {
+            if (mustStopReadUntilTagName(chr)) {
                 return chr;
             }
             builder.append((char) chr);
@@ -83,8 +117,11 @@ abstract class ProcessedInputStream {
     }
 
     private static boolean mustStopReadUntilAttributeName(int chr) {
-        return Common.isTabLfFfCrOrSpace(chr) || chr == Characters.SOLIDUS || chr == Characters.EQUALS_SIGN || chr == Characters.GREATERTHAN_SIGN || chr == Characters.NULL ||
-                chr == Characters.QUOTATION_MARK || chr == Characters.APOSTROPHE || chr == Characters.LESSTHAN_SIGN || chr == Characters.EOF;
+        return CharClass.is(chr, CharClass.ATTRIBUTE_NAME_STOP);
+    }
+
+    private static boolean mustStopReadUntilTagName(int chr) {
+        return CharClass.is(chr, CharClass.TAG_NAME_STOP);
     }
 
     int readUntilAttributeName(ResizableCharBuilder builder) {
@@ -122,6 +159,17 @@ abstract class ProcessedInputStream {
         return Characters.EOF;
     }
 
+    protected int readUntilAnyInternal(ResizableCharBuilder builder, int stop1, int stop2) {
+        int chr;
+        while ((chr = read()) != Characters.EOF) {
+            if (chr == stop1 || chr == stop2 || chr == Characters.NULL) {
+                return chr;
+            }
+            builder.append((char) chr);
+        }
+        return Characters.EOF;
+    }
+
     protected int readUntilAttributeValueInternal(ResizableCharBuilder builder, int quoteChar, boolean stopAtAmpersand) {
         int chr;
         while ((chr = read()) != Characters.EOF) {
@@ -147,7 +195,7 @@ abstract class ProcessedInputStream {
     protected int readUntilTagNameInternal(ResizableCharBuilder builder) {
         int chr;
         while ((chr = read()) != Characters.EOF) {
-            if (Common.isTabLfFfCrOrSpace(chr) || chr == Characters.SOLIDUS || chr == Characters.GREATERTHAN_SIGN || chr == Characters.NULL) {
+            if (mustStopReadUntilTagName(chr)) {
                 return chr;
             }
             builder.append((char) chr);
@@ -214,11 +262,248 @@ abstract class ProcessedInputStream {
 
 
 
-    static class StringProcessedInputStream extends ProcessedInputStream {
-        private int pos = 0;
-        private final char[] input;
-        private final int length;
+    /**
+     * Input backed by a window over a char array: the window is input[pos, length). All the readUntil* methods are
+     * implemented as a scan over the window. When the window has been consumed, {@link #fill()} is called for loading
+     * the next one.
+     *
+     * The windows are normalized when loaded, except the one of {@link CharSliceProcessedInputStream}: the scan loops
+     * read a CR, or a CR LF pair, as a single LF. A CR LF pair must not be split between two windows.
+     */
+    abstract static class CharArrayProcessedInputStream extends ProcessedInputStream {
+
+        static final int BLOCK_SIZE = 8192;
+
+        protected char[] input;
+        protected int pos;
+        protected int length;
+        private boolean crFound;
+
+        /**
+         * Load the next window. The implementations must update input, pos and length.
+         *
+         * @return false if the end of the input has been reached
+         */
+        protected abstract boolean fill();
+
+        /**
+         * Normalize the newlines of input[0, count) in place and return the new count. A CR at the end of the block is
+         * remembered, so a LF at the beginning of the following block is skipped.
+         */
+        protected int normalizeNewLines(int count) {
+            return normalizeNewLines(0, count);
+        }
+
+        /**
+         * Normalize the newlines of input[from, to) in place and return the new end.
+         */
+        protected int normalizeNewLines(int from, int to) {
+            final char[] input = this.input;
+            int i = from;
+            if (!crFound) {
+                while (i < to && input[i] != Characters.CR) {
+                    i++;
+                }
+            }
+            int j = i;
+            for (; i < to; i++) {
+                char c = input[i];
+                if (c == Characters.CR) {
+                    input[j++] = Characters.LF;
+                    crFound = true;
+                } else {
+                    if (c != Characters.LF || !crFound) {
+                        input[j++] = c;
+                    }
+                    crFound = false;
+                }
+            }
+            return j;
+        }
+
+        @Override
+        protected int read() {
+            if (pos < length || fill()) {
+                char c = input[pos++];
+                return c == Characters.CR ? newLine() : c;
+            }
+            return Characters.EOF;
+        }
+
+        // the CR just consumed, and the LF following it, are read as a single LF
+        private int newLine() {
+            if (pos < length && input[pos] == Characters.LF) {
+                pos++;
+            }
+            return Characters.LF;
+        }
+
+        // append input[pos, i) and the LF read for the CR at i: when a LF follows, it starts the next run
+        private void appendNewLine(ResizableCharBuilder builder, int i) {
+            builder.appendInput(input, pos, i - pos);
+            if (i + 1 >= length || input[i + 1] != Characters.LF) {
+                builder.append(Characters.LF);
+            }
+            pos = i + 1;
+        }
+
+        @Override
+        protected int readUntilInternal(ResizableCharBuilder builder, boolean stopAtAmpersand, boolean stopAtLessThan) {
+            do {
+                final char[] input = this.input;
+                final int n = length;
+                int i = pos;
+                while (i < n) {
+                    char c = input[i];
+                    if ((stopAtAmpersand && c == Characters.AMPERSAND) || (stopAtLessThan && c == Characters.LESSTHAN_SIGN) || c == Characters.NULL) {
+                        builder.appendInput(input, pos, i - pos);
+                        pos = i + 1;
+                        return c;
+                    } else if (c == Characters.CR) {
+                        appendNewLine(builder, i);
+                    }
+                    i++;
+                }
+                builder.appendInput(input, pos, n - pos);
+                pos = n;
+            } while (fill());
+            return Characters.EOF;
+        }
+
+        @Override
+        protected int readUntilAnyInternal(ResizableCharBuilder builder, int stop1, int stop2) {
+            do {
+                final char[] input = this.input;
+                final int n = length;
+                int i = pos;
+                while (i < n) {
+                    char c = input[i];
+                    if (c == stop1 || c == stop2 || c == Characters.NULL) {
+                        builder.appendInput(input, pos, i - pos);
+                        pos = i + 1;
+                        return c;
+                    } else if (c == Characters.CR) {
+                        appendNewLine(builder, i);
+                    }
+                    i++;
+                }
+                builder.appendInput(input, pos, n - pos);
+                pos = n;
+            } while (fill());
+            return Characters.EOF;
+        }
+
+        @Override
+        protected int readUntilAttributeValueInternal(ResizableCharBuilder builder, int quoteChar, boolean stopAtAmpersand) {
+            do {
+                final char[] input = this.input;
+                final int n = length;
+                int i = pos;
+                while (i < n) {
+                    char c = input[i];
+                    if (c == quoteChar || (stopAtAmpersand && c == Characters.AMPERSAND) || c == Characters.NULL) {
+                        builder.appendInput(input, pos, i - pos);
+                        pos = i + 1;
+                        return c;
+                    } else if (c == Characters.CR) {
+                        appendNewLine(builder, i);
+                    }
+                    i++;
+                }
+                builder.appendInput(input, pos, n - pos);
+                pos = n;
+            } while (fill());
+            return Characters.EOF;
+        }
+
+        @Override
+        protected int readUntilAttributeValueUnquotedInternal(ResizableCharBuilder builder) {
+            do {
+                final char[] input = this.input;
+                final int n = length;
+                int i = pos;
+                while (i < n) {
+                    char c = input[i];
+                    if (mustStopReadUntilAttributeValueUnquoted(c)) {
+                        builder.appendInput(input, pos, i - pos);
+                        pos = i + 1;
+                        return c == Characters.CR ? newLine() : c;
+                    }
+                    i++;
+                }
+                builder.appendInput(input, pos, n - pos);
+                pos = n;
+            } while (fill());
+            return Characters.EOF;
+        }
 
+        @Override
+        protected int readUntilTagNameInternal(ResizableCharBuilder builder) {
+            do {
+                final char[] input = this.input;
+                final int n = length;
+                int i = pos;
+                while (i < n) {
+                    char c = input[i];
+                    if (mustStopReadUntilTagName(c)) {
+                        builder.appendInput(input, pos, i - pos);
+                        pos = i + 1;
+                        return c == Characters.CR ? newLine() : c;
+                    }
+                    i++;
+                }
+                builder.appendInput(input, pos, n - pos);
+                pos = n;
+            } while (fill());
+            return Characters.EOF;
+        }
+
+        @Override
+        protected int readUntilAttributeNameInternal(ResizableCharBuilder builder) {
+            do {
+                final char[] input = this.input;
+                final int n = length;
+                int i = pos;
+                while (i < n) {
+                    char c = input[i];
+                    if (mustStopReadUntilAttributeName(c)) {
+                        builder.appendInput(input, pos, i - pos); // append remaining
+                        pos = i + 1;
+                        return c == Characters.CR ? newLine() : c;
+                    }
+                    i++;
+                }
+                builder.appendInput(input, pos, n - pos);
+                pos = n;
+            } while (fill());
+            return Characters.EOF;
+        }
+
+        @Override
+        protected int readUntilCommentInternal(ResizableCharBuilder builder) {
+            do {
+                final char[] input = this.input;
+                final int n = length;
+                int i = pos;
+                while (i < n) {
+                    char c = input[i];
+                    if (c == Characters.HYPHEN_MINUS || c == Characters.NULL) {
+                        builder.appendInput(input, pos, i - pos);
+                        pos = i + 1;
+                        return c;
+                    } else if (c == Characters.CR) {
+                        appendNewLine(builder, i);
+                    }
+                    i++;
+                }
+                builder.appendInput(input, pos, n - pos);
+                pos = n;
+            } while (fill());
+            return Characters.EOF;
+        }
+    }
+
+    static class StringProcessedInputStream extends CharArrayProcessedInputStream {
 
         StringProcessedInputStream(String input) {
             char[] toNormalize = input.toCharArray();
@@ -246,148 +531,626 @@ abstract class ProcessedInputStream {
             return input[pos];
         }
 
+        @Override
+        protected boolean fill() {
+            return false;
+        }
+
+        // the normalized copy of the string is the only window
+        @Override
+        boolean isStable() {
+            return true;
+        }
+    }
+
+    /**
+     * Input composed only by Latin-1 characters, stored in a byte array. The readUntil* methods append the bytes
+     * directly to the builders.
+     */
+    static final class Latin1ProcessedInputStream extends ProcessedInputStream {
+
+        private final byte[] input;
+        private final int length;
+        private int pos;
+
+        Latin1ProcessedInputStream(byte[] input) {
+            int j = 0;
+            for (int i = 0; i < input.length; i++) {
+                byte c = input[i];
+                if (c == Characters.CR) {
+                    input[j++] = Characters.LF;
+                    if (i + 1 < input.length && input[i + 1] == Characters.LF) {
+                        i++;
+                    }
+                } else {
+                    input[j++] = c;
+                }
+            }
+            this.input = input;
+            this.length = j;
+        }
+
+        /**
+         * Return the Latin-1 encoded content of the string, or null if it contains other characters.
+         */
+        static byte[] toLatin1(String s) {
+            // stop at the first other character, before encoding anything
+            final int length = s.length();
+            for (int i = 0; i < length; i++) {
+                if (s.charAt(i) > 0xFF) {
+                    return null;
+                }
+            }
+            return s.getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        boolean isLatin1() {
+            return true;
+        }
+
+        @Override
+        boolean isStable() {
+            return true;
+        }
+
         @Override
         protected int read() {
             if (pos < length) {
-                return input[pos++];
+                return input[pos++] & 0xFF;
             }
             return Characters.EOF;
         }
 
         @Override
         protected int readUntilInternal(ResizableCharBuilder builder, boolean stopAtAmpersand, boolean stopAtLessThan) {
-            int n = length;
+            final byte[] input = this.input;
+            final int n = length;
             int i = pos;
+            if (Swar.ENABLED) {
+                i = Swar.indexOfAny(input, i, n, stopAtAmpersand ? Swar.AMPERSAND : Swar.NULL, stopAtLessThan ? Swar.LESSTHAN_SIGN : Swar.NULL, Swar.NULL);
+            }
             while (i < n) {
-                char c = input[i];
+                byte c = input[i];
                 if ((stopAtAmpersand && c == Characters.AMPERSAND) || (stopAtLessThan && c == Characters.LESSTHAN_SIGN) || c == Characters.NULL) {
-                    builder.append(input, pos, i - pos);
+                    builder.appendInput(input, pos, i - pos);
                     pos = i + 1;
                     return c;
                 }
                 i++;
             }
-            builder.append(input, pos, n - pos);
+            builder.appendInput(input, pos, n - pos);
             pos = n;
             return Characters.EOF;
         }
 
         @Override
-        protected int readUntilAttributeValueInternal(ResizableCharBuilder builder, int quoteChar, boolean stopAtAmpersand) {
-            int n = length;
+        protected int readUntilAnyInternal(ResizableCharBuilder builder, int stop1, int stop2) {
+            final byte[] input = this.input;
+            final int n = length;
             int i = pos;
+            if (Swar.ENABLED) {
+                i = Swar.indexOfAny(input, i, n, Swar.broadcast(stop1), Swar.broadcast(stop2), Swar.NULL);
+            }
             while (i < n) {
-                char c = input[i];
-                if (c == quoteChar || (stopAtAmpersand && c == Characters.AMPERSAND) || c == Characters.NULL) {
-                    builder.append(input, pos, i - pos);
+                byte c = input[i];
+                if (c == stop1 || c == stop2 || c == Characters.NULL) {
+                    builder.appendInput(input, pos, i - pos);
                     pos = i + 1;
                     return c;
                 }
                 i++;
             }
-            builder.append(input, pos, n - pos);
+            builder.appendInput(input, pos, n - pos);
             pos = n;
             return Characters.EOF;
         }
 
         @Override
-        protected int readUntilAttributeValueUnquotedInternal(ResizableCharBuilder builder) {
-            int n = length;
+        protected int readUntilAttributeValueInternal(ResizableCharBuilder builder, int quoteChar, boolean stopAtAmpersand) {
+            final byte[] input = this.input;
+            final int n = length;
             int i = pos;
+            if (Swar.ENABLED) {
+                i = Swar.indexOfAny(input, i, n, Swar.broadcast(quoteChar), stopAtAmpersand ? Swar.AMPERSAND : Swar.NULL, Swar.NULL);
+            }
             while (i < n) {
-                char c = input[i];
-                if (mustStopReadUntilAttributeValueUnquoted(c)) {
-                    builder.append(input, pos, i - pos);
+                byte c = input[i];
+                if (c == quoteChar || (stopAtAmpersand && c == Characters.AMPERSAND) || c == Characters.NULL) {
+                    builder.appendInput(input, pos, i - pos);
                     pos = i + 1;
                     return c;
                 }
                 i++;
             }
-            builder.append(input, pos, n - pos);
+            builder.appendInput(input, pos, n - pos);
+            pos = n;
+            return Characters.EOF;
+        }
+
+        @Override
+        protected int readUntilAttributeValueUnquotedInternal(ResizableCharBuilder builder) {
+            final byte[] input = this.input;
+            final int n = length;
+            int i = pos;
+            // all the delimiters are less than '?' or '`': the words without such bytes are skipped
+            while (i < n) {
+                int limit = n;
+                if (Swar.ENABLED) {
+                    i = Swar.skipWords(input, i, n, Characters.QUESTION_MARK, Swar.GRAVE_ACCENT);
+                    limit = Math.min(n, i + 8);
+                }
+                for (; i < limit; i++) {
+                    int c = input[i] & 0xFF;
+                    if (mustStopReadUntilAttributeValueUnquoted(c)) {
+                        builder.appendInput(input, pos, i - pos);
+                        pos = i + 1;
+                        return c;
+                    }
+                }
+            }
+            builder.appendInput(input, pos, n - pos);
             pos = n;
             return Characters.EOF;
         }
 
         @Override
         protected int readUntilTagNameInternal(ResizableCharBuilder builder) {
-            int n = length;
+            final byte[] input = this.input;
+            final int n = length;
             int i = pos;
+            // all the delimiters are less than '?': the words without such bytes are skipped
             while (i < n) {
-                char c = input[i];
-                if (Common.isTabLfFfCrOrSpace(c) || c == Characters.SOLIDUS || c == Characters.GREATERTHAN_SIGN || c == Characters.NULL) {
-                    builder.append(input, pos, i - pos);
-                    pos = i + 1;
-                    return c;
+                int limit = n;
+                if (Swar.ENABLED) {
+                    i = Swar.skipWords(input, i, n, Characters.QUESTION_MARK, Swar.NULL);
+                    limit = Math.min(n, i + 8);
+                }
+                for (; i < limit; i++) {
+                    int c = input[i] & 0xFF;
+                    if (mustStopReadUntilTagName(c)) {
+                        builder.appendInput(input, pos, i - pos);
+                        pos = i + 1;
+                        return c;
+                    }
                 }
-                i++;
             }
-            builder.append(input, pos, n - pos);
+            builder.appendInput(input, pos, n - pos);
             pos = n;
             return Characters.EOF;
         }
 
         @Override
         protected int readUntilAttributeNameInternal(ResizableCharBuilder builder) {
-            int n = length;
+            final byte[] input = this.input;
+            final int n = length;
             int i = pos;
+            // all the delimiters are less than '?': the words without such bytes are skipped
             while (i < n) {
-                char c = input[i];
-                if (mustStopReadUntilAttributeName(c)) {
-                    builder.append(input, pos, i - pos); // append remaining
-                    pos = i + 1;
-                    return c;
+                int limit = n;
+                if (Swar.ENABLED) {
+                    i = Swar.skipWords(input, i, n, Characters.QUESTION_MARK, Swar.NULL);
+                    limit = Math.min(n, i + 8);
+                }
+                for (; i < limit; i++) {
+                    int c = input[i] & 0xFF;
+                    if (mustStopReadUntilAttributeName(c)) {
+                        builder.appendInput(input, pos, i - pos);
+                        pos = i + 1;
+                        return c;
+                    }
                 }
-                i++;
             }
-            builder.append(input, pos, n - pos);
+            builder.appendInput(input, pos, n - pos);
             pos = n;
             return Characters.EOF;
         }
 
         @Override
         protected int readUntilCommentInternal(ResizableCharBuilder builder) {
-            int n = length;
+            final byte[] input = this.input;
+            final int n = length;
             int i = pos;
+            if (Swar.ENABLED) {
+                i = Swar.indexOfAny(input, i, n, Swar.HYPHEN_MINUS, Swar.NULL, Swar.NULL);
+            }
             while (i < n) {
-                char c = input[i];
+                byte c = input[i];
                 if (c == Characters.HYPHEN_MINUS || c == Characters.NULL) {
-                    builder.append(input, pos, i - pos);
+                    builder.appendInput(input, pos, i - pos);
                     pos = i + 1;
                     return c;
                 }
                 i++;
             }
-            builder.append(input, pos, n - pos);
+            builder.appendInput(input, pos, n - pos);
             pos = n;
             return Characters.EOF;
         }
     }
 
-    static final class ReaderProcessedInputStream extends ProcessedInputStream {
+    /**
+     * Use a slice of a char array as is, without copying it: the slice is the only window, its CR/LF normalization is
+     * done by the scan loops.
+     */
+    static final class CharSliceProcessedInputStream extends CharArrayProcessedInputStream {
+
+        CharSliceProcessedInputStream(char[] source, int offset, int length) {
+            this.input = source;
+            this.pos = offset;
+            this.length = offset + length;
+        }
+
+        @Override
+        protected boolean fill() {
+            return false;
+        }
+    }
+
+    /**
+     * Input pushed in chunks. When all the appended characters have been consumed and the input is not finished, a
+     * {@link SuspendParse} is thrown: the tokenizer can then be resumed after appending the next chunk.
+     */
+    static final class IncrementalCharProcessedInputStream extends CharArrayProcessedInputStream {
+
+        private boolean finished;
+
+        IncrementalCharProcessedInputStream() {
+            this.input = new char[BLOCK_SIZE];
+        }
+
+        void append(char[] chunk, int offset, int count) {
+            int end = reserve(count);
+            System.arraycopy(chunk, offset, input, end, count);
+            length = normalizeNewLines(end, end + count);
+        }
+
+        void append(CharBuffer chunk) {
+            int count = chunk.remaining();
+            int end = reserve(count);
+            chunk.get(input, end, count);
+            length = normalizeNewLines(end, end + count);
+        }
+
+        // make room for count characters after the unconsumed ones and return where to copy them
+        private int reserve(int count) {
+            int remaining = length - pos;
+            if (input.length - length < count) {
+                char[] dest = input.length - remaining < count ? new char[Math.max(input.length * 2, remaining + count)] : input;
+                System.arraycopy(input, pos, dest, 0, remaining);
+                input = dest;
+                pos = 0;
+                length = remaining;
+            }
+            return length;
+        }
+
+        void finish() {
+            finished = true;
+        }
+
+        @Override
+        protected boolean fill() {
+            if (finished) {
+                return false;
+            }
+            throw new SuspendParse();
+        }
+    }
+
+    /**
+     * Copy a {@link CharSequence} in blocks of {@link #BLOCK_SIZE} characters.
+     */
+    static final class CharSequenceProcessedInputStream extends CharArrayProcessedInputStream {
+
+        private final CharSequence source;
+        private int next;
+
+        CharSequenceProcessedInputStream(CharSequence source) {
+            this.source = source;
+            this.input = new char[BLOCK_SIZE];
+        }
+
+        @Override
+        protected boolean fill() {
+            final CharSequence source = this.source;
+            final char[] input = this.input;
+            while (next < source.length()) {
+                int count = Math.min(input.length, source.length() - next);
+                if (source instanceof String s) {
+                    s.getChars(next, next + count, input, 0);
+                } else if (source instanceof StringBuilder sb) {
+                    sb.getChars(next, next + count, input, 0);
+                } else if (source instanceof CharBuffer cb) {
+                    cb.get(cb.position() + next, input, 0, count);
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        input[i] = source.charAt(next + i);
+                    }
+                }
+                next += count;
+                pos = 0;
+                length = normalizeNewLines(count);
+                if (length > 0) {
+                    return true;
+                }
+            }
+            pos = 0;
+            length = 0;
+            return false;
+        }
+    }
+
+    /**
+     * Read the content of the reader in blocks of {@link #BLOCK_SIZE} characters. The CR/LF normalization is done on
+     * each block.
+     */
+    static final class ReaderProcessedInputStream extends CharArrayProcessedInputStream {
 
         private final Reader reader;
-        private boolean crFound;
 
         ReaderProcessedInputStream(Reader reader) {
+            this(reader, BLOCK_SIZE);
+        }
+
+        ReaderProcessedInputStream(Reader reader, int blockSize) {
             this.reader = reader;
+            this.input = new char[blockSize];
         }
 
         @Override
-        protected int read() {
+        protected boolean fill() {
             try {
-                int chr = reader.read();
-                if (crFound) {
-                    crFound = false;
-                    if (chr == Characters.LF) {
-                        chr = reader.read();
+                int count;
+                while ((count = reader.read(input, 0, input.length)) != -1) {
+                    pos = 0;
+                    length = normalizeNewLines(count);
+                    if (length > 0) {
+                        return true;
+                    }
+                }
+                pos = 0;
+                length = 0;
+                return false;
+            } catch (IOException ioe) {
+                throw new ParserException(ioe);
+            }
+        }
+    }
+
+    /**
+     * Decode the bytes in blocks of {@link #BLOCK_SIZE} characters directly in the input window. If no charset is
+     * given, it's detected using {@link EncodingSniffer}.
+     *
+     * For UTF-8 and the ASCII compatible single byte encodings, the runs of ASCII bytes are copied as is: the
+     * {@link CharsetDecoder} is used only for the other bytes.
+     */
+    static class ByteProcessedInputStream extends CharArrayProcessedInputStream {
+
+        protected ByteBuffer bytes;
+        private final CharBuffer out;
+        private Charset charset;
+        private CharsetDecoder decoder;
+        private boolean asciiFastPath;
+        private boolean endOfInput;
+        private boolean finished;
+
+        ByteProcessedInputStream(ByteBuffer bytes, Charset charset) {
+            this.bytes = bytes;
+            this.charset = charset;
+            this.input = new char[BLOCK_SIZE];
+            this.out = CharBuffer.wrap(input);
+        }
+
+        /**
+         * Read more bytes in the buffer, the unconsumed ones must be kept.
+         *
+         * @return false if the end of the input has been reached
+         */
+        protected boolean readBytes() {
+            return false;
+        }
+
+        private void initDecoder() {
+            if (charset == null) {
+                while (bytes.remaining() < EncodingSniffer.PRESCAN_LENGTH && readBytes()) {
+                    // read until we have enough bytes for the prescan
+                }
+                charset = EncodingSniffer.sniff(bytes);
+            } else {
+                bytes.position(bytes.position() + EncodingSniffer.bomLength(bytes));
+            }
+            decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+            asciiFastPath = charset == StandardCharsets.UTF_8 || charset == StandardCharsets.US_ASCII || charset == StandardCharsets.ISO_8859_1
+                    || charset.equals(EncodingSniffer.WINDOWS_1252);
+        }
+
+        @Override
+        protected boolean fill() {
+            if (decoder == null) {
+                initDecoder();
+            }
+            final CharBuffer out = this.out;
+            while (!finished) {
+                out.clear();
+                decode(out);
+                if (out.position() == 0) {
+                    if (endOfInput) {
+                        decoder.decode(bytes, out, true);
+                        decoder.flush(out);
+                        finished = true;
+                    } else if (!readBytes()) {
+                        endOfInput = true;
+                    }
+                }
+                if (out.position() > 0) {
+                    pos = 0;
+                    length = normalizeNewLines(out.position());
+                    if (length > 0) {
+                        return true;
                     }
                 }
+            }
+            pos = 0;
+            length = 0;
+            return false;
+        }
 
-                if (chr == Characters.CR) {
-                    crFound = true;
-                    chr = Characters.LF;
+        private void decode(CharBuffer out) {
+            if (!asciiFastPath) {
+                decoder.decode(bytes, out, endOfInput);
+                return;
+            }
+            final ByteBuffer bytes = this.bytes;
+            final char[] dst = input;
+            while (out.hasRemaining() && bytes.hasRemaining()) {
+                int sp = bytes.position();
+                int dp = out.position();
+                int n = Math.min(bytes.remaining(), out.remaining());
+                int i = 0;
+                if (bytes.hasArray()) {
+                    final byte[] src = bytes.array();
+                    final int offset = bytes.arrayOffset() + sp;
+                    for (; i < n; i++) {
+                        byte b = src[offset + i];
+                        if (b < 0) {
+                            break;
+                        }
+                        dst[dp + i] = (char) b;
+                    }
+                } else {
+                    for (; i < n; i++) {
+                        byte b = bytes.get(sp + i);
+                        if (b < 0) {
+                            break;
+                        }
+                        dst[dp + i] = (char) b;
+                    }
                 }
-                return chr;
+                bytes.position(sp + i);
+                out.position(dp + i);
+                if (i == n) {
+                    continue;
+                }
+
+                // non ASCII run: the decoder output at most one char for each byte, so the output is limited to
+                // avoid decoding the following ASCII run with the decoder
+                int start = sp + i;
+                int runEnd = start + 1;
+                while (runEnd < bytes.limit() && bytes.get(runEnd) < 0) {
+                    runEnd++;
+                }
+                out.limit(Math.min(out.capacity(), out.position() + runEnd - start));
+                decoder.decode(bytes, out, endOfInput);
+                out.limit(out.capacity());
+                if (bytes.position() == start) {
+                    // incomplete sequence: more bytes are needed
+                    return;
+                }
+            }
+        }
+    }
+
+    static final class InputStreamProcessedInputStream extends ByteProcessedInputStream {
+
+        private final InputStream inputStream;
+
+        InputStreamProcessedInputStream(InputStream inputStream, Charset charset) {
+            super(ByteBuffer.allocate(BLOCK_SIZE).flip(), charset);
+            this.inputStream = inputStream;
+        }
+
+        @Override
+        protected boolean readBytes() {
+            try {
+                bytes.compact();
+                int count = inputStream.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                if (count > 0) {
+                    bytes.position(bytes.position() + count);
+                }
+                bytes.flip();
+                return count != -1;
+            } catch (IOException ioe) {
+                throw new ParserException(ioe);
+            }
+        }
+    }
+
+    /**
+     * Bytes pushed in chunks, see {@link IncrementalCharProcessedInputStream}. The encoding is detected when at least
+     * {@link EncodingSniffer#PRESCAN_LENGTH} bytes have been received or the input is finished. The incomplete
+     * sequences at the end of a chunk are kept until the next one arrives.
+     */
+    static final class IncrementalByteProcessedInputStream extends ByteProcessedInputStream {
+
+        private boolean appended;
+        private boolean finished;
+
+        IncrementalByteProcessedInputStream() {
+            super(ByteBuffer.allocate(BLOCK_SIZE).flip(), null);
+        }
+
+        void append(ByteBuffer chunk) {
+            bytes.compact();
+            if (bytes.remaining() < chunk.remaining()) {
+                ByteBuffer dest = ByteBuffer.allocate(Math.max(bytes.capacity() * 2, bytes.position() + chunk.remaining()));
+                dest.put(bytes.flip());
+                bytes = dest;
+            }
+            bytes.put(chunk).flip();
+            appended = true;
+        }
+
+        void finish() {
+            finished = true;
+        }
+
+        @Override
+        protected boolean readBytes() {
+            if (appended) {
+                appended = false;
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+            throw new SuspendParse();
+        }
+    }
+
+    /**
+     * Map the file in regions of at most {@link #REGION_SIZE} bytes: the file content is never copied in the heap,
+     * only the current char window is.
+     */
+    static final class FileChannelProcessedInputStream extends ByteProcessedInputStream {
+
+        static final int REGION_SIZE = 1 << 28;
+
+        private final FileChannel channel;
+        private final long size;
+        private long regionStart;
+
+        FileChannelProcessedInputStream(FileChannel channel, Charset charset) throws IOException {
+            this(channel, charset, REGION_SIZE);
+        }
+
+        FileChannelProcessedInputStream(FileChannel channel, Charset charset, int regionSize) throws IOException {
+            super(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Math.max(regionSize, EncodingSniffer.PRESCAN_LENGTH))), charset);
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        @Override
+        protected boolean readBytes() {
+            long start = regionStart + bytes.position();
+            if (regionStart + bytes.limit() >= size) {
+                return false;
+            }
+            // the new region begin with the unconsumed bytes of the previous one
+            try {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, bytes.capacity()));
+                regionStart = start;
+                return true;
             } catch (IOException ioe) {
                 throw new ParserException(ioe);
             }
@@ -15,37 +15,93 @@
  */
 package ch.digitalfondue.jfiveparse;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
  * Resizable char buffer with some custom methods/properties.
+ *
+ * A builder created in latin1 mode store its content in a byte array, as long as only characters in the Latin-1 range
+ * are appended: {@link #toString()} can then create a compact {@link String} directly.
+ *
+ * A builder created with the slices flag can refer to a slice of the input instead of copying it, see
+ * {@link #appendInput(char[], int, int)}: the copy is done only if the content stops being contiguous in the input.
  */
 final class ResizableCharBuilder {
 
+    // only one of buff/bytes is used, depending on the latin1 flag
     private char[] buff;
+    private byte[] bytes;
+    private boolean latin1;
     private int pos = 0;
 
+    // the content is in [offset, offset + pos). When shared, buff/bytes is the input: it must not be written
+    private int offset;
+    private boolean shared;
+    private final boolean slices;
+
+    // the characters appended one by one before the first slice (the first character of a run) are compared with
+    // the input preceding it: bounded, for not comparing again and again a long content
+    private static final int MAX_SLICE_PREFIX = 8;
+    private static final char[] EMPTY_CHARS = new char[0];
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
     /* this field is accurate only after calling toLowerCase */
     boolean containsUpperCase;
 
     ResizableCharBuilder() {
         buff = new char[16];
+        slices = false;
+    }
+
+    ResizableCharBuilder(boolean latin1) {
+        this(latin1, false);
+    }
+
+    // with slices, nothing is allocated until the first character that is not a slice of the input
+    ResizableCharBuilder(boolean latin1, boolean slices) {
+        this.slices = slices;
+        if (latin1) {
+            this.latin1 = true;
+            bytes = slices ? EMPTY_BYTES : new byte[16];
+        } else {
+            buff = slices ? EMPTY_CHARS : new char[16];
+        }
     }
 
     // reset and set the given string
     void set(String s) {
         buff = s.toCharArray();
+        bytes = null;
+        latin1 = false;
         pos = buff.length;
+        offset = 0;
+        shared = false;
         containsUpperCase = false;
     }
 
     void reset() {
+        if (shared) {
+            // drop the slice, the next append allocates the owned storage
+            if (latin1) {
+                bytes = EMPTY_BYTES;
+            } else {
+                buff = EMPTY_CHARS;
+            }
+            offset = 0;
+            shared = false;
+        }
         pos = 0;
         containsUpperCase = false;
     }
 
+    // for test
+    boolean isShared() {
+        return shared;
+    }
+
     char at(int i) {
-        return buff[i];
+        return latin1 ? (char) (bytes[offset + i] & 0xFF) : buff[offset + i];
     }
 
     int pos() {
@@ -53,25 +109,71 @@ final class ResizableCharBuilder {
     }
 
     void append(char c) {
+        if (shared) {
+            unshare(1);
+        }
+        if (latin1) {
+            if (c <= 0xFF) {
+                if (pos == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2 + 2);
+                }
+                bytes[pos++] = (byte) c;
+                return;
+            }
+            inflate(1);
+        }
         if (pos == buff.length) {
             buff = Arrays.copyOf(buff, buff.length * 2 + 2);
         }
         buff[pos++] = c;
     }
 
+    // switch to the char storage, with room for at least "extra" more chars
+    private void inflate(int extra) {
+        char[] newBuff = new char[Math.max(pos + extra, bytes.length * 2 + 2)];
+        for (int i = 0; i < pos; i++) {
+            newBuff[i] = (char) (bytes[i] & 0xFF);
+        }
+        buff = newBuff;
+        bytes = null;
+        latin1 = false;
+    }
+
+    // copy the slice of the input in an owned storage, with room for at least "extra" more chars
+    private void unshare(int extra) {
+        int capacity = Math.max(pos + extra, pos * 2 + 2);
+        if (latin1) {
+            bytes = Arrays.copyOfRange(bytes, offset, offset + capacity);
+        } else {
+            buff = Arrays.copyOfRange(buff, offset, offset + capacity);
+        }
+        offset = 0;
+        shared = false;
+    }
+
     String toLowerCase() {
         containsUpperCase = false;
-        for (int i = 0; i < pos; i++) {
-            if (Common.isUpperCaseASCIILetter(buff[i])) {
-                containsUpperCase = true;
-                return lowerCaseInternal();
+        int end = offset + pos;
+        if (latin1) {
+            for (int i = offset; i < end; i++) {
+                if (Common.isUpperCaseASCIILetter(bytes[i] & 0xFF)) {
+                    containsUpperCase = true;
+                    return lowerCaseInternalLatin1();
+                }
+            }
+        } else {
+            for (int i = offset; i < end; i++) {
+                if (Common.isUpperCaseASCIILetter(buff[i])) {
+                    containsUpperCase = true;
+                    return lowerCaseInternal();
+                }
             }
         }
         return toString();
     }
 
     private String lowerCaseInternal() {
-        char[] newBuff = Arrays.copyOf(buff, pos);
+        char[] newBuff = Arrays.copyOfRange(buff, offset, offset + pos);
         for (int i = 0; i < pos; i++) {
             if (Common.isUpperCaseASCIILetter(newBuff[i])) {
                 newBuff[i] += 0x0020;
@@ -80,9 +182,19 @@ final class ResizableCharBuilder {
         return new String(newBuff);
     }
 
+    private String lowerCaseInternalLatin1() {
+        byte[] newBytes = Arrays.copyOfRange(bytes, offset, offset + pos);
+        for (int i = 0; i < pos; i++) {
+            if (Common.isUpperCaseASCIILetter(newBytes[i] & 0xFF)) {
+                newBytes[i] += 0x0020;
+            }
+        }
+        return new String(newBytes, StandardCharsets.ISO_8859_1);
+    }
+
     @Override
     public String toString() {
-        return new String(buff, 0, pos);
+        return latin1 ? new String(bytes, offset, pos, StandardCharsets.ISO_8859_1) : new String(buff, offset, pos);
     }
 
     boolean equalsASCIICaseInsensitive(char[] cb) {
@@ -90,7 +202,52 @@ final class ResizableCharBuilder {
             return false;
         }
         for (int i = 0; i < pos; i++) {
-            if (Common.toLowerCase(buff[i]) != Common.toLowerCase(cb[i])) {
+            if (Common.toLowerCase(at(i)) != Common.toLowerCase(cb[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean equalsASCIICaseInsensitive(ResizableCharBuilder other) {
+        if (pos != other.pos) {
+            return false;
+        }
+        for (int i = 0; i < pos; i++) {
+            if (Common.toLowerCase(at(i)) != Common.toLowerCase(other.at(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // same value as toString().hashCode(), without creating the string
+    int contentHashCode() {
+        int h = 0;
+        for (int i = 0; i < pos; i++) {
+            h = 31 * h + at(i);
+        }
+        return h;
+    }
+
+    boolean contentEquals(String s) {
+        if (s == null || pos != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < pos; i++) {
+            if (at(i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean contentEquals(ResizableCharBuilder other) {
+        if (pos != other.pos) {
+            return false;
+        }
+        for (int i = 0; i < pos; i++) {
+            if (at(i) != other.at(i)) {
                 return false;
             }
         }
@@ -98,10 +255,115 @@ final class ResizableCharBuilder {
     }
 
     char[] copyBackingCharArray() {
-        return Arrays.copyOf(buff, pos);
+        if (latin1) {
+            char[] copy = new char[pos];
+            for (int i = 0; i < pos; i++) {
+                copy[i] = (char) (bytes[offset + i] & 0xFF);
+            }
+            return copy;
+        }
+        return Arrays.copyOfRange(buff, offset, offset + pos);
+    }
+
+    // only for a builder in char mode: the content is in [0, pos)
+    char[] backingCharArray() {
+        if (shared) {
+            unshare(0);
+        }
+        return buff;
+    }
+
+    /**
+     * Append input[offset, offset + length), where input is the whole input of the parser and is never modified. A
+     * builder created with the slices flag refers to the input instead of copying it, as long as its content is a
+     * contiguous part of the input.
+     */
+    void appendInput(char[] input, int offset, int length) {
+        if (slices && length > 0) {
+            if (shared) {
+                if (input == buff && offset == this.offset + pos) {
+                    pos += length;
+                    return;
+                }
+            } else if (pos <= MAX_SLICE_PREFIX && pos <= offset && isPrecededBy(input, offset)) {
+                buff = input;
+                bytes = null;
+                latin1 = false;
+                this.offset = offset - pos;
+                pos += length;
+                shared = true;
+                return;
+            }
+        }
+        append(input, offset, length);
+    }
+
+    // same as appendInput(char[], int, int), for a Latin-1 encoded input
+    void appendInput(byte[] input, int offset, int length) {
+        if (slices && length > 0) {
+            if (shared) {
+                if (input == bytes && offset == this.offset + pos) {
+                    pos += length;
+                    return;
+                }
+            } else if (pos <= MAX_SLICE_PREFIX && pos <= offset && isPrecededBy(input, offset)) {
+                bytes = input;
+                buff = null;
+                latin1 = true;
+                this.offset = offset - pos;
+                pos += length;
+                shared = true;
+                return;
+            }
+        }
+        append(input, offset, length);
+    }
+
+    // the current content is equal to input[offset - pos, offset)
+    private boolean isPrecededBy(char[] input, int offset) {
+        int start = offset - pos;
+        for (int i = 0; i < pos; i++) {
+            if (at(i) != input[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isPrecededBy(byte[] input, int offset) {
+        int start = offset - pos;
+        for (int i = 0; i < pos; i++) {
+            if (at(i) != (char) (input[start + i] & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     void append(char[] c, int offset, int length) {
+        if (shared) {
+            unshare(length);
+        }
+        if (latin1) {
+            if (pos + length >= bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(pos + length, bytes.length * 2 + 2));
+            }
+            int i = 0;
+            for (; i < length; i++) {
+                char ch = c[offset + i];
+                if (ch > 0xFF) {
+                    break;
+                }
+                bytes[pos + i] = (byte) ch;
+            }
+            pos += i;
+            if (i == length) {
+                return;
+            }
+            offset += i;
+            length -= i;
+            inflate(length);
+        }
         if (pos + length >= buff.length) {
             buff = Arrays.copyOf(buff, Math.max(pos + length, buff.length * 2 + 2));
         }
@@ -109,7 +371,33 @@ final class ResizableCharBuilder {
         pos += length;
     }
 
+    // append Latin-1 encoded characters
+    void append(byte[] b, int offset, int length) {
+        if (shared) {
+            unshare(length);
+        }
+        if (latin1) {
+            if (pos + length >= bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(pos + length, bytes.length * 2 + 2));
+            }
+            System.arraycopy(b, offset, bytes, pos, length);
+        } else {
+            if (pos + length >= buff.length) {
+                buff = Arrays.copyOf(buff, Math.max(pos + length, buff.length * 2 + 2));
+            }
+            final char[] buff = this.buff;
+            for (int i = 0; i < length; i++) {
+                buff[pos + i] = (char) (b[offset + i] & 0xFF);
+            }
+        }
+        pos += length;
+    }
+
     void append(ResizableCharBuilder other) {
-        append(other.buff, 0, other.pos);
+        if (other.latin1) {
+            append(other.bytes, other.offset, other.pos);
+        } else {
+            append(other.buff, other.offset, other.pos);
+        }
     }
 }
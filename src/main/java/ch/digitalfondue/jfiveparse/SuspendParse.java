@@ -0,0 +1,33 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import java.io.Serial;
+
+/**
+ * For suspending the tokenizer when the incremental input has been fully consumed, this exception is launched
+ * internally. The tokenizer can be resumed when more input is available.
+ */
+final class SuspendParse extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 4806513617937384528L;
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return null;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * "SIMD within a register" helpers: check 8 bytes at a time, loaded as a little endian long.
+ *
+ * For each byte of a word, the returned masks have the high bit set if the byte match. As the words are little endian,
+ * the first matching byte is given by the number of trailing zeros of the mask. The masks may contain false positives,
+ * but only after a real match, so the first match is always exact.
+ *
+ * Only ASCII delimiters are supported: a byte with the high bit set never match.
+ */
+final class Swar {
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /**
+     * Can be disabled with the system property "ch.digitalfondue.jfiveparse.swar" set to false.
+     */
+    static final boolean ENABLED = !"false".equals(System.getProperty("ch.digitalfondue.jfiveparse.swar"));
+
+    static final long AMPERSAND = broadcast(Characters.AMPERSAND);
+    static final long LESSTHAN_SIGN = broadcast(Characters.LESSTHAN_SIGN);
+    static final long NULL = broadcast(Characters.NULL);
+    static final long HYPHEN_MINUS = broadcast(Characters.HYPHEN_MINUS);
+    static final long GRAVE_ACCENT = broadcast(Characters.GRAVE_ACCENT);
+
+    private Swar() {
+    }
+
+    static long broadcast(int b) {
+        return ONES * b;
+    }
+
+    static long word(byte[] bytes, int index) {
+        return (long) LONG_VIEW.get(bytes, index);
+    }
+
+    // mask of the bytes equal to the broadcasted byte
+    static long eq(long word, long broadcasted) {
+        long x = word ^ broadcasted;
+        return (x - ONES) & ~x & HIGHS;
+    }
+
+    // mask of the bytes less than n, n must be <= 128
+    static long lt(long word, int n) {
+        return (word - ONES * n) & ~word & HIGHS;
+    }
+
+    static int firstIndex(long mask) {
+        return Long.numberOfTrailingZeros(mask) >>> 3;
+    }
+
+    /**
+     * Return the index of the first byte equal to one of the three broadcasted bytes, in [from, to). If there is none,
+     * the index of the first byte not checked is returned (there are less than 8 bytes left).
+     */
+    static int indexOfAny(byte[] bytes, int from, int to, long a, long b, long c) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long w = word(bytes, i);
+            long mask = eq(w, a) | eq(w, b) | eq(w, c);
+            if (mask != 0) {
+                return i + firstIndex(mask);
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Return the index of the first word that contains a byte less than n or equal to the broadcasted byte, in
+     * [from, to). If there is none, the index of the first byte not checked is returned (there are less than 8 bytes
+     * left).
+     */
+    static int skipWords(byte[] bytes, int from, int to, int n, long broadcasted) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long w = word(bytes, i);
+            if ((lt(w, n) | eq(w, broadcasted)) != 0) {
+                return i;
+            }
+        }
+        return i;
+    }
+}
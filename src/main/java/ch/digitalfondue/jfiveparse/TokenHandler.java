@@ -0,0 +1,84 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+/**
+ * Receive the tokens produced by the tokenizer, without building any
+ * {@link Node}. See {@link Parser#tokenize(String, TokenHandler)}.
+ * 
+ * All the methods do nothing by default.
+ */
+public interface TokenHandler {
+
+    /**
+     * A start tag.
+     * 
+     * @param name
+     *            the lower case name
+     * @param attributes
+     *            the attributes, in the document order. The instance can be
+     *            kept: a new one is created for each tag.
+     * @param selfClosing
+     *            true if the tag ends with "/&gt;"
+     */
+    default void startTag(String name, Attributes attributes, boolean selfClosing) {
+    }
+
+    /**
+     * An end tag.
+     * 
+     * @param name
+     *            the lower case name
+     */
+    default void endTag(String name) {
+    }
+
+    /**
+     * A run of characters. The consecutive characters are always notified as
+     * a single run, with the character references already resolved. The
+     * array is reused: it must not be kept after this call.
+     * 
+     * @param chars
+     * @param offset
+     * @param length
+     */
+    default void characters(char[] chars, int offset, int length) {
+    }
+
+    default void comment(String data) {
+    }
+
+    /**
+     * A doctype. The missing values are null.
+     * 
+     * @param name
+     * @param publicId
+     * @param systemId
+     * @param forceQuirks
+     */
+    default void doctype(String name, String publicId, String systemId, boolean forceQuirks) {
+    }
+
+    default void processingInstruction(String target, String data) {
+    }
+
+    /**
+     * The end of the input has been reached. No other method is called after
+     * this one.
+     */
+    default void endOfFile() {
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+/**
+ * Dispatch the tokens to a {@link TokenHandler} instead of building a tree: no node is created.
+ *
+ * The tokenizer state is switched after the start tags of the raw text elements (script, style, title...) as the tree
+ * construction would do. As there are no open elements, the foreign content, where the CDATA sections are allowed, is
+ * detected by counting the open svg and math elements.
+ *
+ * The characters are collected in a run, where the tokenizer can append the text directly.
+ */
+final class TokenHandlerAdapter implements TokenSink {
+
+    private final TokenHandler handler;
+    private final boolean scriptingFlag;
+    private final ResizableCharBuilder run = new ResizableCharBuilder();
+    private Tokenizer tokenizer;
+    private int foreignDepth;
+    private boolean ignoreLF;
+    // the name and id of the last tag, resolved with the name table of the tokenizer
+    private String tagName;
+    private int tagNameID;
+
+    TokenHandlerAdapter(TokenHandler handler, boolean scriptingFlag) {
+        this.handler = handler;
+        this.scriptingFlag = scriptingFlag;
+    }
+
+    void setTokenizer(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    private void setTagName(ResizableCharBuilder name) {
+        NameTable names = tokenizer.names;
+        int slot = names.lookup(name);
+        if (slot >= 0) {
+            tagName = names.name(slot);
+            tagNameID = names.id(slot);
+        } else {
+            tagName = name.toLowerCase();
+            tagNameID = Common.tagNameToID(tagName);
+        }
+    }
+
+    private void flushCharacters() {
+        if (run.pos() > 0) {
+            handler.characters(run.backingCharArray(), 0, run.pos());
+            run.reset();
+        }
+    }
+
+    @Override
+    public void emitParseError() {
+    }
+
+    @Override
+    public void emitCharacter(char chr) {
+        if (ignoreLF) {
+            ignoreLF = false;
+            if (chr == Characters.LF) {
+                return;
+            }
+        }
+        run.append(chr);
+    }
+
+    @Override
+    public void emitCharacters(char[] chars, int offset, int length) {
+        if (ignoreLF && length > 0) {
+            ignoreLF = false;
+            if (chars[offset] == Characters.LF) {
+                offset++;
+                length--;
+            }
+        }
+        run.append(chars, offset, length);
+    }
+
+    @Override
+    public void emitComment(ResizableCharBuilder comment) {
+        ignoreLF = false;
+        flushCharacters();
+        handler.comment(comment.toString());
+    }
+
+    @Override
+    public void emitProcessingInstructionToken(String processingInstructionTokenTarget, String processingInstructionTokenData) {
+        ignoreLF = false;
+        flushCharacters();
+        handler.processingInstruction(processingInstructionTokenTarget, processingInstructionTokenData);
+    }
+
+    @Override
+    public void emitDoctypeToken(StringBuilder doctypeName, StringBuilder doctypePublicId, StringBuilder doctypeSystemId, boolean correctness) {
+        ignoreLF = false;
+        flushCharacters();
+        handler.doctype(toStringOrNull(doctypeName), toStringOrNull(doctypePublicId), toStringOrNull(doctypeSystemId), !correctness);
+    }
+
+    private static String toStringOrNull(StringBuilder sb) {
+        return sb == null ? null : sb.toString();
+    }
+
+    @Override
+    public void emitEOF() {
+        flushCharacters();
+        handler.endOfFile();
+        throw new StopParse();
+    }
+
+    @Override
+    public void emitEndTagToken(ResizableCharBuilder name) {
+        ignoreLF = false;
+        flushCharacters();
+        setTagName(name);
+        int id = tagNameID;
+        if (foreignDepth > 0 && (id == Common.ELEMENT_SVG_ID || id == Common.ELEMENT_MATH_ID)) {
+            foreignDepth--;
+        }
+        handler.endTag(tagName);
+    }
+
+    @Override
+    public void emitStartTagToken(ResizableCharBuilder name, Attributes attrs, boolean selfClosing) {
+        ignoreLF = false;
+        flushCharacters();
+        setTagName(name);
+        int id = tagNameID;
+        handler.startTag(tagName, attrs != null ? attrs : new Attributes(), selfClosing);
+        if (selfClosing) {
+            return;
+        }
+        if (id == Common.ELEMENT_SVG_ID || id == Common.ELEMENT_MATH_ID) {
+            foreignDepth++;
+        } else if (foreignDepth == 0) {
+            switchTokenizerState(id);
+        }
+    }
+
+    private void switchTokenizerState(int id) {
+        switch (id) {
+            case Common.ELEMENT_TITLE_ID, Common.ELEMENT_TEXTAREA_ID -> {
+                tokenizer.setState(TokenizerState.RCDATA_STATE);
+                ignoreLF = id == Common.ELEMENT_TEXTAREA_ID;
+            }
+            case Common.ELEMENT_STYLE_ID, Common.ELEMENT_XMP_ID, Common.ELEMENT_IFRAME_ID, Common.ELEMENT_NOEMBED_ID, Common.ELEMENT_NOFRAMES_ID ->
+                    tokenizer.setState(TokenizerState.RAWTEXT_STATE);
+            case Common.ELEMENT_NOSCRIPT_ID -> {
+                if (scriptingFlag) {
+                    tokenizer.setState(TokenizerState.RAWTEXT_STATE);
+                }
+            }
+            case Common.ELEMENT_SCRIPT_ID -> tokenizer.setState(TokenizerState.SCRIPT_DATA_STATE);
+            case Common.ELEMENT_PLAINTEXT_ID -> tokenizer.setState(TokenizerState.PLAINTEXT_STATE);
+            case Common.ELEMENT_PRE_ID, Common.ELEMENT_LISTING_ID -> ignoreLF = true;
+            default -> {
+            }
+        }
+    }
+
+    @Override
+    public boolean isInForeignContent() {
+        return foreignDepth > 0;
+    }
+
+    // all the characters go in the run
+
+    @Override
+    public boolean acceptsDataCharacters() {
+        return true;
+    }
+
+    @Override
+    public ResizableCharBuilder getDataCharactersBuilder() {
+        return run;
+    }
+
+    @Override
+    public ResizableCharBuilder getRawTextCharactersBuilder() {
+        return run;
+    }
+
+    @Override
+    public void endDirectCharacters() {
+    }
+}
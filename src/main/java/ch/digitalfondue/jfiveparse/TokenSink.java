@@ -0,0 +1,75 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+/**
+ * Receive the tokens of the {@link Tokenizer}: the {@link TreeConstructor}, or the {@link TokenHandlerAdapter} that
+ * forwards them to a {@link TokenHandler} without building any node.
+ *
+ * Besides the tokens, the tokenizer asks the sink if a CDATA section is allowed, and where it can append the
+ * characters directly, bypassing the per token dispatch.
+ */
+interface TokenSink {
+
+    void emitParseError();
+
+    void emitCharacter(char chr);
+
+    void emitCharacters(char[] chars, int offset, int length);
+
+    void emitComment(ResizableCharBuilder comment);
+
+    void emitProcessingInstructionToken(String processingInstructionTokenTarget, String processingInstructionTokenData);
+
+    void emitDoctypeToken(StringBuilder doctypeName, StringBuilder doctypePublicId, StringBuilder doctypeSystemId, boolean correctness);
+
+    /**
+     * Must throw {@link StopParse}.
+     */
+    void emitEOF();
+
+    void emitEndTagToken(ResizableCharBuilder name);
+
+    void emitStartTagToken(ResizableCharBuilder name, Attributes attrs, boolean selfClosing);
+
+    /**
+     * @return true if the adjusted current node is not in the HTML namespace: a CDATA section is then allowed
+     */
+    boolean isInForeignContent();
+
+    /**
+     * @return true if, in the data state, the next character can be followed by a run appended with
+     *         {@link #getDataCharactersBuilder()}
+     */
+    boolean acceptsDataCharacters();
+
+    /**
+     * @return after a character emitted in the data state, the builder where the following characters can be
+     *         appended directly, or null
+     */
+    ResizableCharBuilder getDataCharactersBuilder();
+
+    /**
+     * @return after a character emitted in the raw text, rcdata or script states, the builder where the following
+     *         characters can be appended directly, or null
+     */
+    ResizableCharBuilder getRawTextCharactersBuilder();
+
+    /**
+     * The characters appended directly have ended: the builder must not be used anymore.
+     */
+    void endDirectCharacters();
+}
@@ -26,7 +26,7 @@ import java.util.Locale;
  */
 final class Tokenizer {
 
-    private final TreeConstructor tokenHandler;
+    private final TokenSink tokenHandler;
 
     private int state;
 
@@ -42,7 +42,7 @@ final class Tokenizer {
     private boolean selfClosing;
     final ResizableCharBuilder tagName = new ResizableCharBuilder();
     private boolean isEndTagToken;
-    char[] lastEmittedStartTagName;
+    final ResizableCharBuilder lastEmittedStartTagName = new ResizableCharBuilder();
 
     // doctype related
     private boolean doctypeForceQuirksFlag;
@@ -59,16 +59,68 @@ final class Tokenizer {
     //
     private final ResizableCharBuilder temporaryBuffer = new ResizableCharBuilder();
 
+    // scratch buffer for the runs of characters that can't be appended directly to a text node
+    final ResizableCharBuilder characterRun = new ResizableCharBuilder();
+
+    // replacement of the last character reference, see TokenizerState.consumeCharacterReference
+    final char[] characterReference = new char[Entities.MAX_REPLACEMENT_LENGTH];
+
     final boolean transformEntities;
 
-    Tokenizer(TreeConstructor tokenHandler) {
+    // canonical tag and attribute names, see TreeConstructor.setTagName(ResizableCharBuilder)
+    NameTable names = NameTable.SHARED.copy();
+
+    // the input contains only Latin-1 characters
+    private boolean latin1;
+    // see Option.SHARE_INPUT
+    private final boolean shareInput;
+    private boolean stableInput;
+
+    Tokenizer(TokenSink tokenHandler) {
         this(tokenHandler, true);
     }
 
-    Tokenizer(TreeConstructor tokenHandler, boolean transformEntities) {
+    Tokenizer(TokenSink tokenHandler, boolean transformEntities) {
+        this(tokenHandler, transformEntities, false);
+    }
+
+    Tokenizer(TokenSink tokenHandler, boolean transformEntities, boolean shareInput) {
         this.tokenHandler = tokenHandler;
         state = TokenizerState.DATA_STATE;
         this.transformEntities = transformEntities;
+        this.shareInput = shareInput;
+    }
+
+    /**
+     * Restore the state of a new instance, for parsing another document. The buffers and the name table are kept, the
+     * name table only if it's not full.
+     */
+    void reset() {
+        if (names.isFull()) {
+            names = NameTable.SHARED.copy();
+        }
+        state = TokenizerState.DATA_STATE;
+        additionalAllowedCharacter = 0;
+        previousState = 0;
+        attributes = null;
+        currentAttributeName.reset();
+        currentAttributeValue = null;
+        currentAttributeQuoteType = 0;
+        selfClosing = false;
+        tagName.reset();
+        isEndTagToken = false;
+        lastEmittedStartTagName.reset();
+        doctypeForceQuirksFlag = false;
+        doctypeNameToken = null;
+        doctypePublicIdentifier = null;
+        doctypeSystemIdentifier = null;
+        commentToken = null;
+        processingInstructionTokenTarget = null;
+        processingInstructionTokenData = null;
+        temporaryBuffer.reset();
+        characterRun.reset();
+        latin1 = false;
+        stableInput = false;
     }
 
     //
@@ -91,11 +143,15 @@ final class Tokenizer {
         temporaryBuffer.append((char) chr);
     }
 
+    // builder for the content that will be kept in the document (text, attribute values, comments): with a stable
+    // input shared on request, it refers to a slice of the input until a character reference or a NULL breaks the
+    // contiguity
+    ResizableCharBuilder newCharBuilder() {
+        return new ResizableCharBuilder(latin1, stableInput);
+    }
+
     void emitTemporaryBufferAsCharacters() {
-        int pos = temporaryBuffer.pos();
-        for (int i = 0; i < pos; i++) {
-            tokenHandler.emitCharacter(temporaryBuffer.at(i));
-        }
+        tokenHandler.emitCharacters(temporaryBuffer.backingCharArray(), 0, temporaryBuffer.pos());
     }
 
     /* ASCII case-insensitive match */
@@ -126,7 +182,18 @@ final class Tokenizer {
         tokenHandler.emitCharacter((char) chr);
     }
 
+    void emitCharacters(char[] chars, int offset, int length) {
+        tokenHandler.emitCharacters(chars, offset, length);
+    }
+
+    // emit the characters collected in the character run buffer
+    void emitCharacterRun() {
+        tokenHandler.emitCharacters(characterRun.backingCharArray(), 0, characterRun.pos());
+    }
+
     void tokenize(ProcessedInputStream processedInputStream) {
+        latin1 = processedInputStream.isLatin1();
+        stableInput = shareInput && processedInputStream.isStable();
         try {
             for (;;) {
                 // most used states
@@ -171,6 +238,8 @@ final class Tokenizer {
                 //
             }
         } catch (StopParse sp) {
+        } catch (SuspendParse sp) {
+            // the incremental input needs more data: tokenize will be called again
         }
     }
 
@@ -403,7 +472,7 @@ final class Tokenizer {
     // ------------
 
     boolean isAppropriateEndTagToken() {
-        return tagName.pos() != 0 && lastEmittedStartTagName != null && tagName.equalsASCIICaseInsensitive(lastEmittedStartTagName);
+        return tagName.pos() != 0 && tagName.equalsASCIICaseInsensitive(lastEmittedStartTagName);
     }
 
     // When the user agent leaves the attribute name state (and before emitting
@@ -416,16 +485,16 @@ final class Tokenizer {
     void addCurrentAttributeInAttributes() {
         try {
             if (currentAttributeName.pos() != 0) { // not empty
-                String curAttrName = currentAttributeName.toLowerCase();
+                String curAttrName = names.intern(currentAttributeName);
                 if (attributes.containsKey(curAttrName)) {
                     tokenHandler.emitParseError();
                 } else {
-                    attributes.put(new AttributeNode(
+                    attributes.add(
                             curAttrName,
                             currentAttributeName.containsUpperCase ? currentAttributeName.toString() : curAttrName,
                             currentAttributeValue,
                             currentAttributeQuoteType
-                    ));
+                    );
                 }
             }
         } catch (NullPointerException npe) {
@@ -444,7 +513,7 @@ final class Tokenizer {
         }
         addCurrentAttributeInAttributes();
         currentAttributeName.reset();
-        currentAttributeValue = new ResizableCharBuilder();
+        currentAttributeValue = newCharBuilder();
         currentAttributeQuoteType = TokenizerState.ATTRIBUTE_VALUE_UNQUOTED_STATE;
         appendCurrentAttributeName(chr);
     }
@@ -485,7 +554,8 @@ final class Tokenizer {
          * seems nope
          */
         if (!isEndTagToken) {
-            lastEmittedStartTagName = tagName.copyBackingCharArray();
+            lastEmittedStartTagName.reset();
+            lastEmittedStartTagName.append(tagName);
         }
 
         emitTagToken();
@@ -521,13 +591,13 @@ final class Tokenizer {
     // -------
 
     void createNewCommentToken() {
-        commentToken = new ResizableCharBuilder();
+        commentToken = newCharBuilder();
     }
 
 
     public void createProcessingInstructionToken() {
         processingInstructionTokenTarget = temporaryBuffer.toString();
-        processingInstructionTokenData = new ResizableCharBuilder();
+        processingInstructionTokenData = newCharBuilder();
     }
 
     void appendCommentCharacter(int chr) {
@@ -604,25 +674,25 @@ final class Tokenizer {
         this.previousState = previousState;
     }
 
-    Element getAdjustedCurrentNode() {
-        return tokenHandler.getAdjustedCurrentNode();
+    boolean isTokenHandlerInForeignContent() {
+        return tokenHandler.isInForeignContent();
     }
 
-    // optimizations related getters and methods
-    int getTokenHandlerInsertionMode() {
-        return tokenHandler.getInsertionMode();
+    // optimizations related getters and methods, see TokenSink
+    boolean tokenHandlerAcceptsDataCharacters() {
+        return tokenHandler.acceptsDataCharacters();
     }
 
-    boolean isTokenHandlerInHtmlContent() {
-        return tokenHandler.isInHtmlContent();
+    ResizableCharBuilder getTokenHandlerDataCharactersBuilder() {
+        return tokenHandler.getDataCharactersBuilder();
     }
 
-    ResizableCharBuilder getTokenHandlerInsertCharacterPreviousTextNode() {
-        return tokenHandler.getInsertCharacterPreviousTextNode();
+    ResizableCharBuilder getTokenHandlerRawTextCharactersBuilder() {
+        return tokenHandler.getRawTextCharactersBuilder();
     }
 
-    void resetTokenHandlerInsertCharacterPreviousTextNode() {
-        tokenHandler.resetInsertCharacterPreviousTextNode();
+    void endTokenHandlerDirectCharacters() {
+        tokenHandler.endDirectCharacters();
     }
 
     void emitParseErrorAndSetState(int state) {
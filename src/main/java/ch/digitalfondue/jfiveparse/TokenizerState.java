@@ -209,6 +209,9 @@ final class TokenizerState {
     //region TokenizerRCDataAndScriptStates
     static void handleRCDataState(Tokenizer tokenizer, ProcessedInputStream processedInputStream) {
         int chr = processedInputStream.getNextInputCharacterAndConsume();
+        if (chr != Characters.AMPERSAND && chr != Characters.LESSTHAN_SIGN && chr != Characters.NULL && chr != Characters.EOF) {
+            chr = emitCharactersUntil(tokenizer, processedInputStream, chr, Characters.AMPERSAND, Characters.LESSTHAN_SIGN);
+        }
         switch (chr) {
             case Characters.AMPERSAND:
                 tokenizer.setState(CHARACTER_REFERENCE_IN_RCDATA_STATE);
@@ -224,43 +227,18 @@ final class TokenizerState {
                 tokenizer.emitEOF(); // does nothing
                 break;
             default:
-                int previousInsertionMode = tokenizer.getTokenHandlerInsertionMode();
-                tokenizer.emitCharacter(chr);
-                int currentInsertionMode = tokenizer.getTokenHandlerInsertionMode();
-                ResizableCharBuilder textNode = tokenizer.getTokenHandlerInsertCharacterPreviousTextNode();
-                if (tokenizer.getState() == RCDATA_STATE && previousInsertionMode == currentInsertionMode && textNode != null) {
-                    int internalChr = processedInputStream.readUntil(textNode, true, true);
-                    switch (internalChr) {
-                        case Characters.AMPERSAND:
-                            tokenizer.setState(CHARACTER_REFERENCE_IN_RCDATA_STATE);
-                            return;
-                        case Characters.LESSTHAN_SIGN:
-                            tokenizer.setState(RCDATA_LESS_THAN_SIGN_STATE);
-                            return;
-                        case Characters.NULL:
-                            tokenizer.emitParseError();
-                            tokenizer.emitCharacter(Characters.REPLACEMENT_CHARACTER);
-                            return;
-                        case Characters.EOF:
-                            tokenizer.emitEOF();
-                            return;
-                        default:
-                            break;
-                    }
-                }
                 break;
         }
     }
 
     static void handleCharacterReferenceInRCDataState(Tokenizer tokenizer, ProcessedInputStream processedInputStream) {
+        // the state is switched only when the reference has been fully read: the input may be suspended while reading it
+        int length = consumeCharacterReference(-1, false, processedInputStream, tokenizer);
         tokenizer.setState(RCDATA_STATE);
-        char[] chars = consumeCharacterReference(-1, false, processedInputStream, tokenizer);
-        if (chars == null) {
+        if (length == 0) {
             tokenizer.emitCharacter(Characters.AMPERSAND);
         } else {
-            for (int c : chars) {
-                tokenizer.emitCharacter(c);
-            }
+            tokenizer.emitCharacters(tokenizer.characterReference, 0, length);
         }
     }
 
@@ -339,8 +317,12 @@ final class TokenizerState {
 
     static void handleScriptDataState(Tokenizer tokenizer, ProcessedInputStream processedInputStream) {
         int chr = processedInputStream.getNextInputCharacterAndConsume();
+        if (chr != Characters.LESSTHAN_SIGN && chr != Characters.NULL && chr != Characters.EOF) {
+            chr = emitCharactersUntil(tokenizer, processedInputStream, chr, Characters.LESSTHAN_SIGN, Characters.LESSTHAN_SIGN);
+        }
         switch (chr) {
             case Characters.EOF:
+                tokenizer.endTokenHandlerDirectCharacters();
                 tokenizer.emitEOF();
                 break;
             case Characters.NULL:
@@ -351,31 +333,6 @@ final class TokenizerState {
                 tokenizer.setState(SCRIPT_DATA_LESS_THAN_SIGN_STATE);
                 break;
             default:
-                // tokenizer.emitCharacter(chr);
-                int previousInsertionMode = tokenizer.getTokenHandlerInsertionMode();
-                tokenizer.emitCharacter(chr);
-                int currentInsertionMode = tokenizer.getTokenHandlerInsertionMode();
-                ResizableCharBuilder textNode = tokenizer.getTokenHandlerInsertCharacterPreviousTextNode();
-
-                // optimization: bypass if possible
-                if (tokenizer.getState() == SCRIPT_DATA_STATE && previousInsertionMode == currentInsertionMode && textNode != null) {
-                    int internalChr = processedInputStream.readUntil(textNode, false, true);
-                    switch (internalChr) {
-                        case Characters.EOF:
-                            tokenizer.resetTokenHandlerInsertCharacterPreviousTextNode();
-                            tokenizer.emitEOF();
-                            return;
-                        case Characters.NULL:
-                            tokenizer.emitParseError();
-                            tokenizer.emitCharacter(Characters.REPLACEMENT_CHARACTER);
-                            return;
-                        case Characters.LESSTHAN_SIGN:
-                            tokenizer.setState(SCRIPT_DATA_LESS_THAN_SIGN_STATE);
-                            return;
-                        default:
-                            break;
-                    }
-                }
                 break;
         }
     }
@@ -515,6 +472,9 @@ final class TokenizerState {
 
     static void handleScriptDataEscapedState(Tokenizer tokenizer, ProcessedInputStream processedInputStream) {
         int chr = processedInputStream.getNextInputCharacterAndConsume();
+        if (chr != Characters.HYPHEN_MINUS && chr != Characters.LESSTHAN_SIGN && chr != Characters.NULL && chr != Characters.EOF) {
+            chr = emitCharactersUntil(tokenizer, processedInputStream, chr, Characters.HYPHEN_MINUS, Characters.LESSTHAN_SIGN);
+        }
         switch (chr) {
             case Characters.HYPHEN_MINUS:
                 tokenizer.setState(SCRIPT_DATA_ESCAPED_DASH_STATE);
@@ -533,7 +493,6 @@ final class TokenizerState {
                 processedInputStream.reconsume(chr);
                 break;
             default:
-                tokenizer.emitCharacter(chr);
                 break;
         }
     }
@@ -671,6 +630,9 @@ final class TokenizerState {
 
     static void handleScriptDataDoubleEscapedState(Tokenizer tokenizer, ProcessedInputStream processedInputStream) {
         int chr = processedInputStream.getNextInputCharacterAndConsume();
+        if (chr != Characters.HYPHEN_MINUS && chr != Characters.LESSTHAN_SIGN && chr != Characters.NULL && chr != Characters.EOF) {
+            chr = emitCharactersUntil(tokenizer, processedInputStream, chr, Characters.HYPHEN_MINUS, Characters.LESSTHAN_SIGN);
+        }
         switch (chr) {
             case Characters.HYPHEN_MINUS:
                 tokenizer.setState(SCRIPT_DATA_DOUBLE_ESCAPED_DASH_STATE);
@@ -689,7 +651,6 @@ final class TokenizerState {
                 processedInputStream.reconsume(chr);
                 break;
             default:
-                tokenizer.emitCharacter(chr);
                 break;
         }
     }
@@ -788,6 +749,9 @@ final class TokenizerState {
 
     static void handlePlainTextState(Tokenizer tokenizer, ProcessedInputStream processedInputStream) {
         int chr = processedInputStream.getNextInputCharacterAndConsume();
+        if (chr != Characters.NULL && chr != Characters.EOF) {
+            chr = emitCharactersUntil(tokenizer, processedInputStream, chr, Characters.NULL, Characters.NULL);
+        }
         switch (chr) {
             case Characters.NULL:
                 tokenizer.emitParseError();
@@ -797,24 +761,6 @@ final class TokenizerState {
                 tokenizer.emitEOF();
                 break;
             default:
-                int previousInsertionMode = tokenizer.getTokenHandlerInsertionMode();
-                tokenizer.emitCharacter(chr);
-                int currentInsertionMode = tokenizer.getTokenHandlerInsertionMode();
-                ResizableCharBuilder textNode = tokenizer.getTokenHandlerInsertCharacterPreviousTextNode();
-                if (tokenizer.getState() == PLAINTEXT_STATE && previousInsertionMode == currentInsertionMode && textNode != null) {
-                    int internalChr = processedInputStream.readUntil(textNode, false, false);
-                    switch (internalChr) {
-                        case Characters.NULL:
-                            tokenizer.emitParseError();
-                            tokenizer.emitCharacter(Characters.REPLACEMENT_CHARACTER);
-                            return;
-                        case Characters.EOF:
-                            tokenizer.emitEOF();
-                            return;
-                        default:
-                            break;
-                    }
-                }
                 break;
         }
     }
@@ -823,6 +769,9 @@ final class TokenizerState {
 
     static void handleRawtextState(Tokenizer tokenizer, ProcessedInputStream processedInputStream) {
         int chr = processedInputStream.getNextInputCharacterAndConsume();
+        if (chr != Characters.LESSTHAN_SIGN && chr != Characters.NULL && chr != Characters.EOF) {
+            chr = emitCharactersUntil(tokenizer, processedInputStream, chr, Characters.LESSTHAN_SIGN, Characters.LESSTHAN_SIGN);
+        }
         switch (chr) {
             case Characters.LESSTHAN_SIGN:
                 tokenizer.setState(RAWTEXT_LESS_THAN_SIGN_STATE);
@@ -835,32 +784,35 @@ final class TokenizerState {
                 tokenizer.emitEOF();
                 break;
             default:
-                int previousInsertionMode = tokenizer.getTokenHandlerInsertionMode(); // optim
-                tokenizer.emitCharacter(chr);
-                // vvv optimization vvv
-                int currentInsertionMode = tokenizer.getTokenHandlerInsertionMode();
-                ResizableCharBuilder textNode = tokenizer.getTokenHandlerInsertCharacterPreviousTextNode();
-                if (tokenizer.getState() == RAWTEXT_STATE && previousInsertionMode == currentInsertionMode && textNode != null) {
-                    int internalChr = processedInputStream.readUntil(textNode, false, true);
-                    switch (internalChr) {
-                        case Characters.LESSTHAN_SIGN:
-                            tokenizer.setState(RAWTEXT_LESS_THAN_SIGN_STATE);
-                            return;
-                        case Characters.NULL:
-                            tokenizer.emitParseError();
-                            tokenizer.emitCharacter(Characters.REPLACEMENT_CHARACTER);
-                            return;
-                        case Characters.EOF:
-                            tokenizer.emitEOF();
-                            return;
-                        default:
-                            break;
-                    }
-                }
                 break;
         }
     }
 
+    // emit chr and the characters following it up to the first stop character: stop1, stop2, NULL or EOF, which is
+    // consumed and returned.
+    // In the "text" insertion mode the characters are copied directly in the current text node, in all the other
+    // cases they are dispatched to the tree constructor as a single run.
+    private static int emitCharactersUntil(Tokenizer tokenizer, ProcessedInputStream processedInputStream, int chr, int stop1, int stop2) {
+        tokenizer.emitCharacter(chr);
+        ResizableCharBuilder textNode = tokenizer.getTokenHandlerRawTextCharactersBuilder();
+        if (textNode != null) {
+            return processedInputStream.readUntilAny(textNode, stop1, stop2);
+        }
+
+        ResizableCharBuilder run = tokenizer.characterRun;
+        run.reset();
+        int stop;
+        try {
+            stop = processedInputStream.readUntilAny(run, stop1, stop2);
+        } catch (SuspendParse suspend) {
+            // the characters read so far have been consumed
+            tokenizer.emitCharacterRun();
+            throw suspend;
+        }
+        tokenizer.emitCharacterRun();
+        return stop;
+    }
+
     static void handleRawTextLessThanSignState(Tokenizer tokenizer, ProcessedInputStream processedInputStream) {
         int chr = processedInputStream.getNextInputCharacterAndConsume();
         if (chr == Characters.SOLIDUS) {
@@ -956,9 +908,7 @@ final class TokenizerState {
                 processedInputStream.consume(7);
                 tokenizer.setState(DOCTYPE_STATE);
 
-            } else if (tokenizer.getAdjustedCurrentNode() != null && //
-                    Node.NAMESPACE_HTML_ID != tokenizer.getAdjustedCurrentNode().namespaceID && //
-                    Arrays.equals(CDATA, chars)) {
+            } else if (tokenizer.isTokenHandlerInForeignContent() && Arrays.equals(CDATA, chars)) {
 
                 processedInputStream.consume(7);
                 tokenizer.setState(CDATA_SECTION_STATE);
@@ -1078,21 +1028,24 @@ final class TokenizerState {
                 processedInputStream.reconsume(chr);
                 break;
             default:
+                // put back the character, so it's not lost if the input is suspended while peeking
+                processedInputStream.reconsume(chr);
                 int[] sixChars = new int[]{
-                        chr,
                         processedInputStream.peekNextInputCharacter(1),
                         processedInputStream.peekNextInputCharacter(2),
                         processedInputStream.peekNextInputCharacter(3),
                         processedInputStream.peekNextInputCharacter(4),
-                        processedInputStream.peekNextInputCharacter(5)
+                        processedInputStream.peekNextInputCharacter(5),
+                        processedInputStream.peekNextInputCharacter(6)
                 };
                 if (Common.matchCharsCaseInsensitive(Common.PUBLIC, sixChars)) {
-                    processedInputStream.consume(5);
+                    processedInputStream.consume(6);
                     tokenizer.setState(AFTER_DOCTYPE_PUBLIC_KEYWORD_STATE);
                 } else if (Common.matchCharsCaseInsensitive(Common.SYSTEM, sixChars)) {
-                    processedInputStream.consume(5);
+                    processedInputStream.consume(6);
                     tokenizer.setState(AFTER_DOCTYPE_SYSTEM_KEYWORD_STATE);
                 } else {
+                    processedInputStream.consume();
                     tokenizer.emitParseError();
                     tokenizer.setDoctypeForceQuirksFlag(true);
                     tokenizer.setState(BOGUS_DOCTYPE_STATE);
@@ -1654,72 +1607,66 @@ final class TokenizerState {
     //endregion
 
     //region TokenizerCharacterReference
-    static char[] consumeCharacterReference(int additionalCharacter, boolean inAttribute, ProcessedInputStream processedInputStream, Tokenizer tokenHandler) {
+    /**
+     * Consume a character reference, its replacement is copied in {@link Tokenizer#characterReference}.
+     *
+     * @return the length of the replacement, 0 if no character reference has been consumed
+     */
+    static int consumeCharacterReference(int additionalCharacter, boolean inAttribute, ProcessedInputStream processedInputStream, Tokenizer tokenHandler) {
         //
         if(!tokenHandler.transformEntities) {
-            return null;
+            return 0;
         }
         //
 
         int chr = processedInputStream.peekNextInputCharacter(1);
 
         if (additionalCharacter != -1 && additionalCharacter == chr) {
-            return null;
+            return 0;
         }
 
         switch (chr) {
             case Characters.TAB, Characters.LF, Characters.SPACE,
                  Characters.LESSTHAN_SIGN, Characters.AMPERSAND, Characters.EOF:
-                return null;
+                return 0;
             case Characters.NUMBER_SIGN: {
-                // parseNumberSign
-                processedInputStream.consume();
-                int nextChar = processedInputStream.peekNextInputCharacter(1);
+                // parseNumberSign: nothing is consumed until the whole reference has been peeked
+                int nextChar = processedInputStream.peekNextInputCharacter(2);
                 if (nextChar == Characters.LATIN_SMALL_LETTER_X || nextChar == Characters.LATIN_CAPITAL_LETTER_X) {
-                    return parseHexSection(processedInputStream, tokenHandler, nextChar);
+                    return parseNumericSection(processedInputStream, tokenHandler, 2, 16, tokenHandler.characterReference);
                 } else {
-                    return parseDecSection(processedInputStream, tokenHandler);
+                    return parseNumericSection(processedInputStream, tokenHandler, 1, 10, tokenHandler.characterReference);
                 }
             }
             default:
-                return parseEntity(inAttribute, processedInputStream, tokenHandler, chr);
+                return parseEntity(inAttribute, processedInputStream, tokenHandler, tokenHandler.characterReference);
         }
     }
 
-    private static char[] parseEntity(boolean inAttribute, ProcessedInputStream processedInputStream, Tokenizer tokenHandler, int chr) {
-        int matchedCount = 0;
-        var currentPrefix = EntitiesPrefix.ENTITIES;
-        ResizableCharBuilder tentativelyMatched = new ResizableCharBuilder();
+    private static int parseEntity(boolean inAttribute, ProcessedInputStream processedInputStream, Tokenizer tokenHandler, char[] dest) {
+        var entities = Entities.ENTITIES;
+        int node = Entities.ROOT;
+        int depth = 0;
+        int matchedNode = -1;
+        int matchedLength = 0;
+        int next;
 
+        // longest match: the complete node found at the highest depth
         for (;;) {
-            int next = processedInputStream.peekNextInputCharacter(matchedCount + 1);
-            if (next != Characters.EOF) {
-                tentativelyMatched.append((char) next);
-            }
-            var tmpPrefix = currentPrefix.getNode((char) next);
-            if (tmpPrefix != null) {
-                currentPrefix = tmpPrefix;
-                matchedCount++;
-            } else {
+            next = processedInputStream.peekNextInputCharacter(depth + 1);
+            int child = entities.child(node, next);
+            if (child == -1) {
                 break;
             }
-        }
-
-        if (!currentPrefix.isComplete()) {
-            var maybeCompleteParent = currentPrefix.getMaybeCompleteParent();
-            if (maybeCompleteParent != null) {
-                currentPrefix = maybeCompleteParent;
+            node = child;
+            depth++;
+            if (entities.isComplete(node)) {
+                matchedNode = node;
+                matchedLength = depth;
             }
         }
 
-        if (currentPrefix.isComplete()) {
-            String entityMatched = currentPrefix.getString();
-            if (inAttribute) {
-                return handleCompleteEntityInAttribute(processedInputStream, tokenHandler, currentPrefix, entityMatched);
-            } else {
-                return handleCompleteEntityNotInAttribute(processedInputStream, tokenHandler, currentPrefix, entityMatched);
-            }
-        } else {
+        if (matchedNode == -1) {
             // handleUncompleteEntity
             // If no match can be made, then no characters are consumed, and
             // nothing is returned.
@@ -1728,60 +1675,43 @@ final class TokenizerState {
             // alphanumeric ASCII characters
             // followed by a U+003B SEMICOLON character (;), then this is a
             // parse error.
-
-            int tentativelyMatchedLength = tentativelyMatched.pos();
-            boolean emitParseError = tentativelyMatchedLength > 1 && tentativelyMatched.at(tentativelyMatchedLength - 1) == Characters.SEMICOLON;
-            if (emitParseError) {
-                for (int i = 0; emitParseError && i < tentativelyMatchedLength - 1; i++) {
-                    emitParseError = Common.isAlphaNumericASCII(tentativelyMatched.at(i));
-                }
-            }
-
-            if (emitParseError) {
+            // The characters walked in the trie are all alphanumeric: a name ends with the semicolon.
+            if (depth > 0 && next == Characters.SEMICOLON) {
                 tokenHandler.emitParseError();
             }
-            return null;
+            return 0;
         }
-    }
-
-
 
-    private static char[] handleCompleteEntityNotInAttribute(ProcessedInputStream processedInputStream, Tokenizer tokenHandler, EntitiesPrefix currentPrefix, String entityMatched) {
-        if ((currentPrefix.c) != Characters.SEMICOLON) {
+        if (entities.label(matchedNode) != Characters.SEMICOLON) {
+            if (inAttribute) {
+                int nextCharacterAfterMatchedEntity = processedInputStream.peekNextInputCharacter(matchedLength + 1);
+                if (Common.isAlphaNumericASCII(nextCharacterAfterMatchedEntity)) {
+                    return 0;
+                } else if (Characters.EQUALS_SIGN == nextCharacterAfterMatchedEntity) {
+                    tokenHandler.emitParseError();
+                    return 0;
+                }
+            }
             tokenHandler.emitParseError();
         }
 
-        processedInputStream.consume(entityMatched.length() - 1);
-        return currentPrefix.chars;
-    }
-
-    private static char[] handleCompleteEntityInAttribute(ProcessedInputStream processedInputStream, Tokenizer tokenHandler, EntitiesPrefix currentPrefix, String entityMatched) {
-        if (currentPrefix.c != Characters.SEMICOLON) {
-            int nextCharacterAfterMatchedEntity = processedInputStream.peekNextInputCharacter(entityMatched.length());
-            if (Common.isAlphaNumericASCII(nextCharacterAfterMatchedEntity)) {
-                return null;
-            } else if (Characters.EQUALS_SIGN == nextCharacterAfterMatchedEntity) {
-                tokenHandler.emitParseError();
-                return null;
-            } else {
-                return handleCompleteEntityNotInAttribute(processedInputStream, tokenHandler, currentPrefix, entityMatched);
-            }
-
-        } else {
-            processedInputStream.consume(entityMatched.length() - 1);
-            return currentPrefix.chars;
-        }
+        processedInputStream.consume(matchedLength);
+        return entities.copyReplacement(matchedNode, dest);
     }
 
-    private static char[] parseDecSection(ProcessedInputStream processedInputStream, Tokenizer tokenHandler) {
+    /**
+     * Parse the digits following the prefix ("#" or "#x") of a numeric character reference. The prefix and the
+     * digits are only peeked, they are consumed at the end.
+     */
+    private static int parseNumericSection(ProcessedInputStream processedInputStream, Tokenizer tokenHandler, int prefixLength, int radix, char[] dest) {
 
         int matchedCount = 0;
         ResizableCharBuilder sb = new ResizableCharBuilder();
 
         for (;;) {
-            int nextPossibleHexDigit = processedInputStream.peekNextInputCharacter(matchedCount + 1);
-            if (Common.isASCIIDigit(nextPossibleHexDigit)) {
-                sb.append((char) nextPossibleHexDigit);
+            int nextPossibleDigit = processedInputStream.peekNextInputCharacter(prefixLength + matchedCount + 1);
+            if (radix == 16 ? Common.isASCIIHexDigit(nextPossibleDigit) : Common.isASCIIDigit(nextPossibleDigit)) {
+                sb.append((char) nextPossibleDigit);
                 matchedCount++;
             } else {
                 break;
@@ -1790,81 +1720,42 @@ final class TokenizerState {
 
         if (matchedCount == 0) {
             // this handle the EOF too it seems
-            processedInputStream.reconsume('#'); // #
-            tokenHandler.emitParseError();
-            return null;
-        } else {
-            processedInputStream.consume(matchedCount);
-            if (Characters.SEMICOLON == processedInputStream.peekNextInputCharacter(1)) {
-                processedInputStream.consume();
-            } else {
-                tokenHandler.emitParseError();
-            }
-            try {
-                return numberToChars(tokenHandler, sb, 10);
-            } catch (NumberFormatException nfe) {
-                // greater than Int
-                tokenHandler.emitParseError();
-                return Character.toChars(Characters.REPLACEMENT_CHARACTER);
-            }
-        }
-    }
-
-    private static char[] parseHexSection(ProcessedInputStream processedInputStream, Tokenizer tokenHandler, int prevChar) {
-
-        processedInputStream.consume();
-
-        int matchedCount = 0;
-        ResizableCharBuilder sb = new ResizableCharBuilder();
-
-        for (;;) {
-            int nextPossibleHexDigit = processedInputStream.peekNextInputCharacter(matchedCount + 1);
-            if (Common.isASCIIHexDigit(nextPossibleHexDigit)) {
-                sb.append((char) nextPossibleHexDigit);
-                matchedCount++;
-            } else {
-                break;
-            }
-        }
-
-        if (matchedCount == 0) {
-            processedInputStream.reconsume(prevChar);
-            processedInputStream.reconsume('#');// # and x|X
             tokenHandler.emitParseError();
-            return null;
+            return 0;
         } else {
-            processedInputStream.consume(matchedCount);
+            // the character following the digits has already been peeked
+            processedInputStream.consume(prefixLength + matchedCount);
             if (Characters.SEMICOLON == processedInputStream.peekNextInputCharacter(1)) {
                 processedInputStream.consume();
             } else {
                 tokenHandler.emitParseError();
             }
             try {
-                return numberToChars(tokenHandler, sb, 16);
+                return Character.toChars(numberToCodePoint(tokenHandler, sb, radix), dest, 0);
             } catch (NumberFormatException nfe) {
                 // greater than Int
                 tokenHandler.emitParseError();
-                return Character.toChars(Characters.REPLACEMENT_CHARACTER);
+                return Character.toChars(Characters.REPLACEMENT_CHARACTER, dest, 0);
             }
         }
     }
 
-    private static char[] numberToChars(Tokenizer tokenHandler, ResizableCharBuilder sb, int radix) {
+    private static int numberToCodePoint(Tokenizer tokenHandler, ResizableCharBuilder sb, int radix) {
         int parsedInt = Integer.parseInt(sb.toString(), radix);
 
         final int characterReferenceInSubstitutionTable = isCharacterReferenceSubstitutionTable(parsedInt);
 
         if (characterReferenceInSubstitutionTable != -1) {
             tokenHandler.emitParseError();
-            return Character.toChars(characterReferenceInSubstitutionTable);
+            return characterReferenceInSubstitutionTable;
         } else if ((parsedInt >= 0xD800 && parsedInt <= 0xDFFF) || parsedInt > 0x10FFFF) {
             tokenHandler.emitParseError();
-            return Character.toChars(Characters.REPLACEMENT_CHARACTER);
+            return Characters.REPLACEMENT_CHARACTER;
         } else {
             if (isCharacterReferenceInvalid(parsedInt)) {
                 tokenHandler.emitParseError();
             }
-            return Character.toChars(parsedInt);
+            return parsedInt;
         }
     }
 
@@ -1955,19 +1846,16 @@ final class TokenizerState {
                 tokenizer.setState(TAG_OPEN_STATE);
                 break;
             default:
-                int previousInsertionMode = tokenizer.getTokenHandlerInsertionMode(); // optim
+                boolean direct = tokenizer.tokenHandlerAcceptsDataCharacters(); // optim
                 tokenizer.emitCharacter(chr);
                 // vvv optimization vvv
-                int currentInsertionMode = tokenizer.getTokenHandlerInsertionMode();
-                ResizableCharBuilder textNode = tokenizer.getTokenHandlerInsertCharacterPreviousTextNode();
-                if (tokenizer.getState() == DATA_STATE && previousInsertionMode == currentInsertionMode
-                        && (currentInsertionMode == TreeConstructor.IM_IN_BODY || currentInsertionMode == TreeConstructor.IM_IN_CELL)
-                        && tokenizer.isTokenHandlerInHtmlContent() && textNode != null) {
+                ResizableCharBuilder textNode = direct ? tokenizer.getTokenHandlerDataCharactersBuilder() : null;
+                if (tokenizer.getState() == DATA_STATE && textNode != null) {
 
                     int internalChr = processedInputStream.readUntil(textNode, true, true);
                     switch (internalChr) {
                         case Characters.EOF:
-                            tokenizer.resetTokenHandlerInsertCharacterPreviousTextNode();
+                            tokenizer.endTokenHandlerDirectCharacters();
                             tokenizer.emitEOF();
                             return;
                         case Characters.NULL:
@@ -1975,55 +1863,94 @@ final class TokenizerState {
                             tokenizer.emitCharacter(internalChr);
                             return;
                         case Characters.AMPERSAND:
-                            tokenizer.resetTokenHandlerInsertCharacterPreviousTextNode();
+                            tokenizer.endTokenHandlerDirectCharacters();
                             tokenizer.setState(CHARACTER_REFERENCE_IN_DATA_STATE);
                             return;
                         case Characters.LESSTHAN_SIGN:
-                            tokenizer.resetTokenHandlerInsertCharacterPreviousTextNode();
+                            tokenizer.endTokenHandlerDirectCharacters();
                             tokenizer.setState(TAG_OPEN_STATE);
                             return;
                         default:
                             break;
                     }
 
+                } else if (tokenizer.getState() == DATA_STATE) {
+                    // the characters can't be appended directly (table text, whitespace in head, foreign content...):
+                    // the run is still handed over to the tree constructor in a single call
+                    handleDataStateCharacterRun(tokenizer, processedInputStream);
                 }
                 break;
         }
     }
 
+    private static void handleDataStateCharacterRun(Tokenizer tokenizer, ProcessedInputStream processedInputStream) {
+        ResizableCharBuilder run = tokenizer.characterRun;
+        run.reset();
+        int internalChr;
+        try {
+            internalChr = processedInputStream.readUntil(run, true, true);
+        } catch (SuspendParse suspend) {
+            // the characters read so far have been consumed
+            tokenizer.emitCharacterRun();
+            throw suspend;
+        }
+        tokenizer.emitCharacterRun();
+        switch (internalChr) {
+            case Characters.EOF:
+                tokenizer.emitEOF();
+                break;
+            case Characters.NULL:
+                tokenizer.emitParseError();
+                tokenizer.emitCharacter(internalChr);
+                break;
+            case Characters.AMPERSAND:
+                tokenizer.setState(CHARACTER_REFERENCE_IN_DATA_STATE);
+                break;
+            case Characters.LESSTHAN_SIGN:
+                tokenizer.setState(TAG_OPEN_STATE);
+                break;
+            default:
+                break;
+        }
+    }
+
     static void handleCharacterReferenceInDataState(Tokenizer tokenizer, ProcessedInputStream processedInputStream) {
+        // the state is switched only when the reference has been fully read: the input may be suspended while reading it
+        int length = consumeCharacterReference(-1, false, processedInputStream, tokenizer);
         tokenizer.setState(DATA_STATE);
-        char[] chars = consumeCharacterReference(-1, false, processedInputStream, tokenizer);
-        if (chars == null) {
+        if (length == 0) {
             tokenizer.emitCharacter(Characters.AMPERSAND);
         } else {
-            for (int c : chars) {
-                tokenizer.emitCharacter(c);
-            }
+            tokenizer.emitCharacters(tokenizer.characterReference, 0, length);
         }
     }
 
     // cdata
 
     static void handleCDataSectionState(Tokenizer tokenizer, ProcessedInputStream processedInputStream) {
-        tokenizer.setState(DATA_STATE);
-
+        // the state is switched only at the end of the section: the input may be suspended in the middle of it
         while (true) {
-
-            if (processedInputStream.peekNextInputCharacter(1) == Characters.RIGHT_SQUARE_BRACKET
-                    && processedInputStream.peekNextInputCharacter(2) == Characters.RIGHT_SQUARE_BRACKET
-                    && processedInputStream.peekNextInputCharacter(3) == Characters.GREATERTHAN_SIGN) {
-                processedInputStream.consume(3);
-                return;
-            } else {
-                int curr = processedInputStream.peekNextInputCharacter(1);
-
-                if (curr == Characters.EOF) {
+            int curr = processedInputStream.peekNextInputCharacter(1);
+            if (curr == Characters.RIGHT_SQUARE_BRACKET) {
+                if (processedInputStream.peekNextInputCharacter(2) == Characters.RIGHT_SQUARE_BRACKET
+                        && processedInputStream.peekNextInputCharacter(3) == Characters.GREATERTHAN_SIGN) {
+                    processedInputStream.consume(3);
+                    tokenizer.setState(DATA_STATE);
                     return;
-                } else {
-                    processedInputStream.consume();
-                    tokenizer.emitCharacter(curr);
                 }
+                processedInputStream.consume();
+                tokenizer.emitCharacter(curr);
+            } else if (curr == Characters.EOF) {
+                tokenizer.setState(DATA_STATE);
+                return;
+            } else if (curr == Characters.NULL) {
+                processedInputStream.consume();
+                tokenizer.emitCharacter(curr);
+            } else {
+                processedInputStream.consume();
+                int stop = emitCharactersUntil(tokenizer, processedInputStream, curr, Characters.RIGHT_SQUARE_BRACKET, Characters.RIGHT_SQUARE_BRACKET);
+                // the stop character is checked again by the loop
+                processedInputStream.reconsume(stop);
             }
         }
     }
@@ -2266,12 +2193,12 @@ final class TokenizerState {
     }
 
     static void handleCharacterReferenceInAttributeValueState(Tokenizer tokenizer, ProcessedInputStream processedInputStream) {
-        char[] res = consumeCharacterReference(tokenizer.additionalAllowedCharacter, true, processedInputStream, tokenizer);
-        if (res == null) {
+        int length = consumeCharacterReference(tokenizer.additionalAllowedCharacter, true, processedInputStream, tokenizer);
+        if (length == 0) {
             tokenizer.appendCurrentAttributeValue(Characters.AMPERSAND);
         } else {
-            for (int c : res) {
-                tokenizer.appendCurrentAttributeValue(c);
+            for (int i = 0; i < length; i++) {
+                tokenizer.appendCurrentAttributeValue(tokenizer.characterReference[i]);
             }
         }
         tokenizer.setState(tokenizer.getPreviousState());
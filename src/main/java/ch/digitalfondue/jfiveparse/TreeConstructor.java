@@ -15,10 +15,10 @@
  */
 package ch.digitalfondue.jfiveparse;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
-class TreeConstructor {
+class TreeConstructor implements TokenSink {
 
     // optimization: when adding a new character, the char builder where the
     // character has been appended is saved in this property: it can then be
@@ -44,13 +44,18 @@ class TreeConstructor {
     private int insertionMode = IM_INITIAL;
     private int originalInsertionMode;
 
-    private final ArrayList<Element> openElements = new ArrayList<>();
+    // the slots above the count are null
+    private Element[] openElements = new Element[32];
+    private int openElementsCount;
+    // must be updated with each change of openElements
+    private final TreeConstructorScopes scopes = new TreeConstructorScopes();
 
     final TreeConstructorActiveFormattingElements activeFormattingElements = new TreeConstructorActiveFormattingElements(this);
 
-    private final ArrayList<Integer> stackTemplatesInsertionMode = new ArrayList<>();
+    private int[] stackTemplatesInsertionMode = new int[8];
+    private int stackTemplatesInsertionModeCount;
 
-    private final Document document = new Document();
+    private Document document = new Document();
 
     final boolean disableIgnoreTokenInBodyStartTag;
     final boolean interpretSelfClosingAnythingElse;
@@ -85,7 +90,7 @@ class TreeConstructor {
     private Element head;
     private Element form;
     Element context;
-    private Boolean framesetOk;
+    private boolean framesetOk = true;
     boolean isHtmlFragmentParsing;
     private boolean fosterParentingEnabled;
     // --- ----
@@ -109,6 +114,59 @@ class TreeConstructor {
     private final Node[] insertionBase = new Node[2];
     // ----
 
+    // text node used by the last text insertion: it's still the right target as long as the stack of open elements
+    // and the foster parenting flag don't change and no other node has been inserted in (or removed from) its parent
+    private Text textInsertionNode;
+    private Node textInsertionParent;
+    private int textInsertionIndex;
+    private int textInsertionSiblingsCount;
+
+    /**
+     * Restore the state of a new instance, for parsing another document. The buffers and the stacks are kept with
+     * their current capacity.
+     */
+    void reset() {
+        insertCharacterPreviousTextNode = null;
+        insertionMode = IM_INITIAL;
+        originalInsertionMode = 0;
+        Arrays.fill(openElements, 0, openElementsCount, null);
+        openElementsCount = 0;
+        scopes.clear();
+        activeFormattingElements.clear();
+        stackTemplatesInsertionModeCount = 0;
+        document = new Document();
+        tokenType = 0;
+        chr = 0;
+        comment = null;
+        doctypeName = null;
+        doctypePublicId = null;
+        doctypeSystemId = null;
+        correctness = false;
+        tagName = null;
+        tagNameID = 0;
+        originalTagName = null;
+        selfClosing = false;
+        attrs = null;
+        head = null;
+        form = null;
+        context = null;
+        framesetOk = true;
+        isHtmlFragmentParsing = false;
+        fosterParentingEnabled = false;
+        processingInstructionTokenTarget = null;
+        processingInstructionTokenData = null;
+        ignoreCharacterTokenLF = false;
+        pendingTableCharactersToken.reset();
+        quirksMode = false;
+        inHtmlContent = false;
+        insertionBase[0] = null;
+        insertionBase[1] = null;
+        textInsertionNode = null;
+        textInsertionParent = null;
+        textInsertionIndex = 0;
+        textInsertionSiblingsCount = 0;
+    }
+
     void setTokenizerState(int state) {
         tokenizer.setState(state);
     }
@@ -117,6 +175,10 @@ class TreeConstructor {
         this.tokenizer = tokenizer;
     }
 
+    Tokenizer getTokenizer() {
+        return tokenizer;
+    }
+
     TreeConstructor(boolean disableIgnoreTokenInBodyStartTag, boolean interpretSelfClosingAnythingElse, boolean disableInTableTextForsterParenting) {
         this.disableIgnoreTokenInBodyStartTag = disableIgnoreTokenInBodyStartTag;
         this.interpretSelfClosingAnythingElse = interpretSelfClosingAnythingElse;
@@ -128,16 +190,36 @@ class TreeConstructor {
         this.tagNameID = Common.tagNameToID(lowerCasedTagName);
     }
 
+    String getTagName() {
+        return tagName;
+    }
+
+    int getTagNameID() {
+        return tagNameID;
+    }
+
+    // resolve the name using the name table of the tokenizer: no String is created for the known names
+    void setTagName(ResizableCharBuilder name) {
+        NameTable names = tokenizer.names;
+        int slot = names.lookup(name);
+        if (slot >= 0) {
+            this.tagName = names.name(slot);
+            this.tagNameID = names.id(slot);
+        } else {
+            setTagName(name.toLowerCase());
+        }
+    }
+
     //
 
     Element getAdjustedCurrentNode() {
-        final int size = openElements.size();
+        final int size = openElementsCount;
         if (size == 0) {
             return null;
         } else if (isHtmlFragmentParsing && size == 1) {
             return context;
         } else {
-            return openElements.get(size - 1);
+            return openElements[size - 1];
         }
     }
 
@@ -166,7 +248,7 @@ class TreeConstructor {
     }
 
     private boolean checkIsInHtmlContent() {
-        if (openElements.isEmpty()) {
+        if (openElementsCount == 0) {
             return true;
         }
         Element adjustedCurrentNode = getAdjustedCurrentNode();
@@ -286,7 +368,7 @@ class TreeConstructor {
     }
 
     Element getCurrentNode() {
-        return openElements.get(openElements.size() - 1);
+        return openElements[openElementsCount - 1];
     }
 
     void generateImpliedEndTag() {
@@ -312,63 +394,42 @@ class TreeConstructor {
     // ------------
 
     boolean hasElementInScope(int tagNameID) {
-        for (int i = openElements.size() - 1; i >= 0; i--) {
-            Element node = openElements.get(i);
-            if (Common.isHtmlNS(node, tagNameID)) {
-                return true;
-            } else if (Common.isInCommonInScope(node)) {
-                return false;
-            }
-        }
-        return false;
+        return scopes.hasElementInScope(tagNameID, TreeConstructorScopes.SCOPE);
     }
 
     boolean hasElementInScope(Element e) {
-        for (int i = openElements.size() - 1; i >= 0; i--) {
-            Element node = openElements.get(i);
-            if (node == e) { // same reference
-                return true;
-            } else if (Common.isInCommonInScope(node)) {
-                return false;
-            }
-        }
-        return false;
+        int idx = openElementsIndexOf(e);
+        return idx != -1 && scopes.isInScope(idx, TreeConstructorScopes.SCOPE);
     }
 
     boolean hasElementInButtonScope(int tagNameID) {
-        for (int i = openElements.size() - 1; i >= 0; i--) {
-            Element node = openElements.get(i);
-            if (Common.isHtmlNS(node, tagNameID)) {
-                return true;
-            } else if (Common.isInCommonInScope(node) || Common.isHtmlNS(node, Common.ELEMENT_BUTTON_ID)) {
-                return false;
-            }
-        }
-        return false;
+        return scopes.hasElementInScope(tagNameID, TreeConstructorScopes.BUTTON_SCOPE);
     }
 
     boolean hasLiElementInListScope() {
-        for (int i = openElements.size() - 1; i >= 0; i--) {
-            Element node = openElements.get(i);
-            if (Common.isHtmlNS(node, Common.ELEMENT_LI_ID)) {
-                return true;
-            } else if (Common.isInCommonInScope(node) || Common.isHtmlNS(node, Common.ELEMENT_OL_ID) || Common.isHtmlNS(node, Common.ELEMENT_UL_ID)) {
-                return false;
-            }
-        }
-        return false;
+        return scopes.hasElementInScope(Common.ELEMENT_LI_ID, TreeConstructorScopes.LIST_ITEM_SCOPE);
     }
 
     boolean hasElementInTableScope(int tagNameID) {
-        for (int i = openElements.size() - 1; i >= 0; i--) {
-            Element node = openElements.get(i);
-            if (Common.isHtmlNS(node, tagNameID)) {
-                return true;
-            } else if ((Common.isHtmlNS(node, Common.ELEMENT_HTML_ID) || Common.isHtmlNS(node, Common.ELEMENT_TABLE_ID) || Common.isHtmlNS(node, Common.ELEMENT_TEMPLATE_ID))) {
-                return false;
-            }
-        }
-        return false;
+        return scopes.hasElementInScope(tagNameID, TreeConstructorScopes.TABLE_SCOPE);
+    }
+
+    // see TreeConstructorScopes.SPECIAL_SCOPE
+    boolean hasElementInSpecialScope(int tagNameID) {
+        return scopes.hasElementInScope(tagNameID, TreeConstructorScopes.SPECIAL_SCOPE);
+    }
+
+    int topmostOpenElementPosition(int tagNameID) {
+        return scopes.topmost(tagNameID);
+    }
+
+    /**
+     * @return the topmost open html element with the given tag id if there's no element in the special category
+     *         above it, null otherwise
+     */
+    Element topmostOpenElementNotBelowSpecial(int tagNameID) {
+        int idx = scopes.topmost(tagNameID);
+        return idx != -1 && idx >= scopes.topmostSpecial() ? openElements[idx] : null;
     }
 
     // implementation of
@@ -376,7 +437,7 @@ class TreeConstructor {
     void adoptionAgencyAlgorithm(int subjectID) {
         Element current = getCurrentNode();
         // 1
-        if (Common.isHtmlNS(current, subjectID) && !activeFormattingElements.activeFormattingElements.contains(current)) {
+        if (Common.isHtmlNS(current, subjectID) && !activeFormattingElements.contains(current)) {
             popCurrentNode();
             return;
         }
@@ -392,20 +453,20 @@ class TreeConstructor {
             outerLoopCounter++;
 
             // 5
-            final int formattingElementIdx = activeFormattingElements.getBetweenLastElementAndMarkerIndex(subjectID);
+            final Element formattingElement = activeFormattingElements.getBetweenLastElementAndMarker(subjectID);
 
             // no such element
-            if (formattingElementIdx == -1) {
+            if (formattingElement == null) {
                 // any other end tag
-                TreeConstructorHandlers.foreignAnyOtherEndTag(this.tagName, this);
+                TreeConstructorHandlers.foreignAnyOtherEndTag(this.tagName, subjectID, this);
                 return;
             }
 
             // 6
-            final Element formattingElement = activeFormattingElements.getElementAtIndex(formattingElementIdx);
-            if (openElements.lastIndexOf(formattingElement) == -1) {
+            final int formattingElementIdx = openElementsIndexOf(formattingElement);
+            if (formattingElementIdx == -1) {
                 emitParseError();
-                activeFormattingElements.activeFormattingElements.remove(formattingElementIdx);
+                activeFormattingElements.remove(formattingElement);
                 return;
             }
 
@@ -421,7 +482,7 @@ class TreeConstructor {
             }
 
             // 9
-            Element furthestBlock = getFurthestBlock(formattingElement);
+            Element furthestBlock = getFurthestBlock(formattingElementIdx);
 
             // 10
             if (furthestBlock == null) {
@@ -431,12 +492,12 @@ class TreeConstructor {
                         break;
                     }
                 }
-                activeFormattingElements.activeFormattingElements.remove(formattingElementIdx);
+                activeFormattingElements.remove(formattingElement);
                 return;
             }
 
             // 11
-            Element commonAncestor = openElements.get(openElements.lastIndexOf(formattingElement) - 1);
+            Element commonAncestor = openElements[formattingElementIdx - 1];
 
             // 12 Bookmark
             activeFormattingElements.insertBookmark(formattingElement);
@@ -455,9 +516,9 @@ class TreeConstructor {
                 innerLoopCounter++;
 
                 // 13.3
-                final int nodeIdx = openElements.lastIndexOf(node);
+                final int nodeIdx = openElementsIndexOf(node);
                 if (nodeIdx != -1) {
-                    node = openElements.get(nodeIdx - 1);
+                    node = openElements[nodeIdx - 1];
                 } else {
                     node = nodeBefore;
                 }
@@ -468,21 +529,25 @@ class TreeConstructor {
                 }
 
                 // 13.5
-                if (innerLoopCounter > 3 && activeFormattingElements.activeFormattingElements.contains(node)) {
+                if (innerLoopCounter > 3 && activeFormattingElements.contains(node)) {
                     activeFormattingElements.remove(node);
                 }
 
                 // 13.6
-                if (!activeFormattingElements.activeFormattingElements.contains(node)) {
-                    nodeBefore = openElements.get(openElements.lastIndexOf(node) - 1);
+                if (!activeFormattingElements.contains(node)) {
+                    nodeBefore = openElements[openElementsIndexOf(node) - 1];
                     continue;
                 }
 
                 // 13.7
-                Element newElement = buildElement(node.nodeName, node.nodeNameID, node.originalNodeName, node.namespaceURI, node.namespaceID, node.getAttributes().copy());
+                Element newElement = buildElement(node.nodeName, node.nodeNameID, node.originalNodeName, node.namespaceURI, node.namespaceID, copyAttributes(node));
                 commonAncestor.appendChild(newElement);
                 activeFormattingElements.replace(node, newElement);
-                openElements.set(openElements.lastIndexOf(node), newElement);
+                // same name and namespace: the scopes don't change
+                int nodeIndex = openElementsIndexOf(node);
+                newElement.openElementsIndex = nodeIndex;
+                openElements[nodeIndex] = newElement;
+                textInsertionNode = null;
                 node = newElement;
 
                 // 13.8
@@ -509,7 +574,7 @@ class TreeConstructor {
             } else {
                 toInsert = place[0];
                 // insert before
-                position = toInsert.getRawChildNodes().indexOf(place[1]);
+                position = place[1].indexIn(toInsert.getRawChildNodes());
             }
             toInsert.insertChildren(position, lastNode);
 
@@ -520,27 +585,32 @@ class TreeConstructor {
                     formattingElement.originalNodeName,
                     formattingElement.getNamespaceURI(),
                     formattingElement.namespaceID,
-                    formattingElement.getAttributes().copy()
+                    copyAttributes(formattingElement)
             );
 
             // 16
-            List<Node> childs = new ArrayList<>(furthestBlock.getRawChildNodes());
-            furthestBlock.empty();
-            for (Node n : childs) {
-                elem.appendChild(n);
-            }
+            furthestBlock.moveChildrenTo(elem);
 
             // 17
             furthestBlock.appendChild(elem);
 
             // 18
             activeFormattingElements.remove(formattingElement);
-            activeFormattingElements.activeFormattingElements.set(activeFormattingElements.indexOf(activeFormattingElements.bookmark), elem);
-            activeFormattingElements.removeBookmark();
-
-            // 19
-            openElements.remove(formattingElement);
-            openElements.add(openElements.lastIndexOf(furthestBlock) + 1, elem);
+            activeFormattingElements.replaceBookmark(elem);
+
+            // 19: the furthest block is above the formatting element: removing the formatting element and inserting
+            // elem after the furthest block moves down the elements in between, the ones above don't change position
+            int furthestBlockIdx = openElementsIndexOf(furthestBlock);
+            for (int i = formattingElementIdx; i < furthestBlockIdx; i++) {
+                Element e = openElements[i + 1];
+                e.openElementsIndex = i;
+                openElements[i] = e;
+            }
+            elem.openElementsIndex = furthestBlockIdx;
+            openElements[furthestBlockIdx] = elem;
+            // elem has the same name and namespace as the formatting element
+            scopes.reorder(openElements, formattingElementIdx, furthestBlockIdx);
+            textInsertionNode = null;
 
             // 20 -> outer loop
         }
@@ -549,21 +619,14 @@ class TreeConstructor {
     // Get "the topmost node in the stack of open elements that is lower in the
     // stack than formatting element, and is an element in the special category.
     // There might not be one."
-    private Element getFurthestBlock(Element formattingElement) {
-
-        Element furthestBlock = null;
-
-        for (int idx = openElements.size() - 1; idx >= 0; idx--) {
-            Element currentOpenElement = openElements.get(idx);
+    private Element getFurthestBlock(int formattingElementIdx) {
+        final int size = openElementsCount;
+        for (int idx = formattingElementIdx + 1; idx < size; idx++) {
+            Element currentOpenElement = openElements[idx];
             if (Common.isSpecialCategory(currentOpenElement)) {
-                furthestBlock = currentOpenElement;
-            }
-
-            if (currentOpenElement == formattingElement && furthestBlock != null) {
-                return furthestBlock;
+                return currentOpenElement;
             }
         }
-
         return null;
     }
 
@@ -593,6 +656,12 @@ class TreeConstructor {
         return new Element(name, nameID, originalName, namespace, namespaceID, attrs);
     }
 
+    // null when the element has no attributes
+    static Attributes copyAttributes(Element element) {
+        Attributes attributes = element.attributes;
+        return attributes == null || attributes.isEmpty() ? null : attributes.copy();
+    }
+
     Element insertElementToken(String name, int nameId, String namespace, int nameSpaceID, Attributes attrs) {
         Element element = buildElement(name, nameId, name, namespace, nameSpaceID, attrs);
         return insertHtmlElementToken(element);
@@ -624,31 +693,31 @@ class TreeConstructor {
         ))) {
 
             // 1
-            int lastTemplatePos = findLastElementPositionMatchingInNamespaceHtml(Common.ELEMENT_TEMPLATE_ID);
+            int lastTemplatePos = scopes.topmost(Common.ELEMENT_TEMPLATE_ID);
             // 2
-            int lastTablePos = findLastElementPositionMatchingInNamespaceHtml(Common.ELEMENT_TABLE_ID);
+            int lastTablePos = scopes.topmost(Common.ELEMENT_TABLE_ID);
             // 3
             if (lastTemplatePos != -1 && ((lastTablePos == -1) || (lastTemplatePos > lastTablePos))) {
                 // inside the template
-                insertionBase[0] = openElements.get(lastTemplatePos);
+                insertionBase[0] = openElements[lastTemplatePos];
                 insertionBase[1] = null;
                 return insertionBase;
             }
             // 4
             if (lastTablePos == -1) {
-                insertionBase[0] = openElements.get(0);
+                insertionBase[0] = openElements[0];
                 insertionBase[1] = null;
                 return insertionBase;
             }
             // 5
-            Element lastTable = openElements.get(lastTablePos);
+            Element lastTable = openElements[lastTablePos];
             if (lastTable.getParentNode() != null) {
                 insertionBase[0] = lastTable.getParentNode();
                 insertionBase[1] = lastTable;
                 return insertionBase;
             }
             // 6
-            Element previous = openElements.get(lastTablePos - 1);
+            Element previous = openElements[lastTablePos - 1];
             // 7
             insertionBase[0] = previous;
             insertionBase[1] = null;
@@ -660,27 +729,35 @@ class TreeConstructor {
         }
     }
 
-    private int findLastElementPositionMatchingInNamespaceHtml(int nameID) {
-        for (int i = openElements.size() - 1; i >= 0; i--) {
-            Element e = openElements.get(i);
-            if (Common.isHtmlNS(e, nameID)) {
-                return i;
-            }
-        }
-        return -1;
-    }
 
     boolean stackOfOpenElementsContainsElementTemplateAndNamespaceHtml() {
-        return findLastElementPositionMatchingInNamespaceHtml(Common.ELEMENT_TEMPLATE_ID) != -1;
+        return scopes.topmost(Common.ELEMENT_TEMPLATE_ID) != -1;
     }
 
-    // FIXME optimize(?)
     void insertCharacter(char charToInsert) {
+        textNodeForInsertion().append(charToInsert);
+    }
+
+    void insertCharacters(char[] chars, int offset, int length) {
+        textNodeForInsertion().append(chars, offset, length);
+    }
+
+    // the builder of the text node at the appropriate place: the previous sibling if it's already a text node,
+    // otherwise a new (empty) one
+    private ResizableCharBuilder textNodeForInsertion() {
+        Text cached = textInsertionNode;
+        if (cached != null) {
+            List<Node> siblings = textInsertionParent.getRawChildNodes();
+            if (siblings.size() == textInsertionSiblingsCount && siblings.get(textInsertionIndex) == cached) {
+                insertCharacterPreviousTextNode = cached.dataBuilder;
+                return cached.dataBuilder;
+            }
+        }
+
         Node toInsert;
         List<Node> nodes;
         int position;
 
-
         if (!fosterParentingEnabled) {
             toInsert = getCurrentNode();
             nodes = toInsert.getRawChildNodes();
@@ -694,7 +771,7 @@ class TreeConstructor {
             } else { // insert before
                 toInsert = place[0];
                 nodes = toInsert.getRawChildNodes();
-                position = nodes.indexOf(place[1]);
+                position = place[1].indexIn(nodes);
             }
         }
 
@@ -702,15 +779,19 @@ class TreeConstructor {
 
         if (!nodes.isEmpty() && position > 0 && (nodes.get(position - 1)) instanceof Text lastText) {
             t = lastText;
-            t.dataBuilder.append(charToInsert);
+            textInsertionIndex = position - 1;
         } else {
-            t = new Text(new ResizableCharBuilder());
-            t.dataBuilder.append(charToInsert);
+            t = new Text(tokenizer.newCharBuilder());
             toInsert.insertChildren(position, t);
+            textInsertionIndex = position;
         }
+        textInsertionNode = t;
+        textInsertionParent = toInsert;
+        textInsertionSiblingsCount = toInsert.getChildCount();
         // optimization
         insertCharacterPreviousTextNode = t.dataBuilder;
         //
+        return t.dataBuilder;
     }
 
     private Element insertHtmlElementToken(Element element) {
@@ -725,20 +806,21 @@ class TreeConstructor {
             } else {
                 toInsert = place[0];
                 // insert before
-                position = toInsert.getRawChildNodes().indexOf(place[1]);
+                position = place[1].indexIn(toInsert.getRawChildNodes());
             }
 
         } else {
-            var size = openElements.size();
+            var size = openElementsCount;
             if (size == 0) {
                 // drop element
                 return element;
             }
-            toInsert = openElements.get(size - 1);
+            toInsert = openElements[size - 1];
             position = toInsert.getChildCount();
         }
         toInsert.insertChildren(position, element);
-        openElements.add(element);
+        pushOpenElement(element);
+        textInsertionNode = null;
         return element;
     }
 
@@ -758,10 +840,10 @@ class TreeConstructor {
             } else {
                 toInsert = place[0];
                 // insert before
-                position = toInsert.getRawChildNodes().indexOf(place[1]);
+                position = place[1].indexIn(toInsert.getRawChildNodes());
             }
         } else {
-            toInsert = openElements.get(openElements.size() - 1);
+            toInsert = openElements[openElementsCount - 1];
             position = toInsert.getChildCount();
         }
         toInsert.insertChildren(position, node);
@@ -776,7 +858,7 @@ class TreeConstructor {
     }
 
     void insertCommentProcessingInstructionToHtmlElement(int tokenType) {
-        openElements.get(0).appendChild(buildCPI(tokenType));
+        openElements[0].appendChild(buildCPI(tokenType));
     }
 
     // ------------------
@@ -784,7 +866,11 @@ class TreeConstructor {
     // ------------------
 
     Element popCurrentNode() {
-        return openElements.remove(openElements.size() - 1);
+        textInsertionNode = null;
+        Element e = openElements[--openElementsCount];
+        openElements[openElementsCount] = null;
+        scopes.pop();
+        return e;
     }
 
     void popOpenElementsUntilWithHtmlNS(int nameID) {
@@ -797,42 +883,147 @@ class TreeConstructor {
     }
 
     void pushInStackTemplatesInsertionMode(int insertionMode) {
-        stackTemplatesInsertionMode.add(insertionMode);
+        if (stackTemplatesInsertionModeCount == stackTemplatesInsertionMode.length) {
+            stackTemplatesInsertionMode = Arrays.copyOf(stackTemplatesInsertionMode, stackTemplatesInsertionModeCount * 2);
+        }
+        stackTemplatesInsertionMode[stackTemplatesInsertionModeCount++] = insertionMode;
     }
 
     boolean isStackTemplatesInsertionModeIsEmpty() {
-        return stackTemplatesInsertionMode.isEmpty();
+        return stackTemplatesInsertionModeCount == 0;
     }
 
     void popFromStackTemplatesInsertionMode() {
-        stackTemplatesInsertionMode.remove(stackTemplatesInsertionMode.size() - 1);
+        stackTemplatesInsertionModeCount--;
     }
 
-    void emitParseError() {
+    @Override
+    public void emitParseError() {
     }
 
-    void emitCharacter(char chr) {
+    @Override
+    public void emitCharacter(char chr) {
         tokenType = TT_CHARACTER;
         insertCharacterPreviousTextNode = null;
         this.chr = chr;
         dispatch();
     }
 
-    void emitComment(ResizableCharBuilder comment) {
+    // a run of character tokens: the insertion modes that can handle the whole run (or a prefix of it) at once do
+    // it in a single step, the remaining characters go through the per character dispatch
+    @Override
+    public void emitCharacters(char[] chars, int offset, int length) {
+        int end = offset + length;
+        while (offset < end) {
+            int handled = dispatchCharacters(chars, offset, end);
+            if (handled == 0) {
+                emitCharacter(chars[offset]);
+                handled = 1;
+            }
+            offset += handled;
+        }
+    }
+
+    // return the number of characters handled, 0 if the first one must be dispatched alone
+    private int dispatchCharacters(char[] chars, int from, int to) {
+        if (ignoreCharacterTokenLF) {
+            return 0;
+        }
+
+        tokenType = TT_CHARACTER;
+        insertCharacterPreviousTextNode = null;
+        inHtmlContent = checkIsInHtmlContent();
+
+        if (!inHtmlContent) {
+            // foreign content: same as "in body", without the active formatting elements
+            int length = lengthUntilNull(chars, from, to);
+            if (length > 0) {
+                insertCharacters(chars, from, length);
+                if (whitespaceLength(chars, from, from + length) != length) {
+                    framesetOkToFalse();
+                }
+            }
+            return length;
+        }
+
+        switch (insertionMode) {
+        case IM_TEXT:
+            insertCharacters(chars, from, to - from);
+            return to - from;
+        case IM_IN_BODY, IM_IN_CELL, IM_IN_CAPTION, IM_IN_TEMPLATE: {
+            int length = lengthUntilNull(chars, from, to);
+            if (length > 0) {
+                activeFormattingElements.reconstruct();
+                insertCharacters(chars, from, length);
+                if (whitespaceLength(chars, from, from + length) != length) {
+                    framesetOkToFalse();
+                }
+            }
+            return length;
+        }
+        case IM_IN_TABLE_TEXT: {
+            int length = lengthUntilNull(chars, from, to);
+            pendingTableCharactersToken.append(chars, from, length);
+            return length;
+        }
+        case IM_INITIAL, IM_BEFORE_HTML, IM_BEFORE_HEAD:
+            // whitespace is ignored
+            return whitespaceLength(chars, from, to);
+        case IM_IN_HEAD, IM_IN_HEAD_NOSCRIPT, IM_AFTER_HEAD, IM_IN_COLUMN_GROUP, IM_IN_FRAMESET, IM_AFTER_FRAMESET: {
+            int length = whitespaceLength(chars, from, to);
+            if (length > 0) {
+                insertCharacters(chars, from, length);
+            }
+            return length;
+        }
+        case IM_AFTER_BODY, IM_AFTER_AFTER_BODY, IM_AFTER_AFTER_FRAMESET: {
+            // whitespace is handled with the "in body" rules
+            int length = whitespaceLength(chars, from, to);
+            if (length > 0) {
+                activeFormattingElements.reconstruct();
+                insertCharacters(chars, from, length);
+            }
+            return length;
+        }
+        default:
+            return 0;
+        }
+    }
+
+    private static int lengthUntilNull(char[] chars, int from, int to) {
+        int i = from;
+        while (i < to && chars[i] != Characters.NULL) {
+            i++;
+        }
+        return i - from;
+    }
+
+    private static int whitespaceLength(char[] chars, int from, int to) {
+        int i = from;
+        while (i < to && Common.isTabLfFfCrOrSpace(chars[i])) {
+            i++;
+        }
+        return i - from;
+    }
+
+    @Override
+    public void emitComment(ResizableCharBuilder comment) {
         this.comment = comment;
         tokenType = TT_COMMENT;
         dispatch();
     }
 
     // https://html.spec.whatwg.org/multipage/parsing.html#insert-a-processing-instruction
-    void emitProcessingInstructionToken(String processingInstructionTokenTarget, String processingInstructionTokenData) {
+    @Override
+    public void emitProcessingInstructionToken(String processingInstructionTokenTarget, String processingInstructionTokenData) {
         this.processingInstructionTokenTarget = processingInstructionTokenTarget;
         this.processingInstructionTokenData = processingInstructionTokenData;
         tokenType = TT_PROCESSING_INSTRUCTION;
         dispatch();
     }
 
-    void emitDoctypeToken(StringBuilder doctypeName, StringBuilder doctypePublicId, StringBuilder doctypeSystemId, boolean correctness) {
+    @Override
+    public void emitDoctypeToken(StringBuilder doctypeName, StringBuilder doctypePublicId, StringBuilder doctypeSystemId, boolean correctness) {
         this.doctypeName = doctypeName;
         this.doctypePublicId = doctypePublicId;
         this.doctypeSystemId = doctypeSystemId;
@@ -841,21 +1032,29 @@ class TreeConstructor {
         dispatch();
     }
 
-    void emitEOF() {
+    @Override
+    public void emitEOF() {
         tokenType = TT_EOF;
-        dispatch();
+        try {
+            dispatch();
+        } finally {
+            // the elements still in the list must not keep their entries once the document is returned
+            activeFormattingElements.clear();
+        }
         throw new StopParse();
     }
 
-    void emitEndTagToken(ResizableCharBuilder name) {
-        setTagName(name.toLowerCase());
+    @Override
+    public void emitEndTagToken(ResizableCharBuilder name) {
+        setTagName(name);
         tokenType = TT_END_TAG;
         dispatch();
     }
 
-    void emitStartTagToken(ResizableCharBuilder name, Attributes attrs, boolean selfClosing) {
+    @Override
+    public void emitStartTagToken(ResizableCharBuilder name, Attributes attrs, boolean selfClosing) {
         //
-        setTagName(name.toLowerCase());
+        setTagName(name);
         this.originalTagName = name.containsUpperCase ? name.toString() : this.tagName;
         //
         this.attrs = attrs;
@@ -871,10 +1070,10 @@ class TreeConstructor {
     // see https://html.spec.whatwg.org/multipage/parsing.html#reset-the-insertion-mode-appropriately
     void resetInsertionModeAppropriately() {
         boolean last = false;
-        int counter = openElements.size() - 1;
-        Element node = openElements.get(counter);
+        int counter = openElementsCount - 1;
+        Element node = openElements[counter];
         while (true) {
-            if (node == openElements.get(0)) {
+            if (node == openElements[0]) {
                 last = true;
             }
             if (isHtmlFragmentParsing) {
@@ -900,7 +1099,7 @@ class TreeConstructor {
                 insertionMode = IM_IN_TABLE;
                 break;
             } else if (Common.isHtmlNS(node, Common.ELEMENT_TEMPLATE_ID)) {
-                insertionMode = stackTemplatesInsertionMode.get(stackTemplatesInsertionMode.size() - 1);
+                insertionMode = stackTemplatesInsertionMode[stackTemplatesInsertionModeCount - 1];
                 break;
             } else if (Common.isHtmlNS(node, Common.ELEMENT_HEAD_ID)) {
                 insertionMode = IM_IN_HEAD;
@@ -923,7 +1122,7 @@ class TreeConstructor {
                 break;
             }
             counter--;
-            node = openElements.get(counter);
+            node = openElements[counter];
         }
     }
 
@@ -947,16 +1146,31 @@ class TreeConstructor {
         this.chr = chr;
     }
 
-    ResizableCharBuilder getInsertCharacterPreviousTextNode() {
-        return insertCharacterPreviousTextNode;
+    @Override
+    public boolean isInForeignContent() {
+        Element adjustedCurrentNode = getAdjustedCurrentNode();
+        return adjustedCurrentNode != null && Node.NAMESPACE_HTML_ID != adjustedCurrentNode.namespaceID;
     }
 
-    void resetInsertCharacterPreviousTextNode() {
-        this.insertCharacterPreviousTextNode = null;
+    // in these insertion modes, a character in html content is only appended to the current text node
+    @Override
+    public boolean acceptsDataCharacters() {
+        return (insertionMode == IM_IN_BODY || insertionMode == IM_IN_CELL) && inHtmlContent;
+    }
+
+    @Override
+    public ResizableCharBuilder getDataCharactersBuilder() {
+        return acceptsDataCharacters() ? insertCharacterPreviousTextNode : null;
     }
 
-    boolean isInHtmlContent() {
-        return inHtmlContent;
+    @Override
+    public ResizableCharBuilder getRawTextCharactersBuilder() {
+        return insertionMode == IM_TEXT ? insertCharacterPreviousTextNode : null;
+    }
+
+    @Override
+    public void endDirectCharacters() {
+        this.insertCharacterPreviousTextNode = null;
     }
 
     boolean isQuirksMode() {
@@ -986,7 +1200,7 @@ class TreeConstructor {
     }
 
     void pushIntoStackTemplatesInsertionMode(int insMode) {
-        stackTemplatesInsertionMode.add(insMode);
+        pushInStackTemplatesInsertionMode(insMode);
     }
 
     Element getHead() {
@@ -999,10 +1213,12 @@ class TreeConstructor {
 
     void enableFosterParenting() {
         fosterParentingEnabled = true;
+        textInsertionNode = null;
     }
 
     void disableFosterParenting() {
         fosterParentingEnabled = false;
+        textInsertionNode = null;
     }
 
     // ----
@@ -1026,12 +1242,12 @@ class TreeConstructor {
         this.form = form;
     }
 
-    Boolean getFramesetOk() {
+    boolean isFramesetOk() {
         return framesetOk;
     }
 
     void framesetOkToFalse() {
-        framesetOk = Boolean.FALSE;
+        framesetOk = false;
     }
     //
 
@@ -1054,23 +1270,62 @@ class TreeConstructor {
     //
 
     int openElementsSize() {
-        return openElements.size();
+        return openElementsCount;
     }
 
     void removeFromOpenElements(Element e) {
-        openElements.remove(e);
+        textInsertionNode = null;
+        int idx = openElementsIndexOf(e);
+        if (idx == -1) {
+            return;
+        }
+        int size = --openElementsCount;
+        System.arraycopy(openElements, idx + 1, openElements, idx, size - idx);
+        openElements[size] = null;
+        if (idx == size) {
+            scopes.pop();
+        } else {
+            openElementsChangedFrom(idx);
+        }
     }
 
     void addToOpenElements(Element e) {
-        openElements.add(e);
+        textInsertionNode = null;
+        pushOpenElement(e);
+    }
+
+    private void pushOpenElement(Element e) {
+        if (openElementsCount == openElements.length) {
+            openElements = Arrays.copyOf(openElements, openElementsCount * 2);
+        }
+        e.openElementsIndex = openElementsCount;
+        openElements[openElementsCount++] = e;
+        scopes.push(e);
+    }
+
+    // after an insertion or a removal in the middle of the stack: update the positions of the elements above it
+    private void openElementsChangedFrom(int idx) {
+        final int size = openElementsCount;
+        for (int i = idx; i < size; i++) {
+            openElements[i].openElementsIndex = i;
+        }
+        scopes.rebuild(openElements, size, idx);
+        textInsertionNode = null;
     }
 
     Element openElementAt(int idx) {
-        return openElements.get(idx);
+        return openElements[idx];
     }
 
+    /**
+     * Constant time: the position stored in the element is checked against the stack, as it's not reset when the
+     * element is popped.
+     *
+     * @return the position of the element in the stack of open elements, -1 if it's not there
+     */
     int openElementsIndexOf(Element elem) {
-        return openElements.lastIndexOf(elem);
+        int idx = elem.openElementsIndex;
+        return idx >= 0 && idx < openElementsCount && openElements[idx] == elem ? idx : -1;
     }
 
     //
@@ -15,139 +15,136 @@
  */
 package ch.digitalfondue.jfiveparse;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
 
+/**
+ * The list of active formatting elements
+ * (https://html.spec.whatwg.org/multipage/parsing.html#list-of-active-formatting-elements).
+ *
+ * A linked list of entries with handles, so that the work for a token doesn't grow with the length of the list: the
+ * entry of an element is referenced by the element, the entries with the same tag id are chained from the last one (for
+ * the lookups of the adoption agency algorithm and of the "a" start tag), and the same for the entries with the same
+ * name, namespace and attributes (for the Noah's Ark clause). Each entry has an order key that grows with its
+ * position in the list, for checking if it's after the last marker and for keeping the chains ordered.
+ *
+ * The last entries of the chains of the signatures are kept in a hash table chained through the entries themselves,
+ * and the removed entries are reused: once warmed up, the list doesn't allocate.
+ */
 final class TreeConstructorActiveFormattingElements {
 
-    final ArrayList<Element> activeFormattingElements = new ArrayList<>();
+    // distance between the order keys of the appended entries: an entry inserted in the middle takes the key halfway
+    // between its neighbours, when there's no room left the whole list is renumbered
+    private static final long ORDER_GAP = 1L << 20;
+
     private final TreeConstructor treeConstructor;
-    Element bookmark;
 
+    private final Entry[] lastByTag = new Entry[Common.ELEMENT_ID_COUNT];
+
+    // the last entry for each signature, the entries of a bucket are chained by nextInTable
+    private Entry[] lastBySignature = new Entry[16];
+    private int signatureCount;
 
+    private Entry first;
+    private Entry last;
+    private Entry lastMarker;
+    private Entry bookmark;
 
-    private static final Element BOOKMARK = new Element(" /BOOKMARK/ ");
-    private static final Element MARKER_ELEMENT = new Element(" /MARKER/ ");
+    // the removed entries, chained by next
+    private Entry free;
 
     //
     TreeConstructorActiveFormattingElements(TreeConstructor treeConstructor) {
         this.treeConstructor = treeConstructor;
     }
 
+    void clear() {
+        Entry entry = first;
+        while (entry != null) {
+            Entry next = entry.next;
+            if (entry.element != null) {
+                entry.element.formattingEntry = null;
+            }
+            release(entry);
+            entry = next;
+        }
+        Arrays.fill(lastByTag, null);
+        Arrays.fill(lastBySignature, null);
+        signatureCount = 0;
+        first = null;
+        last = null;
+        lastMarker = null;
+        bookmark = null;
+    }
 
+    boolean contains(Element element) {
+        return element.formattingEntry != null;
+    }
 
     void insertMarker() {
-        activeFormattingElements.add(MARKER_ELEMENT);
+        Entry marker = newEntry();
+        marker.previousSameTag = lastMarker;
+        lastMarker = marker;
+        append(marker);
     }
 
     void insertBookmark(Element formattingElement) {
-        activeFormattingElements.add(activeFormattingElements.lastIndexOf(formattingElement), BOOKMARK);
-        this.bookmark = BOOKMARK;
+        bookmark = newEntry();
+        insertAfter(formattingElement.formattingEntry.previous, bookmark);
     }
 
-    void removeBookmark() {
-        activeFormattingElements.remove(bookmark);
-        this.bookmark = null;
+    void moveBookmarkAfter(Element newNode) {
+        unlink(bookmark);
+        insertAfter(newNode.formattingEntry, bookmark);
     }
 
-    void moveBookmarkAfter(Element newNode) {
-        activeFormattingElements.remove(bookmark);
-        activeFormattingElements.add(activeFormattingElements.lastIndexOf(newNode) + 1, bookmark);
+    // the bookmark is replaced by an entry for the given element
+    void replaceBookmark(Element element) {
+        Entry entry = bookmark;
+        bookmark = null;
+        entry.element = element;
+        entry.signatureHash = signatureHash(element);
+        link(entry);
     }
 
     void push(Element element) {
+        Entry entry = newEntry();
+        entry.element = element;
+        entry.signatureHash = signatureHash(element);
 
-        int lastMarkerPositionOrStart = 0;
-        for (int i = activeFormattingElements.size() - 1; i >= 0; i--) {
-            if (MARKER_ELEMENT == activeFormattingElements.get(i)) {
-                lastMarkerPositionOrStart = i;
-                break;
-            }
-        }
-
+        // Noah's Ark: the entries with the same signature after the last marker
         int sameElementCount = 0;
-        final int size = activeFormattingElements.size();
-        int sameElementPosition = -1;
-
-        String elementName = element.getNodeName();
-        String elementNS = element.getNamespaceURI();
-        Attributes elementAttrs = element.getAttributes();
-
-        // TODO: not optimal at all :D
-
-        for (int i = lastMarkerPositionOrStart; i < size; i++) {
-            Element current = activeFormattingElements.get(i);
-            if (!(MARKER_ELEMENT == current) && //
-                    elementName.equals(current.getNodeName()) && //
-                    elementNS.equals(current.getNamespaceURI()) && //
-                    elementAttrs.equals(current.getAttributes())) {
-                sameElementCount++;
-                if (sameElementPosition == -1) {
-                    sameElementPosition = i;
-                }
-            }
+        Entry earliest = null;
+        for (Entry e = lastWithSameSignature(entry); e != null && isAfterLastMarker(e); e = e.previousSameSignature) {
+            sameElementCount++;
+            earliest = e;
         }
 
         if (sameElementCount >= 3) {
-            activeFormattingElements.remove(sameElementPosition);
+            remove(earliest);
         }
 
-        activeFormattingElements.add(element);
+        append(entry);
+        link(entry);
     }
 
-    // TODO: not optimal at all :D
     void reconstruct() {
 
         // 1
-        if (activeFormattingElements.isEmpty()) {
+        if (last == null) {
             return;
         }
 
         // 2
-        final int lastIndex = activeFormattingElements.size() - 1;
-        Element last = activeFormattingElements.get(lastIndex);
-        final boolean lastIsMarker = MARKER_ELEMENT == last;
-        if (lastIsMarker || (treeConstructor.openElementsIndexOf(last) != -1)) {
+        if (last.element == null || treeConstructor.openElementsIndexOf(last.element) != -1) {
             return;
         }
 
-        reconstructionPhase(lastIndex, last);
-    }
-
-    private void reconstructionPhase(final int lastIndex, Element last) {
-        // 3
-        Element entry = last;
-        int entryIndex = lastIndex;
-
-        while (true) {
-            // 4 rewind
-            // If there are no entries before entry in the list of active
-            // formatting elements, then jump to the step labeled create.
-            if (entryIndex <= 0) {
-                break;
-            }
-
-            // 5
-            // Let entry be the entry one earlier than entry in the list of
-            // active formatting elements.
-            entryIndex--;
-            entry = activeFormattingElements.get(entryIndex);
-
-            final boolean entryIsMarker = MARKER_ELEMENT == entry;
-
-            // 6
-            // If entry is neither a marker nor an element that is also in the
-            // stack of open elements, go to the step labeled rewind.
-            if (!entryIsMarker && treeConstructor.openElementsIndexOf(entry) == -1) {
-                continue;
-            }
-
-            // 7
-            // Advance: Let entry be the element one later than entry in the
-            // list of active formatting elements.
-            entryIndex++;
-            entry = activeFormattingElements.get(entryIndex);
-            break;
-
+        // 3 - 7: rewind while the entry before is neither a marker nor an element in the stack of open elements, the
+        // entries from there to the last one are recreated
+        Entry entry = last;
+        while (entry.previous != null && entry.previous.element != null && treeConstructor.openElementsIndexOf(entry.previous.element) == -1) {
+            entry = entry.previous;
         }
 
         while (true) {
@@ -155,78 +152,313 @@ final class TreeConstructorActiveFormattingElements {
             // 8
             // Create: Insert an HTML element for the token for which the
             // element entry was created, to obtain new element.
-            Element newElement = treeConstructor.insertElementToken(entry.getNodeName(), entry.nodeNameID, entry.getNamespaceURI(), entry.namespaceID, entry.getAttributes().copy());
+            Element element = entry.element;
+            Element newElement = treeConstructor.insertElementToken(element.getNodeName(), element.nodeNameID, element.getNamespaceURI(), element.namespaceID, TreeConstructor.copyAttributes(element));
 
             // 9
             // Replace the entry for entry in the list with an entry for new
             // element.
-            activeFormattingElements.set(entryIndex, newElement);
+            replace(element, newElement);
 
             // 10
             // If the entry for new element in the list of active formatting
             // elements is not the last entry in the list, return to the step
             // labeled advance.
-            if (lastIndex != entryIndex) {
-                // 7
-                entryIndex++;
-                entry = activeFormattingElements.get(entryIndex);
-                continue;
+            if (entry == last) {
+                break;
             }
-            break;
+            // 7
+            entry = entry.next;
         }
     }
 
     void clearUpToLastMarker() {
-        while (!activeFormattingElements.isEmpty()) {
-            Element e = activeFormattingElements.remove(activeFormattingElements.size() - 1);
-            if (MARKER_ELEMENT == e) {
+        while (last != null) {
+            Entry entry = last;
+            if (entry == lastMarker) {
+                unlink(entry);
+                lastMarker = entry.previousSameTag;
+                release(entry);
                 break;
             }
+            remove(entry);
+        }
+    }
+
+    /**
+     * @return the last element with the given tag id between the end of the list and the last marker, null if none
+     */
+    Element getBetweenLastElementAndMarker(int tagNameID) {
+        Entry entry = lastByTag[tagNameID];
+        return entry != null && isAfterLastMarker(entry) ? entry.element : null;
+    }
+
+    void remove(Element e) {
+        Entry entry = e.formattingEntry;
+        if (entry != null) {
+            remove(entry);
+        }
+    }
+
+    void replace(Element node, Element elem) {
+        // same name, namespace and attributes: the chains don't change
+        Entry entry = node.formattingEntry;
+        node.formattingEntry = null;
+        entry.element = elem;
+        elem.formattingEntry = entry;
+    }
+
+    private boolean isAfterLastMarker(Entry entry) {
+        return lastMarker == null || entry.order > lastMarker.order;
+    }
+
+    private void remove(Entry entry) {
+        unlink(entry);
+        entry.element.formattingEntry = null;
+
+        Entry previous = entry.previousSameTag;
+        Entry next = entry.nextSameTag;
+        if (previous != null) {
+            previous.nextSameTag = next;
+        }
+        if (next != null) {
+            next.previousSameTag = previous;
+        } else {
+            lastByTag[entry.element.nodeNameID] = previous;
+        }
+
+        previous = entry.previousSameSignature;
+        next = entry.nextSameSignature;
+        if (previous != null) {
+            previous.nextSameSignature = next;
+        }
+        if (next != null) {
+            next.previousSameSignature = previous;
+        } else {
+            replaceLastWithSameSignature(entry, previous);
+        }
+        release(entry);
+    }
+
+    // reference the entry from its element and add it to the chains, at the place given by its order key
+    private void link(Entry entry) {
+        entry.element.formattingEntry = entry;
+
+        int tag = entry.element.nodeNameID;
+        Entry previous = lastByTag[tag];
+        Entry next = null;
+        while (previous != null && previous.order > entry.order) {
+            next = previous;
+            previous = previous.previousSameTag;
+        }
+        entry.previousSameTag = previous;
+        entry.nextSameTag = next;
+        if (previous != null) {
+            previous.nextSameTag = entry;
+        }
+        if (next != null) {
+            next.previousSameTag = entry;
+        } else {
+            lastByTag[tag] = entry;
+        }
+
+        Entry lastWithSameSignature = lastWithSameSignature(entry);
+        previous = lastWithSameSignature;
+        next = null;
+        while (previous != null && previous.order > entry.order) {
+            next = previous;
+            previous = previous.previousSameSignature;
+        }
+        entry.previousSameSignature = previous;
+        entry.nextSameSignature = next;
+        if (previous != null) {
+            previous.nextSameSignature = entry;
+        }
+        if (next != null) {
+            next.previousSameSignature = entry;
+        } else if (lastWithSameSignature != null) {
+            replaceLastWithSameSignature(lastWithSameSignature, entry);
+        } else {
+            addLastWithSameSignature(entry);
+        }
+    }
+
+    // the signature of an element: name, namespace and attributes, as compared by the Noah's Ark clause
+
+    private static int signatureHash(Element element) {
+        Attributes attributes = element.attributes;
+        int hash = 31 * (31 * element.nodeName.hashCode() + element.namespaceURI.hashCode());
+        return attributes == null || attributes.isEmpty() ? hash : hash + attributes.hashCode();
+    }
+
+    private static boolean sameSignature(Entry a, Entry b) {
+        if (a.signatureHash != b.signatureHash) {
+            return false;
         }
+        Element e1 = a.element;
+        Element e2 = b.element;
+        if (!e1.nodeName.equals(e2.nodeName) || !e1.namespaceURI.equals(e2.namespaceURI)) {
+            return false;
+        }
+        boolean empty1 = e1.attributes == null || e1.attributes.isEmpty();
+        boolean empty2 = e2.attributes == null || e2.attributes.isEmpty();
+        return empty1 || empty2 ? empty1 == empty2 : Objects.equals(e1.attributes, e2.attributes);
     }
 
-    Element getElementAtIndex(int idx) {
-        return activeFormattingElements.get(idx);
+    private int bucket(int hash) {
+        return (hash ^ (hash >>> 16)) & (lastBySignature.length - 1);
     }
 
-    // we know we pass non zero tagNameID
-    int getBetweenLastElementAndMarkerIndex(int tagNameID) {
-        for (int i = activeFormattingElements.size() - 1; i >= 0; i--) {
-            Element e = activeFormattingElements.get(i);
-            if (MARKER_ELEMENT == e) {
-                return -1;
-            } else if (tagNameID == e.nodeNameID) {
-                return i;
+    private Entry lastWithSameSignature(Entry entry) {
+        for (Entry e = lastBySignature[bucket(entry.signatureHash)]; e != null; e = e.nextInTable) {
+            if (sameSignature(e, entry)) {
+                return e;
             }
         }
-        return -1;
+        return null;
     }
 
-    int getBetweenLastElementAndMarkerIndexElementANamespaceHtml() {
-        for (int i = activeFormattingElements.size() - 1; i >= 0; i--) {
-            Element e = activeFormattingElements.get(i);
-            if (MARKER_ELEMENT == e) {
-                return -1;
-            } else if (Common.isHtmlNS(e, Common.ELEMENT_A_ID)) {
-                return i;
+    private void addLastWithSameSignature(Entry entry) {
+        if (signatureCount >= lastBySignature.length * 3 / 4) {
+            Entry[] old = lastBySignature;
+            lastBySignature = new Entry[old.length * 2];
+            for (Entry e : old) {
+                while (e != null) {
+                    Entry next = e.nextInTable;
+                    int index = bucket(e.signatureHash);
+                    e.nextInTable = lastBySignature[index];
+                    lastBySignature[index] = e;
+                    e = next;
+                }
             }
         }
-        return -1;
+        int index = bucket(entry.signatureHash);
+        entry.nextInTable = lastBySignature[index];
+        lastBySignature[index] = entry;
+        signatureCount++;
     }
 
-    int indexOf(Element e) {
-        return activeFormattingElements.lastIndexOf(e);
+    // replace the last entry of a signature in the table, null for removing it
+    private void replaceLastWithSameSignature(Entry entry, Entry replacement) {
+        int index = bucket(entry.signatureHash);
+        Entry previous = null;
+        Entry e = lastBySignature[index];
+        while (e != entry) {
+            previous = e;
+            e = e.nextInTable;
+        }
+        Entry next = entry.nextInTable;
+        entry.nextInTable = null;
+        if (replacement != null) {
+            replacement.nextInTable = next;
+            next = replacement;
+        } else {
+            signatureCount--;
+        }
+        if (previous == null) {
+            lastBySignature[index] = next;
+        } else {
+            previous.nextInTable = next;
+        }
     }
 
-    void remove(Element e) {
-        int idx = activeFormattingElements.lastIndexOf(e);
-        if (idx != -1) {
-            activeFormattingElements.remove(idx);
+    private Entry newEntry() {
+        Entry entry = free;
+        if (entry == null) {
+            return new Entry();
         }
+        free = entry.next;
+        entry.next = null;
+        return entry;
     }
 
-    void replace(Element node, Element elem) {
-        activeFormattingElements.set(activeFormattingElements.lastIndexOf(node), elem);
+    private void release(Entry entry) {
+        entry.element = null;
+        entry.previous = null;
+        entry.previousSameTag = null;
+        entry.nextSameTag = null;
+        entry.previousSameSignature = null;
+        entry.nextSameSignature = null;
+        entry.nextInTable = null;
+        entry.next = free;
+        free = entry;
+    }
+
+    private void append(Entry entry) {
+        entry.order = last == null ? 0 : last.order + ORDER_GAP;
+        entry.previous = last;
+        entry.next = null;
+        if (last == null) {
+            first = entry;
+        } else {
+            last.next = entry;
+        }
+        last = entry;
     }
 
+    // insert the entry after the given one, or as first if null
+    private void insertAfter(Entry previous, Entry entry) {
+        Entry next = previous == null ? first : previous.next;
+        if (next == null) {
+            append(entry);
+            return;
+        }
+        if (next.order - orderAfter(previous, next) < 2) {
+            renumber();
+        }
+        long low = orderAfter(previous, next);
+        entry.order = low + (next.order - low) / 2;
+        entry.previous = previous;
+        entry.next = next;
+        next.previous = entry;
+        if (previous == null) {
+            first = entry;
+        } else {
+            previous.next = entry;
+        }
+    }
+
+    private static long orderAfter(Entry previous, Entry next) {
+        return previous == null ? next.order - 2 * ORDER_GAP : previous.order;
+    }
+
+    private void renumber() {
+        long order = 0;
+        for (Entry entry = first; entry != null; entry = entry.next) {
+            entry.order = order;
+            order += ORDER_GAP;
+        }
+    }
+
+    private void unlink(Entry entry) {
+        Entry previous = entry.previous;
+        Entry next = entry.next;
+        if (previous == null) {
+            first = next;
+        } else {
+            previous.next = next;
+        }
+        if (next == null) {
+            last = previous;
+        } else {
+            next.previous = previous;
+        }
+    }
+
+    static final class Entry {
+        // null for the markers and the bookmark
+        Element element;
+        int signatureHash;
+        long order;
+        Entry previous;
+        Entry next;
+        // chain of the entries with the same tag id (for the markers: the previous marker)
+        Entry previousSameTag;
+        Entry nextSameTag;
+        // chain of the entries with the same signature
+        Entry previousSameSignature;
+        Entry nextSameSignature;
+        // chain of the bucket, for the last entries of the signatures
+        Entry nextInTable;
+    }
 }
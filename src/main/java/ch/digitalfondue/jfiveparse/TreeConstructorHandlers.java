@@ -893,38 +893,15 @@ final class TreeConstructorHandlers {
                 // Enable foster parenting, process the token using the rules
                 // for the "in body" insertion mode, and then disable foster
                 // parenting.
-
-                // save tokenType and chr value
-
-                final int currentTokenType = treeConstructor.getTokenType();
-                final int currentChar = treeConstructor.getChr();
-
-                //
+                // The pending characters don't contain any NULL: the whole run is handled as "in body" would do
+                // character by character (the active formatting elements are reconstructed only once).
                 treeConstructor.enableFosterParenting();
-                //
-                treeConstructor.setTokenType(TT_CHARACTER);
-                int pos = chars.pos();
-                for (int i = 0; i < pos; i++) {
-                    treeConstructor.setChr(chars.at(i));
-                    inBody(TT_CHARACTER, tagName, tagNameID, treeConstructor);
-                }
-
-                //
+                treeConstructor.activeFormattingElements.reconstruct();
+                treeConstructor.insertCharacters(chars.backingCharArray(), 0, chars.pos());
+                treeConstructor.framesetOkToFalse();
                 treeConstructor.disableFosterParenting();
-
-                // restore
-                treeConstructor.setTokenType(currentTokenType);
-                treeConstructor.setChr((char) currentChar);
-            } else {
-                int pos = chars.pos();
-                ResizableCharBuilder insertCharacterPreviousTextNode = null;
-                if (pos > 0) {
-                    treeConstructor.insertCharacter(chars.at(0));
-                    insertCharacterPreviousTextNode = treeConstructor.getInsertCharacterPreviousTextNode();
-                }
-                for (int i = 1; i < pos; i++) {
-                    insertCharacterPreviousTextNode.append(chars.at(i));
-                }
+            } else if (chars.pos() > 0) {
+                treeConstructor.insertCharacters(chars.backingCharArray(), 0, chars.pos());
             }
 
             treeConstructor.switchToOriginalInsertionMode();
@@ -1640,9 +1617,8 @@ final class TreeConstructorHandlers {
     }
 
     private static void startA(TreeConstructor treeConstructor) {
-        final int aIdx = treeConstructor.activeFormattingElements.getBetweenLastElementAndMarkerIndexElementANamespaceHtml();
-        if (aIdx != -1) {
-            Element a = treeConstructor.activeFormattingElements.getElementAtIndex(aIdx);
+        Element a = treeConstructor.activeFormattingElements.getBetweenLastElementAndMarker(ELEMENT_A_ID);
+        if (a != null) {
             treeConstructor.emitParseError();
             treeConstructor.adoptionAgencyAlgorithm(ELEMENT_A_ID);
             treeConstructor.activeFormattingElements.remove(a);
@@ -1675,36 +1651,24 @@ final class TreeConstructorHandlers {
 
     private static void startDdDt(TreeConstructor treeConstructor) {
         treeConstructor.framesetOkToFalse();
-        int idx = treeConstructor.openElementsSize() - 1;
-        Element node = treeConstructor.openElementAt(idx);
-        while (true) {
-            if (Common.isHtmlNS(node, ELEMENT_DD_ID)) {
-                treeConstructor.generateImpliedEndTag("dd", Node.NAMESPACE_HTML);
-                if (Common.isHtmlNS(treeConstructor.getCurrentNode(), ELEMENT_DD_ID)) {
-                    treeConstructor.emitParseError();
-                }
-                treeConstructor.popOpenElementsUntilWithHtmlNS(ELEMENT_DD_ID);
-                break;
-            }
-
-            if (Common.isHtmlNS(node, ELEMENT_DT_ID)) {
-                treeConstructor.generateImpliedEndTag("dt", Node.NAMESPACE_HTML);
-                if (Common.isHtmlNS(treeConstructor.getCurrentNode(), ELEMENT_DT_ID)) {
-                    // parser error
-                }
-                treeConstructor.popOpenElementsUntilWithHtmlNS(ELEMENT_DT_ID);
-                break;
+        // the loop over the stack of open elements stops at the first dd or dt element, or at the first special
+        // element other than address, div and p
+        int dd = treeConstructor.hasElementInSpecialScope(ELEMENT_DD_ID) ? treeConstructor.topmostOpenElementPosition(ELEMENT_DD_ID) : -1;
+        int dt = treeConstructor.hasElementInSpecialScope(ELEMENT_DT_ID) ? treeConstructor.topmostOpenElementPosition(ELEMENT_DT_ID) : -1;
+        if (dd > dt) {
+            treeConstructor.generateImpliedEndTag("dd", Node.NAMESPACE_HTML);
+            if (Common.isHtmlNS(treeConstructor.getCurrentNode(), ELEMENT_DD_ID)) {
+                treeConstructor.emitParseError();
             }
-
-            if (Common.isSpecialCategory(node) && //
-                    !(Common.isHtmlNS(node, ELEMENT_ADDRESS_ID) || //
-                            Common.isHtmlNS(node, ELEMENT_DIV_ID) || Common.isHtmlNS(node, ELEMENT_P_ID))) {
-                break;
+            treeConstructor.popOpenElementsUntilWithHtmlNS(ELEMENT_DD_ID);
+        } else if (dt > dd) {
+            treeConstructor.generateImpliedEndTag("dt", Node.NAMESPACE_HTML);
+            if (Common.isHtmlNS(treeConstructor.getCurrentNode(), ELEMENT_DT_ID)) {
+                // parser error
             }
-
-            idx = idx - 1;
-            node = treeConstructor.openElementAt(idx);
+            treeConstructor.popOpenElementsUntilWithHtmlNS(ELEMENT_DT_ID);
         }
+
         if (treeConstructor.hasElementInButtonScope(ELEMENT_P_ID)) {
             treeConstructor.closePElement();
         }
@@ -1715,27 +1679,15 @@ final class TreeConstructorHandlers {
     private static void startLi(TreeConstructor treeConstructor) {
         treeConstructor.framesetOkToFalse();
 
-        int idx = treeConstructor.openElementsSize() - 1;
-        Element node = treeConstructor.openElementAt(idx);
-        while (true) {
-            if (Common.isHtmlNS(node, Common.ELEMENT_LI_ID)) {
-                treeConstructor.generateImpliedEndTag("li", Node.NAMESPACE_HTML);
-                if (!Common.isHtmlNS(treeConstructor.getCurrentNode(), Common.ELEMENT_LI_ID)) {
-                    treeConstructor.emitParseError();
-                }
-
-                treeConstructor.popOpenElementsUntilWithHtmlNS(ELEMENT_LI_ID);
-                break;
-            }
-
-            if (Common.isSpecialCategory(node) && //
-                    !(Common.isHtmlNS(node, ELEMENT_ADDRESS_ID) || //
-                            Common.isHtmlNS(node, ELEMENT_DIV_ID) || Common.isHtmlNS(node, ELEMENT_P_ID))) {
-                break;
+        // the loop over the stack of open elements stops at the first li element, or at the first special element
+        // other than address, div and p
+        if (treeConstructor.hasElementInSpecialScope(ELEMENT_LI_ID)) {
+            treeConstructor.generateImpliedEndTag("li", Node.NAMESPACE_HTML);
+            if (!Common.isHtmlNS(treeConstructor.getCurrentNode(), Common.ELEMENT_LI_ID)) {
+                treeConstructor.emitParseError();
             }
-            idx = idx - 1;
-            node = treeConstructor.openElementAt(idx);
 
+            treeConstructor.popOpenElementsUntilWithHtmlNS(ELEMENT_LI_ID);
         }
 
         if (treeConstructor.hasElementInButtonScope(ELEMENT_P_ID)) {
@@ -1800,7 +1752,7 @@ final class TreeConstructorHandlers {
         treeConstructor.emitParseError();
         if (treeConstructor.openElementsSize() == 1 || !Common.isHtmlNS(treeConstructor.openElementAt(1), ELEMENT_BODY_ID)) {
             // ignore
-        } else if (Boolean.FALSE.equals(treeConstructor.getFramesetOk())) {
+        } else if (!treeConstructor.isFramesetOk()) {
             // ignore
         } else {
 
@@ -1934,7 +1886,7 @@ final class TreeConstructorHandlers {
                 endBr(treeConstructor);
                 break;
             default:
-                foreignAnyOtherEndTag(tagName, treeConstructor);
+                foreignAnyOtherEndTag(tagName, tagNameID, treeConstructor);
                 break;
         }
     }
@@ -2139,25 +2091,25 @@ final class TreeConstructorHandlers {
         }
     }
 
-    static void foreignAnyOtherEndTag(String tagName, TreeConstructor treeConstructor) {
+    static void foreignAnyOtherEndTag(String tagName, int tagNameID, TreeConstructor treeConstructor) {
+        if (tagNameID != 0) {
+            // known tag: the walk below is answered by the index of the open elements
+            Element node = treeConstructor.topmostOpenElementNotBelowSpecial(tagNameID);
+            if (node == null) {
+                treeConstructor.emitParseError();
+            } else {
+                closeAnyOtherEndTag(tagName, node, treeConstructor);
+            }
+            return;
+        }
+
         int idx = treeConstructor.openElementsSize() - 1;
         Element node = treeConstructor.openElementAt(idx);
 
         while (true) {
             // Common.isHtmlNS
             if (node.namespaceID == Node.NAMESPACE_HTML_ID && node.nodeName.equals(tagName)) {
-                treeConstructor.generateImpliedEndTag(tagName, Node.NAMESPACE_HTML);
-                if (node != treeConstructor.getCurrentNode()) {
-                    treeConstructor.emitParseError();
-                }
-
-                while (true) {
-                    Element e = treeConstructor.popCurrentNode();
-                    if (e == node) {
-                        break;
-                    }
-                }
-
+                closeAnyOtherEndTag(tagName, node, treeConstructor);
                 break;
             } else if (Common.isSpecialCategory(node)) {
                 treeConstructor.emitParseError();
@@ -2169,6 +2121,20 @@ final class TreeConstructorHandlers {
         }
     }
 
+    private static void closeAnyOtherEndTag(String tagName, Element node, TreeConstructor treeConstructor) {
+        treeConstructor.generateImpliedEndTag(tagName, Node.NAMESPACE_HTML);
+        if (node != treeConstructor.getCurrentNode()) {
+            treeConstructor.emitParseError();
+        }
+
+        while (true) {
+            Element e = treeConstructor.popCurrentNode();
+            if (e == node) {
+                break;
+            }
+        }
+    }
+
     // ---------------------------
 
     static void foreignContent(int tokenType, String tagName, int tagNameID, TreeConstructor treeConstructor) {
@@ -0,0 +1,273 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import java.util.Arrays;
+
+/**
+ * Index of the stack of open elements, for answering the "has an element in the specific scope" checks
+ * (https://html.spec.whatwg.org/multipage/parsing.html#has-an-element-in-the-specific-scope) without walking the
+ * stack.
+ *
+ * For each html tag id, the position of the topmost open element with that id (the positions of the other ones are
+ * chained), and for each scope, the positions of the open elements that delimit it. An element is in scope when
+ * its topmost position is not below the topmost delimiter of the scope.
+ *
+ * Pushing and popping are constant time. A removal or an insertion in the middle of the stack rebuilds the index
+ * above the changed position, the reordering done by the adoption agency algorithm only the reordered range.
+ */
+final class TreeConstructorScopes {
+
+    static final int SCOPE = 0;
+    static final int BUTTON_SCOPE = 1;
+    static final int LIST_ITEM_SCOPE = 2;
+    static final int TABLE_SCOPE = 3;
+    // not a scope of the spec: delimited by the special elements other than address, div and p, it's where the
+    // "li", "dd" and "dt" start tags look for an element to close
+    static final int SPECIAL_SCOPE = 4;
+
+    private static final int SCOPE_COUNT = 5;
+
+    // position of the topmost open html element for each tag id, -1 if none
+    private final int[] topmostByTag = new int[Common.ELEMENT_ID_COUNT];
+
+    // for each open element: its html tag id (0 if not html or unknown), the positions of the previous and of the
+    // next open html element with the same tag id and the scopes it delimits (bit mask)
+    private int[] tags = new int[32];
+    private int[] previousSameTag = new int[32];
+    private int[] nextSameTag = new int[32];
+    private int[] delimitedScopes = new int[32];
+    private int size;
+
+    // used by reorder: for each tag id, the last position assigned and the next position above the
+    // range, and the tag ids found in the range
+    private final int[] rangeLastByTag = new int[Common.ELEMENT_ID_COUNT];
+    private final int[] rangeAboveByTag = new int[Common.ELEMENT_ID_COUNT];
+    private int[] rangeTags = new int[16];
+
+    // for each scope, the stack of the positions of its delimiters
+    private final int[][] delimiters = new int[SCOPE_COUNT][16];
+    private final int[] delimiterCounts = new int[SCOPE_COUNT];
+
+    TreeConstructorScopes() {
+        Arrays.fill(topmostByTag, -1);
+    }
+
+    void clear() {
+        Arrays.fill(topmostByTag, -1);
+        Arrays.fill(delimiterCounts, 0);
+        size = 0;
+    }
+
+    /**
+     * Update the index after a change of the stack at the given position: the entries above it are popped and the
+     * elements pushed again.
+     */
+    void rebuild(Element[] openElements, int openElementsCount, int from) {
+        while (size > from) {
+            pop();
+        }
+        for (int i = from; i < openElementsCount; i++) {
+            push(openElements[i]);
+        }
+    }
+
+    /**
+     * Update the index after a reordering of the elements between the two positions (included): the elements in the
+     * range must be the same ones, or have the same tag id and namespace, as the ones they replace.
+     */
+    void reorder(Element[] openElements, int from, int to) {
+        // the neighbours of the range in the chains of its tag ids
+        int tagCount = 0;
+        for (int pos = from; pos <= to; pos++) {
+            int tag = tags[pos];
+            if (tag == 0) {
+                continue;
+            }
+            int previous = previousSameTag[pos];
+            if (previous < from) {
+                rangeLastByTag[tag] = previous;
+                if (tagCount == rangeTags.length) {
+                    rangeTags = Arrays.copyOf(rangeTags, tagCount * 2);
+                }
+                rangeTags[tagCount++] = tag;
+            }
+            rangeAboveByTag[tag] = nextSameTag[pos];
+        }
+
+        for (int pos = from; pos <= to; pos++) {
+            Element element = openElements[pos];
+            int tag = htmlTag(element);
+            tags[pos] = tag;
+            delimitedScopes[pos] = delimitedScopes(element, tag);
+            if (tag != 0) {
+                int previous = rangeLastByTag[tag];
+                previousSameTag[pos] = previous;
+                if (previous != -1) {
+                    nextSameTag[previous] = pos;
+                }
+                rangeLastByTag[tag] = pos;
+            }
+        }
+
+        for (int i = 0; i < tagCount; i++) {
+            int tag = rangeTags[i];
+            int last = rangeLastByTag[tag];
+            int above = rangeAboveByTag[tag];
+            nextSameTag[last] = above;
+            if (above == -1) {
+                topmostByTag[tag] = last;
+            } else {
+                previousSameTag[above] = last;
+            }
+        }
+
+        // the delimiters in the range are as many as before: they are overwritten in order
+        for (int scope = 0; scope < SCOPE_COUNT; scope++) {
+            int[] positions = delimiters[scope];
+            int index = Arrays.binarySearch(positions, 0, delimiterCounts[scope], from);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            int mask = 1 << scope;
+            for (int pos = from; pos <= to; pos++) {
+                if ((delimitedScopes[pos] & mask) != 0) {
+                    positions[index++] = pos;
+                }
+            }
+        }
+    }
+
+    void push(Element element) {
+        int pos = size;
+        if (pos == tags.length) {
+            int newLength = pos * 2;
+            tags = Arrays.copyOf(tags, newLength);
+            previousSameTag = Arrays.copyOf(previousSameTag, newLength);
+            nextSameTag = Arrays.copyOf(nextSameTag, newLength);
+            delimitedScopes = Arrays.copyOf(delimitedScopes, newLength);
+        }
+        int tag = htmlTag(element);
+        tags[pos] = tag;
+        if (tag != 0) {
+            int previous = topmostByTag[tag];
+            previousSameTag[pos] = previous;
+            nextSameTag[pos] = -1;
+            if (previous != -1) {
+                nextSameTag[previous] = pos;
+            }
+            topmostByTag[tag] = pos;
+        }
+        int scopes = delimitedScopes(element, tag);
+        delimitedScopes[pos] = scopes;
+        for (int scope = 0; scopes != 0; scope++, scopes >>>= 1) {
+            if ((scopes & 1) != 0) {
+                int count = delimiterCounts[scope];
+                if (count == delimiters[scope].length) {
+                    delimiters[scope] = Arrays.copyOf(delimiters[scope], count * 2);
+                }
+                delimiters[scope][count] = pos;
+                delimiterCounts[scope] = count + 1;
+            }
+        }
+        size++;
+    }
+
+    void pop() {
+        int pos = --size;
+        int tag = tags[pos];
+        if (tag != 0) {
+            int previous = previousSameTag[pos];
+            topmostByTag[tag] = previous;
+            if (previous != -1) {
+                nextSameTag[previous] = -1;
+            }
+        }
+        int scopes = delimitedScopes[pos];
+        for (int scope = 0; scopes != 0; scope++, scopes >>>= 1) {
+            if ((scopes & 1) != 0) {
+                delimiterCounts[scope]--;
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return true if an open html element with the given tag id is in the given scope
+     */
+    boolean hasElementInScope(int tagNameID, int scope) {
+        int pos = topmostByTag[tagNameID];
+        return pos != -1 && pos >= topmostDelimiter(scope);
+    }
+
+    /**
+     * @return true if the open element at the given position is in the given scope
+     */
+    boolean isInScope(int position, int scope) {
+        return position >= topmostDelimiter(scope);
+    }
+
+    /**
+     * @return the position of the topmost open html element with the given tag id, -1 if none
+     */
+    int topmost(int tagNameID) {
+        return topmostByTag[tagNameID];
+    }
+
+    /**
+     * @return the position of the topmost open element in the special category
+     */
+    int topmostSpecial() {
+        int special = Math.max(topmostDelimiter(SPECIAL_SCOPE), topmostByTag[Common.ELEMENT_ADDRESS_ID]);
+        return Math.max(special, Math.max(topmostByTag[Common.ELEMENT_DIV_ID], topmostByTag[Common.ELEMENT_P_ID]));
+    }
+
+    private int topmostDelimiter(int scope) {
+        int count = delimiterCounts[scope];
+        return count == 0 ? -1 : delimiters[scope][count - 1];
+    }
+
+    private static int htmlTag(Element element) {
+        return Node.NAMESPACE_HTML_ID == element.namespaceID ? element.nodeNameID : 0;
+    }
+
+    private static int delimitedScopes(Element element, int tag) {
+        int scopes = 0;
+        if (Common.isInCommonInScope(element)) {
+            scopes = (1 << SCOPE) | (1 << BUTTON_SCOPE) | (1 << LIST_ITEM_SCOPE);
+        }
+        if (Common.isSpecialCategory(element) && tag != Common.ELEMENT_ADDRESS_ID && tag != Common.ELEMENT_DIV_ID && tag != Common.ELEMENT_P_ID) {
+            scopes |= 1 << SPECIAL_SCOPE;
+        }
+        switch (tag) {
+            case Common.ELEMENT_BUTTON_ID:
+                scopes |= 1 << BUTTON_SCOPE;
+                break;
+            case Common.ELEMENT_OL_ID, Common.ELEMENT_UL_ID:
+                scopes |= 1 << LIST_ITEM_SCOPE;
+                break;
+            case Common.ELEMENT_HTML_ID, Common.ELEMENT_TABLE_ID, Common.ELEMENT_TEMPLATE_ID:
+                scopes |= 1 << TABLE_SCOPE;
+                break;
+            default:
+                break;
+        }
+        return scopes;
+    }
+}
@@ -140,7 +140,10 @@ public final class W3CDom {
         }
 
         protected org.w3c.dom.Element toElement(Element elem) {
-            for (AttributeNode attr : elem.getAttributes()) {
+            Attributes attributes = elem.getAttributes();
+            AttributeNode scratch = new AttributeNode(null, null);
+            for (int i = 0; i < attributes.size(); i++) {
+                AttributeNode attr = attributes.peekNodeAt(i, scratch);
                 if ("xmlns".equals(attr.getName()) || attr.getName().startsWith("xmlns:")) {
                     xmlNamespaces.peek().put(extractXmlnsPrefix(attr.getName()), attr.getValue());
                 }
@@ -148,7 +151,8 @@ public final class W3CDom {
 
             org.w3c.dom.Element e = buildNamespacedElement(elem);
 
-            for (AttributeNode attr : elem.getAttributes()) {
+            for (int i = 0; i < attributes.size(); i++) {
+                AttributeNode attr = attributes.peekNodeAt(i, scratch);
                 if ("xmlns".equals(attr.getName()) || attr.getName().startsWith("xmlns:")) {
                     e.setAttributeNS("http://www.w3.org/2000/xmlns/", attr.getName(), attr.getValue());
                 } else {
@@ -0,0 +1,69 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * A block of memory outside of the garbage collected heap, for an off-heap {@link FrozenDocument}.
+ *
+ * This version, for Java 22 and later, uses a memory segment of a shared arena: {@link #close()} frees the memory
+ * immediately, and an access after it fails with an {@link IllegalStateException}.
+ */
+final class OffHeapMemory implements AutoCloseable {
+
+    private final Arena arena;
+    private final MemorySegment segment;
+
+    OffHeapMemory(long size) {
+        arena = Arena.ofShared();
+        segment = arena.allocate(size, Long.BYTES);
+    }
+
+    int getInt(long offset) {
+        return segment.get(ValueLayout.JAVA_INT, offset);
+    }
+
+    void putInt(long offset, int value) {
+        segment.set(ValueLayout.JAVA_INT, offset, value);
+    }
+
+    void putByte(long offset, byte value) {
+        segment.set(ValueLayout.JAVA_BYTE, offset, value);
+    }
+
+    void getBytes(long offset, byte[] dst) {
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, offset, dst, 0, dst.length);
+    }
+
+    // the offset of the chars must be even
+    void putChars(long offset, String s) {
+        MemorySegment.copy(s.toCharArray(), 0, segment, ValueLayout.JAVA_CHAR, offset, s.length());
+    }
+
+    void getChars(long offset, char[] dst) {
+        MemorySegment.copy(segment, ValueLayout.JAVA_CHAR, offset, dst, 0, dst.length);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (arena.scope().isAlive()) {
+            arena.close();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttributesTest {
+
+    @Test
+    void parsedAttributesKeepTheirOrderAndNodes() {
+        Element div = (Element) new Parser().parseFragment(new Element("body"), "<div b=1 a='2' C=3 d>").get(0);
+        Attributes attributes = div.getAttributes();
+        assertEquals(List.of("b", "a", "c", "d"), new ArrayList<>(attributes.keySet()));
+        assertEquals("1", attributes.getNamedItem("b"));
+        assertEquals("", attributes.getNamedItem("d"));
+
+        AttributeNode b = div.getAttributeNode("b");
+        assertSame(b, attributes.get("b"));
+        b.setValue("changed");
+        assertEquals("changed", div.getAttribute("b"));
+        assertEquals("<div b=\"changed\" a=\"2\" c=\"3\" d=\"\"></div>", div.getOuterHTML());
+        assertEquals("<div b=changed a='2' C=3 d></div>", div.getOuterHTML(EnumSet.of(Option.PRINT_ORIGINAL_ATTRIBUTE_QUOTE, Option.PRINT_ORIGINAL_ATTRIBUTES_CASE)));
+
+        List<String> names = new ArrayList<>();
+        for (AttributeNode a : attributes) {
+            names.add(a.getName());
+        }
+        assertEquals(List.of("b", "a", "c", "d"), names);
+        assertSame(b, attributes.iterator().next());
+    }
+
+    @Test
+    void equalityDoesNotDependOnTheRepresentation() {
+        Element parsed = (Element) new Parser().parseFragment(new Element("body"), "<p x=1 y=2>").get(0);
+        Attributes built = new Attributes();
+        built.put("y", "2");
+        built.put(new AttributeNode("x", "1"));
+        assertEquals(parsed.getAttributes(), built);
+        assertEquals(parsed.getAttributes().hashCode(), built.hashCode());
+
+        Attributes copy = parsed.getAttributes().copy();
+        assertEquals(parsed.getAttributes(), copy);
+        copy.get("x").setValue("3");
+        assertEquals("1", parsed.getAttribute("x"));
+        assertNotEquals(parsed.getAttributes(), copy);
+        // the node of the parsed attribute has been created in the meantime
+        parsed.getAttributeNode("x");
+        assertEquals(parsed.getAttributes().hashCode(), built.hashCode());
+    }
+
+    // random operations, compared with the LinkedHashMap of the nodes the attributes were implemented with
+    @Test
+    void mapEntriesAreCopied() {
+        Map<String, AttributeNode> map = new LinkedHashMap<>();
+        AttributeNode b = new AttributeNode("b", "1");
+        map.put("b", b);
+        map.put("a", new AttributeNode("a", "2"));
+        Attributes attributes = new Attributes(map);
+        map.remove("a");
+        map.put("c", new AttributeNode("c", "3"));
+        attributes.put("d", "4");
+        assertEquals(List.of("b", "a", "d"), new ArrayList<>(attributes.keySet()));
+        assertEquals(List.of("b", "c"), new ArrayList<>(map.keySet()));
+        // the nodes are shared
+        assertSame(b, attributes.get("b"));
+        assertTrue(new Attributes(null).isEmpty());
+    }
+
+    @Test
+    void behavesLikeALinkedHashMap() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            Attributes attributes = new Attributes();
+            Map<String, AttributeNode> model = new LinkedHashMap<>();
+            int keys = 1 + random.nextInt(40);
+            for (int op = 0; op < 300; op++) {
+                String key = "k" + random.nextInt(keys);
+                switch (random.nextInt(6)) {
+                    case 0, 1 -> {
+                        String value = "v" + op;
+                        attributes.put(key, value);
+                        model.put(key, new AttributeNode(key, value));
+                    }
+                    case 2 -> {
+                        AttributeNode node = new AttributeNode(key, "n" + op);
+                        attributes.put(node);
+                        model.put(key, node);
+                    }
+                    case 3 -> {
+                        attributes.remove(key);
+                        model.remove(key);
+                    }
+                    case 4 -> {
+                        Iterator<AttributeNode> it = attributes.iterator();
+                        Iterator<AttributeNode> modelIt = model.values().iterator();
+                        while (it.hasNext()) {
+                            AttributeNode node = it.next();
+                            assertEquals(modelIt.next(), node);
+                            if (node.getName().equals(key)) {
+                                it.remove();
+                                modelIt.remove();
+                            }
+                        }
+                    }
+                    default -> {
+                        assertEquals(model.containsKey(key), attributes.containsKey(key));
+                        assertEquals(model.get(key), attributes.get(key));
+                    }
+                }
+                assertEquals(model.isEmpty(), attributes.isEmpty());
+                assertEquals(new ArrayList<>(model.keySet()), new ArrayList<>(attributes.keySet()));
+                assertEquals(model.hashCode(), attributes.hashCode());
+            }
+            assertEquals(new Attributes(model), attributes);
+            assertEquals(attributes, attributes.copy());
+        }
+    }
+
+    @Test
+    void wideElements() {
+        StringBuilder sb = new StringBuilder("<div");
+        for (int i = 0; i < 2000; i++) {
+            sb.append(" a").append(i).append("=").append(i);
+        }
+        // the duplicates are dropped
+        sb.append(" a10=x a1999=y>");
+        Element div = (Element) new Parser().parseFragment(new Element("body"), sb.toString()).get(0);
+        Attributes attributes = div.getAttributes();
+        assertEquals(2000, attributes.keySet().size());
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(Integer.toString(i), div.getAttribute("a" + i));
+        }
+        for (int i = 0; i < 2000; i += 2) {
+            attributes.remove("a" + i);
+        }
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(i % 2 == 0 ? null : Integer.toString(i), div.getAttribute("a" + i));
+        }
+        assertEquals("a1", attributes.keySet().iterator().next());
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class CharClassTest {
+
+    private static boolean isWhitespace(int c) {
+        return c == '\t' || c == '\n' || c == '\f' || c == '\r' || c == ' ';
+    }
+
+    @Test
+    void sameAsComparisons() {
+        for (int c = Characters.EOF; c <= 0xFFFF; c++) {
+            boolean upper = c >= 'A' && c <= 'Z';
+            boolean lower = c >= 'a' && c <= 'z';
+            boolean digit = c >= '0' && c <= '9';
+            assertEquals(isWhitespace(c), CharClass.is(c, CharClass.WHITESPACE), "whitespace " + c);
+            assertEquals(upper, CharClass.is(c, CharClass.UPPER_CASE_LETTER), "upper " + c);
+            assertEquals(upper || lower, CharClass.is(c, CharClass.LETTER), "letter " + c);
+            assertEquals(upper || lower || digit, CharClass.is(c, CharClass.ALPHANUMERIC), "alphanumeric " + c);
+            assertEquals(digit || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'), CharClass.is(c, CharClass.HEX_DIGIT), "hex " + c);
+
+            boolean tagNameStop = isWhitespace(c) || c == '/' || c == '>' || c == 0 || c == Characters.EOF;
+            assertEquals(tagNameStop, CharClass.is(c, CharClass.TAG_NAME_STOP), "tag name " + c);
+            boolean attributeNameStop = isWhitespace(c) || c == '/' || c == '=' || c == '>' || c == 0 || c == '"' || c == '\'' || c == '<' || c == Characters.EOF;
+            assertEquals(attributeNameStop, CharClass.is(c, CharClass.ATTRIBUTE_NAME_STOP), "attribute name " + c);
+            boolean unquotedStop = isWhitespace(c) || c == '&' || c == '>' || c == 0 || c == '"' || c == '\'' || c == '<' || c == '=' || c == '`' || c == Characters.EOF;
+            assertEquals(unquotedStop, CharClass.is(c, CharClass.ATTRIBUTE_VALUE_UNQUOTED_STOP), "unquoted attribute value " + c);
+        }
+    }
+
+    @Test
+    void outOfRange() {
+        for (int c : new int[] { -2, -128, Integer.MIN_VALUE, 0x10000, Integer.MAX_VALUE }) {
+            assertFalse(CharClass.is(c, -1));
+        }
+        // signed bytes
+        for (byte b = Byte.MIN_VALUE; b < 0; b++) {
+            assertEquals(b == -1, CharClass.is(b, CharClass.TAG_NAME_STOP));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CharacterRunTest {
+
+    private static final String[] INPUTS = {
+            "<!doctype html>  \n <html>  <head>  <title>t &amp; t</title>  </head>  <body>x</body>  </html>  \n",
+            "<table>  x  <tr><td>a &lt; b</td></tr> y</table>",
+            "<table><b>  foo &amp; bar</b>  </table>",
+            "<table><colgroup> <col> x</colgroup></table>",
+            "a\u0000b<table>\u0000 x \u0000</table>",
+            "<svg> a &lt; b <![CDATA[ c ]]><desc> d </desc></svg> e",
+            "<math><mi> x &gt; y </mi></math>",
+            "<frameset> <frame> </frameset> x ",
+            "<p> \n </p><frameset><frame></frameset>",
+            "<p>&nbsp;</p><frameset><frame></frameset>",
+            "<pre>\n\nfoo</pre><textarea>\nx &amp; y</textarea>",
+            "<template>  a <td> b </td></template>",
+            "<head> <noscript> </noscript> x",
+            "<body></body>  \n  x",
+            "<html></html> \u0000 y",
+            "<table><tr>a<!--c-->b<td>x</td>c<b>d</b>e</tr>f</table>g",
+            "<table>a<i>b<table>c</table>d</i>e</table>",
+            "<table><template>a<b>c</b></template>d</table>",
+            "<p><b><table>a<td>b</table>c</b>d",
+            "<table><script>a - b <!-- c - d <script> e </script> f --> g</script></table>",
+            "<title>a &lt; b\u0000c</title><style> p { } \u0000 </style><xmp> x & y </xmp>",
+            "<svg><![CDATA[a]]]b\u0000c ] ]]></svg>x",
+            "<table><b><plaintext>a\u0000b &amp; <p>",
+    };
+
+    @Test
+    void sameTreeAsPerCharacterDispatch() {
+        for (String input : INPUTS) {
+            String expected = TreeConstructionTest.renderDocument(parsePerCharacter(input));
+            assertEquals(expected, TreeConstructionTest.renderDocument(new Parser().parse(input)), input);
+        }
+    }
+
+    @Test
+    void fosterParentedRuns() {
+        StringBuilder sb = new StringBuilder("<table>");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("ab <i>c</i> d&amp;");
+            expected.append("ab c d&");
+        }
+        Document doc = new Parser().parse(sb.append("</table>").toString());
+        Element body = doc.getElementsByTagName("body").get(0);
+        assertEquals("table", body.getLastChild().getNodeName());
+        assertEquals(expected.toString(), body.getTextContent());
+        // 2001 text nodes, 2000 i elements and the table
+        assertEquals(2000 * 2 + 2, body.getChildCount());
+    }
+
+    // the reference: every character token is dispatched on its own
+    private static Document parsePerCharacter(String input) {
+        TreeConstructor tokenHandler = new TreeConstructor(false, false, false) {
+            @Override
+            public void emitCharacters(char[] chars, int offset, int length) {
+                for (int i = 0; i < length; i++) {
+                    emitCharacter(chars[offset + i]);
+                }
+            }
+        };
+        Tokenizer tokenizer = new Tokenizer(tokenHandler, true);
+        tokenHandler.setTokenizer(tokenizer);
+        tokenizer.tokenize(new ProcessedInputStream.StringProcessedInputStream(input));
+        return tokenHandler.getDocument();
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentSubscriberTest {
+
+    @Test
+    void parsePublishedBytes() throws Exception {
+        String content = Files.readString(Paths.get("src/test/resources/wikipedia.html"));
+        String expected = HtmlSerializer.serialize(new Parser().parse(content));
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+
+        // the parsing is done on a small pool, the producers block when the subscribers have no demand
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ExecutorService producers = Executors.newCachedThreadPool();
+        try {
+            List<CompletableFuture<Document>> documents = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                DocumentSubscriber subscriber = new Parser().newDocumentSubscriber();
+                // a buffer capacity of 1: the publisher must respect the demand of the subscriber
+                SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>(executor, 1);
+                publisher.subscribe(subscriber);
+                producers.execute(() -> {
+                    for (int j = 0; j < bytes.length; j += 1000) {
+                        publisher.submit(ByteBuffer.wrap(bytes, j, Math.min(1000, bytes.length - j)));
+                    }
+                    publisher.close();
+                });
+                documents.add(subscriber.getDocument());
+            }
+            for (CompletableFuture<Document> document : documents) {
+                assertEquals(expected, HtmlSerializer.serialize(document.get(30, TimeUnit.SECONDS)));
+            }
+        } finally {
+            executor.shutdown();
+            producers.shutdown();
+        }
+    }
+
+    @Test
+    void parsePublishedLists() throws Exception {
+        byte[] bytes = "<p>café</p>".getBytes(StandardCharsets.UTF_8);
+        DocumentSubscriber subscriber = new Parser().newDocumentSubscriber();
+        try (SubmissionPublisher<List<ByteBuffer>> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(subscriber.forLists());
+            // the é is split between two buffers
+            publisher.submit(List.of(ByteBuffer.wrap(bytes, 0, 4), ByteBuffer.wrap(bytes, 4, 3)));
+            publisher.submit(List.of(ByteBuffer.wrap(bytes, 7, bytes.length - 7)));
+        }
+        assertEquals("<html><head></head><body><p>café</p></body></html>", HtmlSerializer.serialize(subscriber.getDocument().get(30, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    void publisherError() {
+        DocumentSubscriber subscriber = new Parser().newDocumentSubscriber();
+        IOException error = new IOException("connection reset");
+        try (SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(subscriber);
+            publisher.submit(ByteBuffer.wrap(new byte[] { '<', 'p', '>' }));
+            publisher.closeExceptionally(error);
+        }
+        ExecutionException e = assertThrows(ExecutionException.class, () -> subscriber.getDocument().get(30, TimeUnit.SECONDS));
+        assertSame(error, e.getCause());
+    }
+
+    @Test
+    void cancelSubscription() {
+        DocumentSubscriber subscriber = new Parser().newDocumentSubscriber();
+        CompletableFuture<Boolean> cancelled = new CompletableFuture<>();
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+                cancelled.complete(true);
+            }
+        });
+        subscriber.getDocument().cancel(false);
+        assertTrue(cancelled.join());
+    }
+}
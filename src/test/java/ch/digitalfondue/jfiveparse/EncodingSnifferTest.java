@@ -0,0 +1,130 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EncodingSnifferTest {
+
+    private static Charset sniff(String s) {
+        return EncodingSniffer.sniff(ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    void bom() {
+        ByteBuffer utf8 = ByteBuffer.wrap(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a' });
+        assertEquals(StandardCharsets.UTF_8, EncodingSniffer.sniff(utf8));
+        assertEquals(3, utf8.position());
+        assertEquals(StandardCharsets.UTF_16BE, EncodingSniffer.sniff(ByteBuffer.wrap(new byte[] { (byte) 0xFE, (byte) 0xFF, 0, 'a' })));
+        assertEquals(StandardCharsets.UTF_16LE, EncodingSniffer.sniff(ByteBuffer.wrap(new byte[] { (byte) 0xFF, (byte) 0xFE, 'a', 0 })));
+    }
+
+    @Test
+    void prescan() {
+        assertEquals(StandardCharsets.UTF_8, sniff("<html><body>no declaration"));
+        assertEquals("ISO-8859-2", sniff("<meta charset=iso-8859-2>").name());
+        assertEquals("ISO-8859-2", sniff("<!doctype html><META CHARSET='ISO-8859-2'>").name());
+        assertEquals("ISO-8859-2", sniff("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=iso-8859-2\">").name());
+        assertEquals("ISO-8859-2", sniff("<meta content=\"text/html; charset=iso-8859-2\" http-equiv=content-type>").name());
+        assertEquals("windows-1252", sniff("<meta charset=latin1>").name());
+        // http-equiv is missing
+        assertEquals(StandardCharsets.UTF_8, sniff("<meta content=\"text/html; charset=iso-8859-2\">"));
+        // inside a comment or an attribute value
+        assertEquals(StandardCharsets.UTF_8, sniff("<!-- <meta charset=iso-8859-2> -->"));
+        assertEquals("ISO-8859-2", sniff("<!---><meta charset=iso-8859-2>").name());
+        assertEquals(StandardCharsets.UTF_8, sniff("<div title='<meta charset=iso-8859-2>'>"));
+        // utf-16 declared in a meta is utf-8
+        assertEquals(StandardCharsets.UTF_8, sniff("<meta charset=utf-16le>"));
+        // after the first 1024 bytes
+        assertEquals(StandardCharsets.UTF_8, sniff(" ".repeat(1024) + "<meta charset=iso-8859-2>"));
+    }
+
+    @Test
+    void extractFromMetaContent() {
+        assertEquals("ISO-8859-2", EncodingSniffer.extractFromMetaContent("text/html;charset = \"iso-8859-2\"").name());
+        assertEquals("ISO-8859-2", EncodingSniffer.extractFromMetaContent("charsetcharset=iso-8859-2;").name());
+        assertNull(EncodingSniffer.extractFromMetaContent("text/html; charset=\"iso-8859-2"));
+        assertNull(EncodingSniffer.extractFromMetaContent("text/html; charset="));
+        assertNull(EncodingSniffer.getEncoding("not-an-encoding"));
+    }
+
+    @Test
+    void parseBytes() throws IOException {
+        String content = Files.readString(Paths.get("src/test/resources/wikipedia.html"));
+        String expected = HtmlSerializer.serialize(new Parser().parse(content));
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected, HtmlSerializer.serialize(new Parser().parse(new ByteArrayInputStream(bytes))));
+        assertEquals(expected, HtmlSerializer.serialize(new Parser().parse(new TricklingInputStream(bytes))));
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        assertEquals(expected, HtmlSerializer.serialize(new Parser().parse(direct)));
+        assertEquals(0, direct.position());
+    }
+
+    @Test
+    void parseDeclaredEncoding() {
+        String html = "<meta charset=windows-1252><p>é€\r\n</p>";
+        Document doc = new Parser().parse(ByteBuffer.wrap(html.getBytes(Charset.forName("windows-1252"))));
+        assertEquals("é€\n", doc.getElementsByTagName("p").get(0).getTextContent());
+
+        byte[] utf16 = ("﻿" + "<p>é€</p>").getBytes(StandardCharsets.UTF_16LE);
+        assertEquals("é€", new Parser().parse(ByteBuffer.wrap(utf16)).getElementsByTagName("p").get(0).getTextContent());
+    }
+
+    @Test
+    void malformedUtf8() {
+        byte[] bytes = { '<', 'p', '>', (byte) 0xE2, (byte) 0x82, 'a', (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80, (byte) 0xC3 };
+        assertEquals("�a😀�", new Parser().parse(new TricklingInputStream(bytes)).getElementsByTagName("p").get(0).getTextContent());
+        assertEquals("�a😀�", new Parser().parse(ByteBuffer.wrap(bytes)).getElementsByTagName("p").get(0).getTextContent());
+    }
+
+    // return at most 3 bytes for each read call
+    private static class TricklingInputStream extends InputStream {
+        private final byte[] bytes;
+        private int pos;
+
+        TricklingInputStream(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() {
+            return pos < bytes.length ? bytes[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (pos == bytes.length) {
+                return -1;
+            }
+            int count = Math.min(Math.min(len, 1 + pos % 3), bytes.length - pos);
+            System.arraycopy(bytes, pos, b, off, count);
+            pos += count;
+            return count;
+        }
+    }
+}
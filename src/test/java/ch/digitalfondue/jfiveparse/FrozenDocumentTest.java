@@ -0,0 +1,225 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrozenDocumentTest {
+
+    private static final List<Set<Option>> OPTIONS = List.of(
+            Set.of(),
+            EnumSet.of(Option.DONT_TRANSFORM_ENTITIES, Option.HIDE_EMPTY_ATTRIBUTE_VALUE),
+            EnumSet.of(Option.PRINT_ORIGINAL_ATTRIBUTES_CASE, Option.PRINT_ORIGINAL_TAG_CASE, Option.PRINT_ORIGINAL_ATTRIBUTE_QUOTE),
+            EnumSet.of(Option.SCRIPTING_DISABLED));
+
+    private static final List<String> SELECTORS = List.of("div", "a[href]", "div > p", "ul li:first-child", "li:last-child",
+            "td:nth-child(2n+1)", "p ~ p", "h2 + p", "[class~=mw-body]", "span:empty", "*", "body :not(div)", "svg|*",
+            "a:has(> img)", "tr:only-child", "#content", "html");
+
+    private static Document parse(String name) throws IOException {
+        Parser parser = new Parser(EnumSet.of(Option.PRINT_ORIGINAL_ATTRIBUTES_CASE, Option.PRINT_ORIGINAL_TAG_CASE, Option.PRINT_ORIGINAL_ATTRIBUTE_QUOTE));
+        return parser.parse(Files.readString(Paths.get("src/test/resources/" + name)));
+    }
+
+    @Test
+    void serializationIsTheSame() throws IOException {
+        for (String name : List.of("test.html", "wikipedia.html")) {
+            Document document = parse(name);
+            for (boolean offHeap : new boolean[] {false, true}) {
+                FrozenDocument frozen = document.freeze(offHeap);
+                assertEquals(offHeap, frozen.isOffHeap());
+                for (Set<Option> options : OPTIONS) {
+                    assertEquals(HtmlSerializer.serialize(document, options), HtmlSerializer.serialize(frozen.getDocumentNode(), options));
+                    assertEquals(document.getBody().getInnerHTML(options), frozen.getBody().getInnerHTML(options));
+                    assertEquals(document.getHead().getOuterHTML(options), frozen.getHead().getOuterHTML(options));
+                }
+            }
+        }
+    }
+
+    @Test
+    void serializationOfTheSpecialCases() {
+        String html = "<!doctype html><pre>\n\nx</pre><textarea>\na</textarea><script>a<b</script><noscript><b></noscript>"
+                + "<p a=\"\" b c='&amp;\"'>&lt;<br><img src=x><!-- c --><svg><path d=1 /><foreignObject>t</foreignObject></svg>";
+        Document document = new Parser().parse(html);
+        for (boolean offHeap : new boolean[] {false, true}) {
+            FrozenDocument frozen = document.freeze(offHeap);
+            for (Set<Option> options : OPTIONS) {
+                assertEquals(HtmlSerializer.serialize(document, options), HtmlSerializer.serialize(frozen.getDocumentNode(), options));
+            }
+            assertEquals("html", frozen.getDoctype().getName());
+        }
+    }
+
+    @Test
+    void selectorsMatchTheSameNodes() throws IOException {
+        Document document = parse("wikipedia.html");
+        for (boolean offHeap : new boolean[] {false, true}) {
+            assertSameMatches(document, document.freeze(offHeap));
+        }
+    }
+
+    private static void assertSameMatches(Document document, FrozenDocument frozen) {
+        for (String selector : SELECTORS) {
+            List<String> expected = document.getAllNodesMatching(Selector.parseSelector(selector)).stream()
+                    .map(n -> HtmlSerializer.serialize(n)).toList();
+            List<String> actual = frozen.getAllNodesMatching(FrozenDocument.FrozenSelector.parseSelector(selector)).stream()
+                    .map(n -> HtmlSerializer.serialize(n)).toList();
+            assertEquals(expected, actual, selector);
+        }
+
+        assertEquals(document.getAllNodesMatching(Selector.select().element("div").hasClass("thumb").toMatcher(), true).size(),
+                frozen.getAllNodesMatching(FrozenDocument.select().element("div").hasClass("thumb").toMatcher(), true).size());
+    }
+
+    @Test
+    void structureIsTheSame() throws IOException {
+        Document document = parse("test.html");
+        for (boolean offHeap : new boolean[] {false, true}) {
+            assertSameStructure(document, document.freeze(offHeap));
+        }
+    }
+
+    @Test
+    void latin1Chars() throws IOException {
+        // the same document, restricted to Latin-1 and with the entities kept as is: the chars are stored in bytes
+        String html = Files.readString(Paths.get("src/test/resources/test.html")).replaceAll("[^\\u0000-\\u00FF]", "?");
+        Document document = new Parser(EnumSet.of(Option.DONT_TRANSFORM_ENTITIES)).parse(html);
+        assertFalse(parse("test.html").freeze().isLatin1());
+        for (boolean offHeap : new boolean[] {false, true}) {
+            FrozenDocument frozen = document.freeze(offHeap);
+            assertTrue(frozen.isLatin1());
+            assertSameStructure(document, frozen);
+            assertEquals(HtmlSerializer.serialize(document), HtmlSerializer.serialize(frozen.getDocumentNode()));
+        }
+    }
+
+    private static void assertSameStructure(Document document, FrozenDocument frozen) {
+        assertSameNode(document, frozen.getDocumentNode());
+        assertEquals(document.getDocumentElement().getNodeName(), frozen.getDocumentElement().getNodeName());
+
+        // walk both trees in parallel
+        int count = 0;
+        Node node = document;
+        FrozenDocument.FrozenNode frozenNode = frozen.getDocumentNode();
+        while (node != null) {
+            count++;
+            assertSameNode(node, frozenNode);
+            if (node.hasChildNodes()) {
+                node = node.getFirstChild();
+                frozenNode = frozenNode.getFirstChild();
+            } else {
+                while (node != null && node.getNextSibling() == null) {
+                    node = node.getParentNode();
+                    frozenNode = frozenNode.getParentNode();
+                    assertEquals(node == null, frozenNode == null);
+                }
+                if (node != null) {
+                    node = node.getNextSibling();
+                    frozenNode = frozenNode.getNextSibling();
+                }
+            }
+        }
+        assertEquals(count, frozen.getNodeCount());
+    }
+
+    private static void assertSameNode(Node node, FrozenDocument.FrozenNode frozenNode) {
+        assertEquals(node.getNodeType(), frozenNode.getNodeType());
+        assertEquals(node.getNodeName(), frozenNode.getNodeName());
+        assertEquals(node.getTextContent(), frozenNode.getTextContent());
+        assertEquals(node.getChildCount(), frozenNode.getChildCount());
+        assertEquals(node.getChildNodes().size(), frozenNode.getChildNodes().size());
+        assertEquals(node.getPreviousSibling() == null, frozenNode.getPreviousSibling() == null);
+        assertEquals(nameOf(node.getPreviousSibling()), nameOf(frozenNode.getPreviousSibling()));
+        assertEquals(nameOf(node.getLastChild()), nameOf(frozenNode.getLastChild()));
+        assertEquals(nameOf(node.getFirstElementChild()), nameOf(frozenNode.getFirstElementChild()));
+        assertEquals(nameOf(node.getLastElementChild()), nameOf(frozenNode.getLastElementChild()));
+        assertEquals(nameOf(node.getPreviousElementSibling()), nameOf(frozenNode.getPreviousElementSibling()));
+        assertEquals(nameOf(node.getNextElementSibling()), nameOf(frozenNode.getNextElementSibling()));
+        if (node instanceof Text t) {
+            assertEquals(t.getData(), frozenNode.getData());
+        } else if (node instanceof Comment c) {
+            assertEquals(c.getData(), frozenNode.getData());
+        } else if (node instanceof Element e) {
+            FrozenDocument.FrozenElement frozenElement = (FrozenDocument.FrozenElement) frozenNode;
+            assertEquals(e.getNamespaceURI(), frozenElement.getNamespaceURI());
+            assertEquals(e.hasAttributes(), frozenElement.hasAttributes());
+            for (String name : e.getAttributes().keySet()) {
+                assertEquals(e.getAttributeValue(name), frozenElement.getAttributeValue(name));
+                assertEquals(e.getAttribute(name.toUpperCase()), frozenElement.getAttribute(name.toUpperCase()));
+            }
+            assertNull(frozenElement.getAttributeValue("not-an-attribute"));
+        }
+    }
+
+    private static String nameOf(Object node) {
+        if (node instanceof Node n) {
+            return n.getNodeName();
+        }
+        return node == null ? null : ((FrozenDocument.FrozenNode) node).getNodeName();
+    }
+
+    @Test
+    void handles() {
+        FrozenDocument frozen = new Parser().parse("<p>a<b>b</b>c</p>").freeze();
+        FrozenDocument.FrozenElement p = frozen.getBody().getFirstElementChild();
+        assertEquals(p, frozen.getBody().getFirstChild());
+        assertEquals(p.hashCode(), frozen.getBody().getFirstChild().hashCode());
+        assertTrue(p.isSameNode(p.getFirstChild().getParentNode()));
+        assertNotEquals(p, p.getFirstElementChild());
+        assertNotEquals(p, new Parser().parse("<p>a<b>b</b>c</p>").freeze().getBody().getFirstChild());
+        assertEquals("abc", p.getTextContent());
+        assertEquals("a<b>b</b>c", p.getInnerHTML());
+        assertEquals(List.of("#text", "b", "#text"), p.getChildNodes().stream().map(FrozenDocument.FrozenNode::getNodeName).toList());
+        assertNull(frozen.getDocumentNode().getParentNode());
+        assertNull(frozen.getDoctype());
+    }
+
+    @Test
+    void frozenCopyIsIndependent() {
+        Document document = new Parser().parse("<div id=a>text</div>");
+        FrozenDocument frozen = document.freeze();
+        document.getElementById("a").setAttribute("id", "b");
+        document.getBody().appendChild(new Element("span"));
+        assertEquals("<div id=\"a\">text</div>", frozen.getBody().getInnerHTML());
+    }
+
+    @Test
+    void close() {
+        Document document = new Parser().parse("<div id=a>text \u20ac</div><p title=t>x");
+        FrozenDocument onHeap = document.freeze();
+        onHeap.close();
+        assertEquals(document.getBody().getInnerHTML(), onHeap.getBody().getInnerHTML());
+
+        FrozenDocument offHeap;
+        try (FrozenDocument frozen = document.freeze(true)) {
+            assertEquals(document.getBody().getInnerHTML(), frozen.getBody().getInnerHTML());
+            offHeap = frozen;
+        }
+        // the memory is released: on Java 22 and later an access fails with an IllegalStateException
+        assertThrows(RuntimeException.class, offHeap::getBody);
+        offHeap.close();
+    }
+}
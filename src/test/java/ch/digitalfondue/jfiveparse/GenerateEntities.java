@@ -24,11 +24,15 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPOutputStream;
+import java.util.TreeMap;
 
 /**
- * Generate the file "entities-with-1-2-codepoint", used by Entities.
+ * Generate the file "entities-trie", used by Entities.
  * entities.json is from https://html.spec.whatwg.org/entities.json
  */
 public class GenerateEntities {
@@ -37,50 +41,131 @@ public class GenerateEntities {
         int[] codepoints;
     }
 
-    public static void main(String[] args) throws IOException {
+    private static class Node {
+        final TreeMap<Character, Node> children = new TreeMap<>();
+        String replacement;
+    }
+
+    static Map<String, int[]> readEntitiesJson() throws IOException {
         Type type = (new TypeToken<Map<String, EntityValues>>() {
         }).getType();
         String json = Files.readString(Paths.get("src/test/resources/entities.json"));
         Map<String, EntityValues> m = new GsonBuilder().create().fromJson(json, type);
+        Map<String, int[]> res = new TreeMap<>();
+        for (var kv : m.entrySet()) {
+            // the names are stored without the leading "&"
+            res.put(kv.getKey().substring(1), kv.getValue().codepoints);
+        }
+        return res;
+    }
 
-        EntitiesPrefix p = new EntitiesPrefix(null);
-
-        ByteArrayOutputStream baosOneCodePoint = new ByteArrayOutputStream();
-        GZIPOutputStream osOneCodePoint = new GZIPOutputStream(baosOneCodePoint);
-        DataOutputStream daos = new DataOutputStream(osOneCodePoint);
-
-        int oneCodePointLength = 0;
-        int twoCodePointLength = 0;
-
-        for (String key : m.keySet()) {
-            p.addWord(key, m.get(key).codepoints);
+    // the arrays of Entities
+    static class Trie {
+        char[] labels;
+        int[] firstChild;
+        int[] values;
+        char[] replacements;
+    }
 
-            if (m.get(key).codepoints.length == 1) {
-                oneCodePointLength++;
-                daos.writeUTF(key);
-                daos.writeInt(m.get(key).codepoints[0]);
+    static Trie build(Map<String, int[]> entities) {
+        Node root = new Node();
+        for (var kv : entities.entrySet()) {
+            Node n = root;
+            for (char c : kv.getKey().toCharArray()) {
+                n = n.children.computeIfAbsent(c, k -> new Node());
             }
+            StringBuilder sb = new StringBuilder();
+            for (int codePoint : kv.getValue()) {
+                sb.appendCodePoint(codePoint);
+            }
+            if (sb.length() > Entities.MAX_REPLACEMENT_LENGTH) {
+                throw new IllegalStateException("replacement too long for " + kv.getKey());
+            }
+            n.replacement = sb.toString();
+        }
 
-            if (m.get(key).codepoints.length > 2) {
-                throw new IllegalStateException("more than 2 codepoints");
+        // breadth first: the children of each node are contiguous
+        List<Node> nodes = new ArrayList<>();
+        List<Character> labels = new ArrayList<>();
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        nodes.add(root);
+        labels.add('\0');
+        queue.add(root);
+        int[] firstChild = new int[countNodes(root) + 1];
+        int idx = 0;
+        int next = 1;
+        while (!queue.isEmpty()) {
+            Node n = queue.poll();
+            if (n.children.size() > 255) {
+                throw new IllegalStateException("too many children");
+            }
+            firstChild[idx++] = next;
+            for (var kv : n.children.entrySet()) {
+                nodes.add(kv.getValue());
+                labels.add(kv.getKey());
+                queue.add(kv.getValue());
+                next++;
             }
         }
+        firstChild[idx] = next;
 
-        for (String key : m.keySet()) {
-            if (m.get(key).codepoints.length == 2) {
-                twoCodePointLength++;
-                daos.writeUTF(key);
-                daos.writeInt(m.get(key).codepoints[0]);
-                daos.writeInt(m.get(key).codepoints[1]);
+        char[] labelsArray = new char[nodes.size()];
+        int[] values = new int[nodes.size()];
+        StringBuilder replacements = new StringBuilder();
+        Map<String, Integer> offsets = new HashMap<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            labelsArray[i] = labels.get(i);
+            String replacement = nodes.get(i).replacement;
+            if (replacement != null) {
+                int offset = offsets.computeIfAbsent(replacement, r -> {
+                    int o = replacements.length();
+                    replacements.append(r);
+                    return o;
+                });
+                values[i] = (offset << 3) | replacement.length();
             }
         }
+        Trie trie = new Trie();
+        trie.labels = labelsArray;
+        trie.firstChild = firstChild;
+        trie.values = values;
+        trie.replacements = replacements.toString().toCharArray();
+        return trie;
+    }
+
+    private static int countNodes(Node n) {
+        int count = 1;
+        for (Node c : n.children.values()) {
+            count += countNodes(c);
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Trie trie = build(readEntitiesJson());
 
-        daos.flush();
-        daos.close();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream daos = new DataOutputStream(baos)) {
+            // read by Entities.read
+            daos.writeInt(trie.labels.length);
+            daos.writeInt(trie.replacements.length);
+            for (char c : trie.labels) {
+                daos.writeChar(c);
+            }
+            for (int i = 0; i < trie.labels.length; i++) {
+                daos.writeByte(trie.firstChild[i + 1] - trie.firstChild[i]);
+            }
+            for (int v : trie.values) {
+                daos.writeInt(v);
+            }
+            for (char c : trie.replacements) {
+                daos.writeChar(c);
+            }
+        }
 
-        System.err.println(oneCodePointLength);
-        System.err.println(twoCodePointLength);
+        System.err.println(trie.labels.length);
+        System.err.println(trie.replacements.length);
 
-        Files.write(Paths.get("entities-with-1-2-codepoint"), baosOneCodePoint.toByteArray());
+        Files.write(Paths.get("entities-trie"), baos.toByteArray());
     }
 }
@@ -0,0 +1,112 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IncrementalSessionTest {
+
+    private static String feedChars(String content, int chunkSize) {
+        IncrementalSession session = new Parser().newIncrementalSession();
+        char[] chars = content.toCharArray();
+        for (int i = 0; i < chars.length; i += chunkSize) {
+            session.feed(chars, i, Math.min(chunkSize, chars.length - i));
+        }
+        return HtmlSerializer.serialize(session.finish());
+    }
+
+    private static String feedBytes(byte[] bytes, int chunkSize) {
+        IncrementalSession session = new Parser().newIncrementalSession();
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            session.feed(ByteBuffer.wrap(bytes, i, Math.min(chunkSize, bytes.length - i)));
+        }
+        return HtmlSerializer.serialize(session.finish());
+    }
+
+    @Test
+    void suspendInCharacterReferencesAndLookahead() {
+        String[] inputs = {
+                "<p>a&amp;b&amp c&notin; &notit; &#x41;&#65 &#x;&#;&#0000000000000065;&#x0000000000000041 d",
+                "<p title='&amp;&ampx&amp=&#x41;&#65'>&unknown;</p>",
+                "<!DOCTYPE html PUBLIC \"-//W3C//DTD HTML 4.01//EN\" \"http://www.w3.org/TR/html4/strict.dtd\"><title>a&lt;</title>",
+                "<!doctype html system 'about:legacy-compat'><textarea>&gt;\r\n</textarea>",
+                "<svg><![CDATA[ a ]] ]]> b ]]></svg><math><![CDATA[x]]]]></math>",
+                "<!-- a -- b --!><!-x-><?xml version='1.0'?><?php echo 1 ?>",
+                "<script><!--<script>a</script>-->b</script><style>p{}</style>",
+                "<p>a\r\n\rb\r\rc\n\r",
+                "<script>a - b; <!-- c - d <script> e -- f </script> g --> h</script><table> x <plaintext>a\u0000b",
+        };
+        for (String input : inputs) {
+            String expected = HtmlSerializer.serialize(new Parser().parse(input));
+            for (int chunkSize = 1; chunkSize <= 5; chunkSize++) {
+                assertEquals(expected, feedChars(input, chunkSize));
+                assertEquals(expected, feedBytes(input.getBytes(StandardCharsets.UTF_8), chunkSize));
+            }
+        }
+    }
+
+    @Test
+    void feedWikipedia() throws IOException {
+        String content = Files.readString(Paths.get("src/test/resources/wikipedia.html")).replace("\n", "\r\n");
+        String expected = HtmlSerializer.serialize(new Parser().parse(content));
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected, feedChars(content, 1));
+        assertEquals(expected, feedBytes(bytes, 1));
+        assertEquals(expected, feedBytes(bytes, 8192));
+
+        Random random = new Random(42);
+        IncrementalSession session = new Parser().newIncrementalSession();
+        for (int i = 0; i < content.length(); ) {
+            int count = Math.min(random.nextInt(300), content.length() - i);
+            session.feed(CharBuffer.wrap(content, i, i + count));
+            i += count;
+        }
+        assertEquals(expected, HtmlSerializer.serialize(session.finish()));
+    }
+
+    @Test
+    void feedDeclaredEncoding() {
+        String content = "<meta charset=windows-1252><p>café €</p>";
+        byte[] bytes = content.getBytes(Charset.forName("windows-1252"));
+        String expected = HtmlSerializer.serialize(new Parser().parse(content));
+        assertEquals(expected, feedBytes(bytes, 1));
+        // the encoding is detected at the end too, if less than 1024 bytes are received
+        assertEquals(expected, feedBytes(bytes, bytes.length));
+    }
+
+    @Test
+    void misuse() {
+        IncrementalSession session = new Parser().newIncrementalSession();
+        session.feed(new char[] { '<', 'p', '>' });
+        assertThrows(IllegalStateException.class, () -> session.feed(ByteBuffer.allocate(1)));
+        assertEquals("<html><head></head><body><p></p></body></html>", HtmlSerializer.serialize(session.finish()));
+        assertThrows(IllegalStateException.class, session::finish);
+        assertThrows(IllegalStateException.class, () -> session.feed(new char[1]));
+        assertEquals("<html><head></head><body></body></html>", HtmlSerializer.serialize(new Parser().newIncrementalSession().finish()));
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameTableTest {
+
+    private static ResizableCharBuilder builder(String s, boolean latin1) {
+        ResizableCharBuilder b = new ResizableCharBuilder(latin1);
+        for (char c : s.toCharArray()) {
+            b.append(c);
+        }
+        return b;
+    }
+
+    @Test
+    void lookup() {
+        NameTable names = NameTable.SHARED.copy();
+        for (boolean latin1 : new boolean[] { false, true }) {
+            ResizableCharBuilder div = builder("DiV", latin1);
+            int slot = names.lookup(div);
+            assertTrue(div.containsUpperCase);
+            assertEquals("div", names.name(slot));
+            assertEquals(Common.ELEMENT_DIV_ID, names.id(slot));
+            assertSame(names.name(slot), names.intern(builder("div", latin1)));
+
+            assertSame(names.intern(builder("class", latin1)), names.intern(builder("CLASS", latin1)));
+        }
+
+        int size = names.size();
+        String custom = names.intern(builder("My-Element", false));
+        assertEquals("my-element", custom);
+        assertSame(custom, names.intern(builder("my-element", true)));
+        assertEquals(size + 1, names.size());
+        assertEquals(0, names.id(names.lookup(builder("my-element", false))));
+        // the shared table is never modified
+        assertEquals(size, NameTable.SHARED.size());
+    }
+
+    @Test
+    void knownNames() {
+        NameTable names = NameTable.SHARED.copy();
+        assertEquals(NameTable.KNOWN_NAMES.length, names.size());
+        for (String name : NameTable.KNOWN_NAMES) {
+            assertSame(name, names.intern(builder(name, false)));
+        }
+        assertEquals(NameTable.KNOWN_NAMES.length, names.size());
+    }
+
+    @Test
+    void copyOnFirstInsertion() {
+        NameTable names = NameTable.SHARED.copy();
+        int size = NameTable.SHARED.size();
+        String custom = names.intern(builder("custom-name", false));
+        int slot = names.lookup(builder("custom-name", false));
+        assertSame(custom, names.name(slot));
+        assertNull(NameTable.SHARED.name(slot));
+        assertEquals(size, NameTable.SHARED.size());
+    }
+
+    @Test
+    void full() {
+        // a known multiplier: the probe lengths are the same for every run
+        NameTable names = new NameTable(512, 31);
+        names.lookup(builder("span", false));
+        for (int i = 0; !names.isFull(); i++) {
+            assertTrue(i < 2 * NameTable.MAX_SIZE);
+            String name = "x" + i;
+            int slot = names.lookup(builder(name, false));
+            assertTrue(slot == -1 || names.name(slot).equals(name));
+        }
+        assertEquals(NameTable.MAX_SIZE, names.size());
+        assertEquals(-1, names.lookup(builder("y", false)));
+        assertEquals("y", names.intern(builder("Y", false)));
+        assertEquals(Common.ELEMENT_SPAN_ID, names.id(names.lookup(builder("span", false))));
+    }
+
+    @Test
+    void collidingNames() {
+        // "a~" and "b_" have the same hash with the multiplier 31: 2^10 names with the same hash
+        NameTable names = new NameTable(512, 31);
+        for (int i = 0; i < 1 << 10; i++) {
+            StringBuilder sb = new StringBuilder("x");
+            for (int bit = 0; bit < 10; bit++) {
+                sb.append((i & (1 << bit)) == 0 ? "a~" : "b_");
+            }
+            String name = sb.toString();
+            assertEquals(name, names.intern(builder(name.toUpperCase(), false)));
+        }
+        // only the names found within the probes limit are added, the others are lower cased by the caller
+        assertTrue(names.size() <= NameTable.MAX_PROBES);
+        assertFalse(names.isFull());
+        String first = "x" + "a~".repeat(10);
+        assertSame(names.intern(builder(first, false)), names.intern(builder(first, true)));
+    }
+
+    @Test
+    void fullTableReplacedOnReset() {
+        Tokenizer tokenizer = new Tokenizer(null);
+        for (int i = 0; !tokenizer.names.isFull(); i++) {
+            tokenizer.names.lookup(builder("x" + i, false));
+        }
+        tokenizer.reset();
+        assertEquals(NameTable.SHARED.size(), tokenizer.names.size());
+    }
+
+    @Test
+    void parse() {
+        Element p = new Parser().parse("<P CLASS=a Data-X=b>").getElementsByTagName("p").get(0);
+        assertEquals("p", p.getNodeName());
+        assertEquals("P", p.originalNodeName);
+        assertEquals("a", p.getAttribute("class"));
+        assertEquals("b", p.getAttribute("data-x"));
+    }
+}
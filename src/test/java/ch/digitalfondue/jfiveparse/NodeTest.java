@@ -17,9 +17,11 @@ package ch.digitalfondue.jfiveparse;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -84,6 +86,91 @@ class NodeTest {
         assertNull(siblings.get(4).getNextElementSibling());
     }
 
+    @Test
+    void siblingsFollowTheMutations() {
+        // the same changes applied to plain lists, as the child nodes were before the positions were cached
+        Random random = new Random(42);
+        Element[] parents = {new Element("div"), new Element("div"), new Element("div")};
+        List<List<Node>> expected = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            nodes.add(i % 3 == 0 ? new Text("t" + i) : new Element("span"));
+        }
+        for (int step = 0; step < 5_000; step++) {
+            int p = random.nextInt(parents.length);
+            Element parent = parents[p];
+            List<Node> childs = expected.get(p);
+            Node node = nodes.get(random.nextInt(nodes.size()));
+            int previous = node.getParentNode() == null ? -1 : Arrays.asList(parents).indexOf(node.getParentNode());
+            switch (random.nextInt(5)) {
+                case 0 -> {
+                    if (node.getParentNode() == parent) {
+                        childs.remove(node);
+                    }
+                    childs.add(node);
+                    if (previous != -1 && previous != p) {
+                        expected.get(previous).remove(node);
+                    }
+                    parent.appendChild(node);
+                }
+                case 1 -> {
+                    int position = random.nextInt(childs.size() + 1);
+                    childs.add(position, node);
+                    if (previous != -1) {
+                        expected.get(previous).remove(node);
+                    }
+                    parent.insertChildren(position, node);
+                }
+                case 2 -> {
+                    childs.remove(node);
+                    parent.removeChild(node);
+                }
+                case 3 -> {
+                    if (!childs.isEmpty()) {
+                        Node old = childs.get(random.nextInt(childs.size()));
+                        childs.set(childs.indexOf(old), node);
+                        if (previous != -1) {
+                            expected.get(previous).remove(node);
+                        }
+                        parent.replaceChild(node, old);
+                    }
+                }
+                default -> {
+                    if (!childs.isEmpty()) {
+                        Node before = childs.get(random.nextInt(childs.size()));
+                        childs.add(childs.indexOf(before), node);
+                        if (previous != -1) {
+                            expected.get(previous).remove(node);
+                        }
+                        parent.insertBefore(node, before);
+                    }
+                }
+            }
+            for (int i = 0; i < parents.length; i++) {
+                List<Node> c = expected.get(i);
+                assertEquals(c, parents[i].getChildNodes());
+                for (int j = 0; j < c.size(); j++) {
+                    assertSame(j == 0 ? null : c.get(j - 1), c.get(j).getPreviousSibling());
+                    assertSame(j == c.size() - 1 ? null : c.get(j + 1), c.get(j).getNextSibling());
+                }
+            }
+        }
+    }
+
+    @Test
+    void traversalOfManySiblingsIsLinear() {
+        // a copy, whose positions in the parents have not been set by the tree construction
+        Node small = parser.parse("<ul>" + "<li>x".repeat(2_000)).cloneNode(true);
+        Node large = parser.parse("<ul>" + "<li>x".repeat(2_000 * TreeConstructionPathologicalTest.FACTOR)).cloneNode(true);
+        TreeConstructionPathologicalTest.assertLinear(() -> traverse(small), () -> traverse(large));
+        assertEquals(2_000 * TreeConstructionPathologicalTest.FACTOR, large.getElementsByTagName("li").size());
+    }
+
+    private static void traverse(Node node) {
+        int[] count = new int[1];
+        node.traverse(n -> count[0]++);
+    }
+
     @Test
     void innerAndOuterHtml() {
         Document doc = parser.parse("<div>1</div><div id=myid>2</div><div>3</div>");
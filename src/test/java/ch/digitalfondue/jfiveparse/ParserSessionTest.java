@@ -0,0 +1,190 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParserSessionTest {
+
+    // all the documents of the tree construction tests, one after the other in the same session
+    @Test
+    void reusedSessionBuildsTheSameTrees() throws IOException {
+        ParserSession withScripting = new Parser().newSession();
+        ParserSession withoutScripting = new Parser(EnumSet.of(Option.SCRIPTING_DISABLED)).newSession();
+        int count = 0;
+        for (Object[] test : TreeConstructionTest.data()) {
+            TreeConstructionTest.TreeConstruction treeTest = (TreeConstructionTest.TreeConstruction) test[1];
+            if (treeTest.isDocumentFragment) {
+                continue;
+            }
+            ParserSession session = (boolean) test[2] ? withScripting : withoutScripting;
+            assertEquals(treeTest.document, TreeConstructionTest.renderDocument(session.parse(treeTest.data)), treeTest.data);
+            assertEquals(treeTest.document, TreeConstructionTest.renderDocument(session.parse(new StringReader(treeTest.data))), treeTest.data);
+            count++;
+        }
+        assertTrue(count > 1000);
+    }
+
+    // every field must be reset: a new field missing in reset() makes this test fail
+    @Test
+    void resetRestoresTheInitialState() throws Exception {
+        Parser parser = new Parser();
+        TreeConstructor used = parser.newDocumentTreeConstructor();
+        // stop in the middle of the tokens, with a bit of everything in flight
+        String input = "<!doctype html><html><head><title>t</title></head><body><form><table><tr><td><b><i>a &amp; b"
+                + "<template><svg><![CDATA[x]]></svg></template><p title='x &notin; y' class=c>t<textarea>\nv</textarea><!-- c";
+        used.getTokenizer().tokenize(Parser.processedInputStreamOf(input.substring(0, input.length() - 2)));
+        used.getTokenizer().reset();
+        used.reset();
+
+        TreeConstructor fresh = parser.newDocumentTreeConstructor();
+        assertSameState(fresh.getTokenizer(), used.getTokenizer());
+        assertSameState(fresh, used);
+        assertSameState(fresh.activeFormattingElements, used.activeFormattingElements);
+    }
+
+    private static void assertSameState(Object fresh, Object used) throws IllegalAccessException {
+        for (Field f : fresh.getClass().getDeclaredFields()) {
+            if (Modifier.isStatic(f.getModifiers())) {
+                continue;
+            }
+            f.setAccessible(true);
+            Object expected = f.get(fresh);
+            Object actual = f.get(used);
+            String name = fresh.getClass().getSimpleName() + "." + f.getName();
+            if (expected instanceof Collection<?> c) {
+                assertEquals(c.size(), ((Collection<?>) actual).size(), name);
+            } else if (expected instanceof ResizableCharBuilder b) {
+                assertEquals(b.pos(), ((ResizableCharBuilder) actual).pos(), name);
+            } else if (expected instanceof Document d) {
+                assertEquals(d.getChildCount(), ((Document) actual).getChildCount(), name);
+            } else if (expected instanceof Object[] a) {
+                assertArrayEquals(a, (Object[]) actual, name);
+            } else if (expected instanceof int[]) {
+                // the storage of a primitive stack, the size is checked with the other ints
+                assertTrue(actual instanceof int[], name);
+            } else if (expected instanceof NameTable) {
+                // kept for the next document, unless it is full
+                assertFalse(((NameTable) actual).isFull(), name);
+            } else if (expected == null && actual instanceof TreeConstructorActiveFormattingElements.Entry e) {
+                // the released entries, kept for reuse
+                assertNull(e.element, name);
+            } else if (expected == null || expected instanceof Number || expected instanceof Boolean || expected instanceof Character || expected instanceof String) {
+                assertEquals(expected, actual, name);
+            } else {
+                // the configuration and the reused helpers (name table, tree constructor...)
+                assertTrue(Modifier.isFinal(f.getModifiers()) || expected instanceof Tokenizer, name);
+            }
+        }
+    }
+
+    @Test
+    void sessionIsUsableAfterAFailure() {
+        ParserSession session = new Parser().newSession();
+        Reader failing = new Reader() {
+            private boolean first = true;
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                if (first) {
+                    first = false;
+                    String s = "<table><tr><td><b><i>abc";
+                    s.getChars(0, s.length(), cbuf, off);
+                    return s.length();
+                }
+                throw new IOException("failure");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        assertThrows(ParserException.class, () -> session.parse(failing));
+        String expected = TreeConstructionTest.renderDocument(new Parser().parse("<p>a<b>b</p>c"));
+        assertEquals(expected, TreeConstructionTest.renderDocument(session.parse("<p>a<b>b</p>c")));
+    }
+
+    @Test
+    void documentsAreIndependent() {
+        ParserSession session = new Parser().newSession();
+        Document first = session.parse("<div id=a>first</div>");
+        Document second = session.parse("<div id=b>second</div>");
+        assertNotSame(first, second);
+        assertEquals("first", first.getElementsByTagName("div").get(0).getTextContent());
+        assertEquals("a", first.getElementsByTagName("div").get(0).getAttribute("id"));
+        assertEquals("second", second.getElementsByTagName("div").get(0).getTextContent());
+    }
+
+    @Test
+    void pool() {
+        ParserSessionPool pool = new Parser().newSessionPool(1);
+        ParserSession s1 = pool.acquire();
+        ParserSession s2 = pool.acquire();
+        assertNotSame(s1, s2);
+        s1.close();
+        // closing twice must not add the session twice
+        s1.close();
+        s2.close();
+        // only one session is kept
+        assertEquals(1, pool.idleSessions());
+        assertThrows(IllegalStateException.class, () -> s1.parse("a"));
+
+        try (ParserSession s3 = pool.acquire()) {
+            assertSame(s1, s3);
+            assertEquals(0, pool.idleSessions());
+            assertEquals("a", s3.parse("a").getBody().getTextContent());
+        }
+        assertEquals(1, pool.idleSessions());
+    }
+
+    @Test
+    void poolSharedBetweenThreads() throws Exception {
+        ParserSessionPool pool = new Parser().newSessionPool(4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                String input = "<table><tr><td>" + i + "<b>x</td></tr></table><p>" + i;
+                results.add(executor.submit(() -> {
+                    try (ParserSession session = pool.acquire()) {
+                        return session.parse(input).getBody().getTextContent();
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i + "x" + i, results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(pool.idleSessions() <= 4);
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import ch.digitalfondue.jfiveparse.ProcessedInputStream.FileChannelProcessedInputStream;
+import ch.digitalfondue.jfiveparse.ProcessedInputStream.Latin1ProcessedInputStream;
+import ch.digitalfondue.jfiveparse.ProcessedInputStream.CharSequenceProcessedInputStream;
+import ch.digitalfondue.jfiveparse.ProcessedInputStream.CharSliceProcessedInputStream;
+import ch.digitalfondue.jfiveparse.ProcessedInputStream.ReaderProcessedInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ProcessedInputStreamTest {
+
+    private static String readAll(ProcessedInputStream is) {
+        StringBuilder sb = new StringBuilder();
+        int chr;
+        while ((chr = is.read()) != Characters.EOF) {
+            sb.append((char) chr);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    void normalizeNewLinesAcrossBlocks() {
+        String input = "a\r\nb\rc\n\r\r\n\nd\r";
+        String expected = "a\nb\nc\n\n\n\nd\n";
+        for (int blockSize = 1; blockSize < input.length() + 2; blockSize++) {
+            assertEquals(expected, readAll(new ReaderProcessedInputStream(new StringReader(input), blockSize)));
+        }
+    }
+
+    @Test
+    void normalizeNewLinesInSlice() {
+        char[] input = "xa\r\nb\rc\n\r\r\n\nd\ry".toCharArray();
+        String expected = "a\nb\nc\n\n\n\nd\n";
+        assertEquals(expected, readAll(new CharSliceProcessedInputStream(input, 1, input.length - 2)));
+        // the source is never modified
+        assertEquals("xa\r\nb\rc\n\r\r\n\nd\ry", new String(input));
+        // CRLF cut by the end of the slice
+        assertEquals("a\n", readAll(new CharSliceProcessedInputStream(input, 1, 2)));
+        assertEquals(expected, readAll(new CharSequenceProcessedInputStream(new StringBuilder("a\r\nb\rc\n\r\r\n\nd\r"))));
+    }
+
+    @Test
+    void normalizeNewLinesInSliceScans() {
+        // a CR and a CR LF in each of the scan loops
+        String markup = "<!DOCTYPE html>\r<html>\r\n<head><title>a\r\rb\r\n</title><style>x\ry\r\n</style></head>"
+                + "<body\rclass=\"c\r\nd\"\r\nid=e\rlang='f\rg'>t\r\nu\rv&amp;\r\n<!-- c\r\n- d\r -->"
+                + "<textarea>\r\nw\r</textarea><svg><![CDATA[h\r\ni]]></svg><p\r\n>\r\r\n\n</p\r></body>\r";
+        char[] input = ("[" + markup + "]").toCharArray();
+        String expected = new Parser().parse(markup.replace("\r\n", "\n").replace('\r', '\n')).getDocumentElement().getOuterHTML();
+        assertEquals(expected, new Parser().parse(input, 1, input.length - 2).getDocumentElement().getOuterHTML());
+    }
+
+    @Test
+    void latin1() {
+        assertNull(Latin1ProcessedInputStream.toLatin1("a€"));
+        assertNull(Latin1ProcessedInputStream.toLatin1("a\uD83D\uDE00"));
+        byte[] bytes = Latin1ProcessedInputStream.toLatin1("a\r\nb\rcé?");
+        assertNotNull(bytes);
+        assertEquals("a\nb\ncé?", readAll(new Latin1ProcessedInputStream(bytes)));
+
+        Document doc = new Parser().parse("<p title='Àé&amp;'>caf&eacute; café&euro; <!--é--></p>");
+        assertEquals("<p title=\"Àé&amp;\">café café€ <!--é--></p>", doc.getElementsByTagName("p").get(0).getOuterHTML());
+    }
+
+    @Test
+    void readUntilAcrossBlocks() {
+        ProcessedInputStream is = new ReaderProcessedInputStream(new StringReader("abc\r\ndef<ghi"), 2);
+        ResizableCharBuilder builder = new ResizableCharBuilder();
+        assertEquals(Characters.LESSTHAN_SIGN, is.readUntil(builder, true, true));
+        assertEquals("abc\ndef", builder.toString());
+        builder.reset();
+        assertEquals(Characters.EOF, is.readUntil(builder, true, true));
+        assertEquals("ghi", builder.toString());
+    }
+
+    @Test
+    void parseFromChunkedReader() throws IOException {
+        String content = Files.readString(Paths.get("src/test/resources/wikipedia.html")).replace("\n", "\r\n");
+        String expected = HtmlSerializer.serialize(new Parser().parse(content));
+        assertEquals(expected, HtmlSerializer.serialize(new Parser().parse(new ChunkedReader(content))));
+        assertEquals(expected, HtmlSerializer.serialize(new Parser().parse(new StringReader(content))));
+    }
+
+    @Test
+    void parseCharSequences() throws IOException {
+        String content = Files.readString(Paths.get("src/test/resources/wikipedia.html")).replace("\n", "\r\n");
+        String expected = HtmlSerializer.serialize(new Parser().parse(content));
+        char[] padded = ("<<<" + content + ">>>").toCharArray();
+        assertEquals(expected, HtmlSerializer.serialize(new Parser().parse(padded, 3, content.length())));
+        assertEquals(expected, HtmlSerializer.serialize(new Parser().parse(new StringBuilder(content))));
+        assertEquals(expected, HtmlSerializer.serialize(new Parser().parse(CharBuffer.wrap(padded, 3, content.length()))));
+        assertEquals(expected, HtmlSerializer.serialize(new Parser().parse(CharBuffer.wrap(padded, 3, content.length()).asReadOnlyBuffer())));
+        assertEquals(expected, HtmlSerializer.serialize(new Parser().parse(CharBuffer.wrap(content))));
+    }
+
+    @Test
+    void parseMappedFile() throws IOException {
+        Path path = Paths.get("src/test/resources/wikipedia.html");
+        String content = Files.readString(path);
+        assertEquals(HtmlSerializer.serialize(new Parser().parse(content)), HtmlSerializer.serialize(JFiveParse.parse(path)));
+        try (FileChannel channel = FileChannel.open(path)) {
+            // force a lot of remapping, with multi bytes sequences split between regions
+            assertEquals(content, readAll(new FileChannelProcessedInputStream(channel, null, 1031)));
+        }
+    }
+
+    @Test
+    void parseFragmentMappedFile() throws IOException {
+        Path path = Files.createTempFile("fragment", ".html");
+        try {
+            Files.writeString(path, "<p>héllo</p>world", StandardCharsets.UTF_8);
+            List<Node> nodes = JFiveParse.parseFragment(path);
+            assertEquals(2, nodes.size());
+            assertEquals("<p>héllo</p>", ((Element) nodes.get(0)).getOuterHTML());
+            assertEquals("world", nodes.get(1).getTextContent());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    // return the content with irregular sized chunks
+    private static class ChunkedReader extends Reader {
+        private final String content;
+        private int pos;
+        private int count;
+
+        ChunkedReader(String content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (pos == content.length()) {
+                return -1;
+            }
+            int toRead = Math.min(Math.min(len, 1 + (count++ % 7) * 131), content.length() - pos);
+            content.getChars(pos, pos + toRead, cbuf, off);
+            pos += toRead;
+            return toRead;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
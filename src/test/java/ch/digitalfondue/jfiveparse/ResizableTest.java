@@ -2,7 +2,14 @@ package ch.digitalfondue.jfiveparse;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 class ResizableTest {
@@ -15,4 +22,116 @@ class ResizableTest {
         }
         assertEquals("a".repeat(100), v.toString());
     }
+
+    @Test
+    void checkLatin1() {
+        var v = new ResizableCharBuilder(true);
+        byte[] bytes = "Héllo".getBytes(StandardCharsets.ISO_8859_1);
+        v.append(bytes, 0, bytes.length);
+        v.append(' ');
+        v.append(new char[] {'W', 'ö'}, 0, 2);
+        assertEquals("Héllo Wö", v.toString());
+        assertEquals("héllo wö", v.toLowerCase());
+        assertTrue(v.containsUpperCase);
+        assertEquals('é', v.at(1));
+
+        // inflated when a character outside of the Latin-1 range is appended
+        v.append(new char[] {'r', '€', 'd'}, 0, 3);
+        v.append(bytes, 0, 1);
+        assertEquals("Héllo Wör€dH", v.toString());
+        assertArrayEquals("Héllo Wör€dH".toCharArray(), v.copyBackingCharArray());
+
+        var other = new ResizableCharBuilder();
+        other.append(bytes, 1, 4);
+        other.append(v);
+        assertEquals("élloHéllo Wör€dH", other.toString());
+
+        // only the ASCII letters are lower cased, the bytes above 0x7F are negative
+        var high = new ResizableCharBuilder(true);
+        high.append(new char[] {'\u00C0', '\u00DA', '\u00FF'}, 0, 3);
+        assertEquals("\u00C0\u00DA\u00FF", high.toLowerCase());
+        assertFalse(high.containsUpperCase);
+        high.append('Z');
+        assertEquals("\u00C0\u00DA\u00FFz", high.toLowerCase());
+        assertTrue(high.containsUpperCase);
+    }
+
+    @Test
+    void checkSlices() {
+        char[] input = "<p>Abc&amp;déf€".toCharArray();
+        char[] copy = input.clone();
+        var v = new ResizableCharBuilder(false, true);
+        v.append('A');
+        v.appendInput(input, 4, 2);
+        v.appendInput(input, 6, 0);
+        assertEquals("Abc", v.toString());
+        assertEquals("abc", v.toLowerCase());
+        assertTrue(v.containsUpperCase);
+        assertTrue(v.contentEquals("Abc"));
+
+        // contiguous: still a slice
+        v.appendInput(input, 6, 1);
+        assertEquals("Abc&", v.toString());
+        assertArrayEquals("Abc&".toCharArray(), v.copyBackingCharArray());
+
+        // a character reference: copied
+        v.append('!');
+        v.appendInput(input, 11, 4);
+        assertEquals("Abc&!déf€", v.toString());
+        assertArrayEquals(copy, input);
+
+        var other = new ResizableCharBuilder(true, true);
+        byte[] bytes = "<p>Héllo".getBytes(StandardCharsets.ISO_8859_1);
+        byte[] bytesCopy = bytes.clone();
+        other.appendInput(bytes, 3, 5);
+        assertEquals("Héllo", other.toString());
+        assertEquals('é', other.at(1));
+        v.append(other);
+        assertEquals("Abc&!déf€Héllo", v.toString());
+
+        // reset drops the slice without copying it
+        assertTrue(other.isShared());
+        other.reset();
+        assertFalse(other.isShared());
+        assertEquals("", other.toString());
+
+        // not preceded by the same characters in the input
+        other.append('x');
+        other.appendInput(bytes, 4, 4);
+        other.append(' ');
+        assertEquals("xéllo ", other.toString());
+        assertArrayEquals(bytesCopy, bytes);
+    }
+
+    // with SHARE_INPUT, the text and the attribute values of a string input are slices of it: same result as a
+    // streamed input
+    @Test
+    void checkSlicesInDocuments() {
+        String[] inputs = {
+            "<p title=\"a&amp;b\" class=x&lt;y id='z'>Héllo &amp; wörld\r\nnext&nbsp;line</p>",
+            "<div data-a=abc data-b=\"€\u0000€\">a\u0000b<b>c</b>d&e</div><!-- comment&amp; -->",
+            "<table><tr><td>cell\r\n &#x41;</td></tr> text </table><title>t&amp;t</title><textarea>\r\nraw</textarea>",
+            "<svg viewBox='0 0 1 1'><text>€ &notit; \uD83D\uDE00</text></svg><script>if (a < b) {}</script>"
+        };
+        Parser parser = new Parser();
+        Parser sharing = new Parser(EnumSet.of(Option.SHARE_INPUT));
+        for (String input : inputs) {
+            assertEquals(HtmlSerializer.serialize(parser.parse(new StringReader(input))), HtmlSerializer.serialize(sharing.parse(input)));
+            // Latin-1 only: a byte array input
+            String latin1 = input.replaceAll("[^\\u0000-\\u00FF]", "?");
+            assertEquals(HtmlSerializer.serialize(parser.parse(new StringReader(latin1))), HtmlSerializer.serialize(sharing.parse(latin1)));
+        }
+    }
+
+    // by default, the unread values do not keep the input alive
+    @Test
+    void checkSlicesOptIn() {
+        for (String input : new String[] {"<p>Héllo", "<p>H€llo"}) {
+            Text shared = (Text) new Parser(EnumSet.of(Option.SHARE_INPUT)).parse(input).getElementsByTagName("p").get(0).getFirstChild();
+            assertTrue(shared.dataBuilder.isShared());
+            Text copied = (Text) new Parser().parse(input).getElementsByTagName("p").get(0).getFirstChild();
+            assertFalse(copied.dataBuilder.isShared());
+            assertEquals(shared.getData(), copied.getData());
+        }
+    }
 }
@@ -0,0 +1,71 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SwarTest {
+
+    private static int scalarIndexOfAny(byte[] bytes, int from, int to, int a, int b, int c) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == a || bytes[i] == b || bytes[i] == c) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    @Test
+    void indexOfAny() {
+        Random random = new Random(42);
+        byte[] alphabet = { 'a', 'b', '<', '&', 0, '-', (byte) 0xE9, (byte) 0xBC, (byte) 0xA6, '=', ' ' };
+        for (int round = 0; round < 2000; round++) {
+            byte[] bytes = new byte[random.nextInt(40)];
+            for (int i = 0; i < bytes.length; i++) {
+                // mostly letters, with some delimiters
+                bytes[i] = random.nextInt(4) == 0 ? alphabet[random.nextInt(alphabet.length)] : (byte) ('a' + random.nextInt(26));
+            }
+            int from = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+            int expected = scalarIndexOfAny(bytes, from, bytes.length, '<', '&', 0);
+            int i = Swar.indexOfAny(bytes, from, bytes.length, Swar.LESSTHAN_SIGN, Swar.AMPERSAND, Swar.NULL);
+            // the remaining bytes, if any, are checked by the caller
+            assertEquals(expected, scalarIndexOfAny(bytes, i, bytes.length, '<', '&', 0));
+
+            // the first word returned must contain the first byte less than '?' or equal to '-'
+            int j = Swar.skipWords(bytes, from, bytes.length, Characters.QUESTION_MARK, Swar.HYPHEN_MINUS);
+            int firstCandidate = from;
+            while (firstCandidate < bytes.length && (bytes[firstCandidate] & 0xFF) >= '?' && bytes[firstCandidate] != '-') {
+                firstCandidate++;
+            }
+            assertTrue(j <= firstCandidate && (firstCandidate < j + 8 || firstCandidate == bytes.length));
+        }
+    }
+
+    @Test
+    void highBytesNeverMatch() {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (0x80 | i);
+        }
+        assertEquals(16, Swar.indexOfAny(bytes, 0, 16, Swar.NULL, Swar.broadcast(0x01), Swar.broadcast(0x0F)));
+        assertEquals(16, Swar.skipWords(bytes, 0, 16, Characters.QUESTION_MARK, Swar.NULL));
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -44,6 +45,231 @@ public class TestParsePerf {
         System.err.println("time " + ((end - start)/round));
     }
 
+    @Disabled
+    @Test
+    public void parsePath() {
+        Path path = Paths.get("src/test/resources/test.html");
+        long start = System.nanoTime();
+        for (int i = 0; i < round; i++) {
+            parser.parse(path);
+        }
+        long end = System.nanoTime();
+        System.err.println("time " + ((end - start)/round));
+    }
+
+    // compare the scalar and SWAR scanning of the Latin-1 input: run with -Dch.digitalfondue.jfiveparse.swar=false for the scalar version
+    @Disabled
+    @Test
+    public void parseLatin1Wikipedia() throws IOException {
+        String wikipedia = Files.readString(Paths.get("src/test/resources/wikipedia.html")).replaceAll("[^\\u0000-\\u00FF]", "?");
+        for (int i = 0; i < 1000; i++) {
+            parser.parse(wikipedia);
+        }
+        int wikipediaRound = 2_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < wikipediaRound; i++) {
+            parser.parse(wikipedia);
+        }
+        long end = System.nanoTime();
+        System.err.println("swar " + Swar.ENABLED + " time " + ((end - start)/wikipediaRound));
+    }
+
+    // documents with large inline scripts and styles, as in pages that bundle their javascript
+    @Disabled
+    @Test
+    public void parseScriptHeavy() {
+        StringBuilder sb = new StringBuilder("<!doctype html><html><head><title>scripts &amp; styles</title>");
+        for (int i = 0; i < 20; i++) {
+            sb.append("<style>");
+            for (int j = 0; j < 200; j++) {
+                sb.append(".c").append(j).append(" > a:hover { color: #").append(j % 10).append("ab; margin: 0 auto }\n");
+            }
+            // half of the scripts are wrapped in a legacy comment: their content is tokenized as escaped script data
+            boolean escaped = i % 2 == 0;
+            sb.append(escaped ? "</style><script><!--\n" : "</style><script>");
+            for (int j = 0; j < 500; j++) {
+                sb.append("function f").append(j).append("(a, b) { return a < b ? a - b : document.write('<b>' + a + '</b>'); }\n");
+            }
+            sb.append(escaped ? "//--></script>" : "</script>");
+        }
+        sb.append("</head><body><textarea>");
+        for (int j = 0; j < 2000; j++) {
+            sb.append("line ").append(j).append(" &lt;not a tag&gt;\n");
+        }
+        String scripts = sb.append("</textarea></body></html>").toString();
+
+        for (int i = 0; i < 200; i++) {
+            parser.parse(scripts);
+        }
+        int scriptsRound = 1_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < scriptsRound; i++) {
+            parser.parse(scripts);
+        }
+        long end = System.nanoTime();
+        System.err.println("length " + scripts.length() + " time " + ((end - start)/scriptsRound));
+    }
+
+    // markup dominated by tags, attributes and the whitespace between them: mostly the tag and attribute states
+    @Disabled
+    @Test
+    public void parseAttributeHeavy() {
+        StringBuilder sb = new StringBuilder("<!DOCTYPE html PUBLIC   \"-//W3C//DTD XHTML 1.0 Strict//EN\"\n   \"http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd\"><body>");
+        for (int i = 0; i < 5_000; i++) {
+            sb.append("<div   class=\"row c").append(i).append("\"   data-id=").append(i)
+                    .append("  hidden\n   style='color: red'>")
+                    .append("<a HREF=/p/").append(i).append("?a=1&amp;b=2 target = _blank >link</a>")
+                    .append("<input type=checkbox checked disabled value = \"").append(i).append("\" /></div>\n");
+        }
+        String markup = sb.toString();
+
+        for (int i = 0; i < 100; i++) {
+            parser.parse(markup);
+        }
+        int markupRound = 300;
+        long start = System.nanoTime();
+        for (int i = 0; i < markupRound; i++) {
+            parser.parse(markup);
+        }
+        long end = System.nanoTime();
+        System.err.println("length " + markup.length() + " time " + ((end - start)/markupRound));
+    }
+
+    // named character references everywhere: the entity lookup
+    @Disabled
+    @Test
+    public void parseEntityHeavy() {
+        StringBuilder sb = new StringBuilder("<!DOCTYPE html><body><table>");
+        for (int i = 0; i < 5_000; i++) {
+            sb.append("<tr><td>&nbsp;</td><td>").append(i).append("&nbsp;&euro;</td><td>&laquo;&hellip;&raquo;</td>")
+                    .append("<td title='a&amp;b &copy; &notin;'>&lt;&NotNestedGreaterGreater;&gt; &amp &quot;</td></tr>\n");
+        }
+        String markup = sb.toString();
+
+        for (int i = 0; i < 100; i++) {
+            parser.parse(markup);
+        }
+        int markupRound = 300;
+        long start = System.nanoTime();
+        for (int i = 0; i < markupRound; i++) {
+            parser.parse(markup);
+        }
+        long end = System.nanoTime();
+        System.err.println("length " + markup.length() + " time " + ((end - start)/markupRound));
+    }
+
+    // deeply nested elements followed by many tags checking the scopes: the time must grow linearly with the depth
+    @Disabled
+    @Test
+    public void parseDeeplyNested() {
+        for (int depth : new int[] {500, 1_000, 2_000, 4_000}) {
+            StringBuilder sb = new StringBuilder("<!doctype html><body>");
+            sb.append("<div>".repeat(depth));
+            for (int i = 0; i < depth; i++) {
+                sb.append("<p>a</p><li>b</li><button>c</button></p><td>d</td>");
+            }
+            String markup = sb.toString();
+            for (int i = 0; i < 20; i++) {
+                parser.parse(markup);
+            }
+            int depthRound = 50;
+            long start = System.nanoTime();
+            for (int i = 0; i < depthRound; i++) {
+                parser.parse(markup);
+            }
+            long end = System.nanoTime();
+            System.err.println("depth " + depth + " time " + ((end - start) / depthRound));
+        }
+    }
+
+    // misnested formatting elements over a deep stack and a long list of active formatting elements: the time must
+    // grow linearly with the size
+    @Disabled
+    @Test
+    public void parsePathologicalFormatting() {
+        for (int size : new int[] {1_000, 2_000, 4_000, 8_000}) {
+            StringBuilder sb = new StringBuilder("<!doctype html><body><b>");
+            sb.append("<div>".repeat(size));
+            for (int i = 0; i < size; i++) {
+                sb.append("<em id=").append(i).append("><b><i>x</b>y</i></b>z");
+            }
+            String markup = sb.toString();
+            for (int i = 0; i < 20; i++) {
+                parser.parse(markup);
+            }
+            int sizeRound = 50;
+            long start = System.nanoTime();
+            for (int i = 0; i < sizeRound; i++) {
+                parser.parse(markup);
+            }
+            long end = System.nanoTime();
+            System.err.println("size " + size + " time " + ((end - start) / sizeRound));
+        }
+    }
+
+    // many small documents: a new parser state for each of them, or a reused session
+    @Disabled
+    @Test
+    public void parseSmallDocumentsWithSession() {
+        String small = "<!doctype html><html><head><title>item</title></head><body><table><tr><td><b>a</b> &amp; b</td></tr></table>"
+                + "<ul><li><a href=/x>x</a><li><a href=/y>y</a></ul></body></html>";
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        ParserSession session = parser.newSession();
+        int smallRound = 500_000;
+        for (int k = 0; k < 3; k++) {
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < smallRound; i++) {
+                parser.parse(small);
+            }
+            long end = System.nanoTime();
+            System.err.println("parser time " + ((end - start) / smallRound) + " bytes " + ((threads.getCurrentThreadAllocatedBytes() - allocated) / smallRound));
+
+            allocated = threads.getCurrentThreadAllocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < smallRound; i++) {
+                session.parse(small);
+            }
+            end = System.nanoTime();
+            System.err.println("session time " + ((end - start) / smallRound) + " bytes " + ((threads.getCurrentThreadAllocatedBytes() - allocated) / smallRound));
+        }
+    }
+
+    // time to first parse in a fresh JVM, with and without named character references (the entity table is loaded
+    // only for the first one)
+    @Disabled
+    @Test
+    public void startup() throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+        for (String withEntities : new String[] {"false", "true"}) {
+            long total = 0;
+            int runs = 10;
+            for (int i = 0; i < runs; i++) {
+                Process process = new ProcessBuilder(java, "-cp", classpath, FirstParse.class.getName(), withEntities)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .redirectOutput(ProcessBuilder.Redirect.PIPE)
+                        .start();
+                String out = new String(process.getInputStream().readAllBytes()).trim();
+                assertEquals(0, process.waitFor());
+                total += Long.parseLong(out);
+            }
+            System.err.println("entities " + withEntities + " first parse time " + (total / runs));
+        }
+    }
+
+    public static class FirstParse {
+        public static void main(String[] args) throws IOException {
+            String markup = Files.readString(Paths.get("src/test/resources/test.html"));
+            if (!Boolean.parseBoolean(args[0])) {
+                markup = markup.replace("&", "and");
+            }
+            long start = System.nanoTime();
+            new Parser().parse(markup);
+            System.out.println(System.nanoTime() - start);
+        }
+    }
+
     @Disabled
     @Test
     public void parse2() {
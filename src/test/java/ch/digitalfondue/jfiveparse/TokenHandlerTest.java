@@ -0,0 +1,128 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenHandlerTest {
+
+    private static class Recorder implements TokenHandler {
+        final StringBuilder sb = new StringBuilder();
+
+        @Override
+        public void startTag(String name, Attributes attributes, boolean selfClosing) {
+            sb.append('<').append(name);
+            for (AttributeNode a : attributes) {
+                sb.append(' ').append(a.getName()).append("=[").append(a.getValue()).append(']');
+            }
+            sb.append(selfClosing ? "/>" : ">");
+        }
+
+        @Override
+        public void endTag(String name) {
+            sb.append("</").append(name).append('>');
+        }
+
+        @Override
+        public void characters(char[] chars, int offset, int length) {
+            sb.append('"').append(chars, offset, length).append('"');
+        }
+
+        @Override
+        public void comment(String data) {
+            sb.append("<!--").append(data).append("-->");
+        }
+
+        @Override
+        public void doctype(String name, String publicId, String systemId, boolean forceQuirks) {
+            sb.append("<!DOCTYPE ").append(name).append(' ').append(publicId).append(' ').append(systemId).append(' ').append(forceQuirks).append('>');
+        }
+
+        @Override
+        public void processingInstruction(String target, String data) {
+            sb.append("<?").append(target).append(' ').append(data).append('>');
+        }
+
+        @Override
+        public void endOfFile() {
+            sb.append("EOF");
+        }
+    }
+
+    private static String tokenize(String input) {
+        Recorder recorder = new Recorder();
+        new Parser().tokenize(input, recorder);
+        Recorder fromReader = new Recorder();
+        new Parser().tokenize(new StringReader(input), fromReader);
+        assertEquals(recorder.sb.toString(), fromReader.sb.toString());
+        return recorder.sb.toString();
+    }
+
+    @Test
+    void tokens() {
+        assertEquals("<!DOCTYPE html null null false><p class=[a&b] id=[x]>\"a&b < c\"</p><br/><!-- c -->\"\\u20ac\"EOF".replace("\\u20ac", "€"),
+                tokenize("<!doctype html><P CLASS='a&amp;b' id=x>a&amp;b &lt; c</p><br/><!-- c -->&euro;"));
+        assertEquals("EOF", tokenize(""));
+        assertEquals("<!DOCTYPE null null null true>EOF", tokenize("<!doctype>"));
+    }
+
+    @Test
+    void rawTextElements() {
+        assertEquals("<script>\"if (a<b) { x = '<p>'; }\"</script><p>\"&\"EOF", tokenize("<script>if (a<b) { x = '<p>'; }</script><p>&amp"));
+        assertEquals("<title>\"a<b>&\"</title><style>\"<b>&amp;\"</style>EOF", tokenize("<title>a<b>&amp;</title><style><b>&amp;</style>"));
+        assertEquals("<textarea>\"a\n\"</textarea><pre>\"b\"</pre>EOF", tokenize("<textarea>\na\n</textarea><pre>\nb</pre>"));
+        assertEquals("<plaintext>\"</plaintext><p>\"EOF", tokenize("<plaintext></plaintext><p>"));
+        assertEquals("<noscript>\"<p>\"</noscript>EOF", tokenize("<noscript><p></noscript>"));
+        Recorder noScripting = new Recorder();
+        new Parser(Set.of(Option.SCRIPTING_DISABLED)).tokenize("<noscript><p></noscript>", noScripting);
+        assertEquals("<noscript><p></noscript>EOF", noScripting.sb.toString());
+    }
+
+    @Test
+    void foreignContent() {
+        assertEquals("<svg><script>\"<\"</script>\"xy\"</svg><!--[CDATA[z]]-->EOF",
+                tokenize("<svg><script><![CDATA[<]]></script><![CDATA[x]]>y</svg><![CDATA[z]]>"));
+        assertEquals("<math><mi/></math><style>\"<b>\"</style>EOF", tokenize("<math><mi/></math><style><b></style>"));
+    }
+
+    @Test
+    void extractLinks() throws IOException {
+        String content = Files.readString(Paths.get("src/test/resources/wikipedia.html"));
+        Set<String> expected = new HashSet<>();
+        new Parser().parse(content).getAllNodesMatchingAsStream(Selector.parseSelector("a[href]"))
+                .forEach(n -> expected.add(((Element) n).getAttribute("href")));
+
+        Set<String> links = new HashSet<>();
+        new Parser().tokenize(content, new TokenHandler() {
+            @Override
+            public void startTag(String name, Attributes attributes, boolean selfClosing) {
+                if ("a".equals(name) && attributes.containsKey("href")) {
+                    links.add(attributes.getNamedItem("href"));
+                }
+            }
+        });
+        assertEquals(expected, links);
+    }
+}
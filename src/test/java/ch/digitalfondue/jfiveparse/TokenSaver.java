@@ -39,6 +39,13 @@ class TokenSaver extends TreeConstructor {
         tokens.add(new Token.CharacterToken(cb));
     }
 
+    @Override
+    public void emitCharacters(char[] chars, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            emitCharacter(chars[offset + i]);
+        }
+    }
+
     @Override
     public void emitComment(ResizableCharBuilder comment) {
         tokens.add(new Token.CommentToken(comment.toString()));
@@ -3,7 +3,9 @@ package ch.digitalfondue.jfiveparse;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
 
 import static ch.digitalfondue.jfiveparse.TokenizerState.invalidCharacterReference;
 
@@ -15,4 +17,40 @@ class TokenizerCharacterReferenceTest {
         Arrays.sort(c);
         Assertions.assertArrayEquals(invalidCharacterReference, c);
     }
+
+    @Test
+    void allNamedCharacterReferences() throws IOException {
+        Map<String, int[]> entities = GenerateEntities.readEntitiesJson();
+        Assertions.assertEquals(2231, entities.size());
+        Parser parser = new Parser();
+        char[] dest = new char[Entities.MAX_REPLACEMENT_LENGTH];
+        for (var kv : entities.entrySet()) {
+            String name = kv.getKey();
+            String expected = new String(kv.getValue(), 0, kv.getValue().length);
+
+            int node = Entities.ROOT;
+            for (int i = 0; i < name.length(); i++) {
+                node = Entities.ENTITIES.child(node, name.charAt(i));
+                Assertions.assertTrue(node != -1, name);
+            }
+            Assertions.assertTrue(Entities.ENTITIES.isComplete(node), name);
+            int length = Entities.ENTITIES.copyReplacement(node, dest);
+            Assertions.assertEquals(expected, new String(dest, 0, length), name);
+
+            // in text, with a following character that could extend the name
+            Assertions.assertEquals(expected, parser.parseFragment(new Element("div"), "&" + name + "\u0000").get(0).getTextContent(), name);
+            Element attr = (Element) parser.parseFragment(new Element("div"), "<p title='&" + name + "'>").get(0);
+            Assertions.assertEquals(expected, attr.getAttribute("title"), name);
+        }
+    }
+
+    @Test
+    void longestMatch() {
+        Parser parser = new Parser();
+        Assertions.assertEquals("\u00acit;", parser.parseFragment(new Element("div"), "&notit;").get(0).getTextContent());
+        Assertions.assertEquals("\u2209", parser.parseFragment(new Element("div"), "&notin;").get(0).getTextContent());
+        Assertions.assertEquals("&zzz;", parser.parseFragment(new Element("div"), "&zzz;").get(0).getTextContent());
+        Assertions.assertEquals("&notit;", ((Element) parser.parseFragment(new Element("div"), "<p title='&notit;'>").get(0)).getAttribute("title"));
+        Assertions.assertEquals("\u00ac", ((Element) parser.parseFragment(new Element("div"), "<p title='&not'>").get(0)).getAttribute("title"));
+    }
 }
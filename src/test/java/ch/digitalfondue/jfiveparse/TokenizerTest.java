@@ -151,7 +151,7 @@ public class TokenizerTest {
         tokenizer.setState(initialState.ordinal());
 
         if (desc.lastStartTag != null) {
-            tokenizer.lastEmittedStartTagName = desc.lastStartTag.toCharArray();
+            tokenizer.lastEmittedStartTagName.set(desc.lastStartTag);
         }
 
         ProcessedInputStream is = new ProcessedInputStreamWithParseError(desc.input, tokenSaver);
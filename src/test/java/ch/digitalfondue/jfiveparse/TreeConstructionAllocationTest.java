@@ -0,0 +1,66 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Once a session is warmed up, the tree construction must not allocate anything except the nodes it builds: the
+ * bytes allocated by a parse are compared with the bytes allocated by a deep copy of the resulting document. The
+ * markup has no text and no attributes, whose storage belongs to the tokenizer, and uses the stack of open elements,
+ * the list of active formatting elements (markers, Noah's Ark clause, reconstruction, adoption agency algorithm) and
+ * the stack of template insertion modes.
+ */
+class TreeConstructionAllocationTest {
+
+    private static final String MARKUP = "<table><tr><td><b><i><u></b></i></u><p><em></p><template><a></a><tr></template></td></tr></table>"
+            + "<b><div></b></div><object><i></object></i><p><s><s><s><s></p><ul><li><code><li></code></ul>";
+    private static final int REPEAT = 500;
+    // for the conversion of the input and the child lists, not sized as in the copy: an allocation for each token
+    // or for each element would be well above
+    private static final int MAX_BYTES_PER_CHAR = 4;
+
+    @Test
+    void parseAllocatesOnlyTheNodes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        String markup = "<!doctype html><body>" + MARKUP.repeat(REPEAT);
+        ParserSession session = new Parser().newSession();
+        for (int i = 0; i < 200; i++) {
+            session.parse(markup);
+        }
+
+        // best of a few rounds, for not counting what the jit compilation leaves behind
+        long extra = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = threads.getCurrentThreadAllocatedBytes();
+            Document document = session.parse(markup);
+            long parsed = threads.getCurrentThreadAllocatedBytes() - start;
+
+            start = threads.getCurrentThreadAllocatedBytes();
+            document.cloneNode(true);
+            long copied = threads.getCurrentThreadAllocatedBytes() - start;
+            extra = Math.min(extra, parsed - copied);
+        }
+        assertTrue(extra <= (long) MAX_BYTES_PER_CHAR * markup.length(), "bytes allocated beyond the nodes: " + extra + " for " + markup.length() + " chars");
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Inputs that make the adoption agency algorithm and the list of active formatting elements work hard: the parse
+ * time must grow linearly with the size of the input. The size is multiplied by 16, a quadratic cost would multiply
+ * the time by 256.
+ */
+class TreeConstructionPathologicalTest {
+
+    private static final int SIZE = 2_000;
+    static final int FACTOR = 16;
+    // generous, as the timings are noisy
+    private static final int MAX_TIME_RATIO = 64;
+    private static final int WARM_UP = 20;
+    private static final int ATTEMPTS = 3;
+
+    private final Parser parser = new Parser();
+
+    @Test
+    void distinctFormattingElements() {
+        // many entries in the list of active formatting elements, none of them equal (Noah's Ark clause)
+        assertLinear(n -> "<body>" + repeatNumbered("<b id=", ">", n) + "</b>".repeat(n));
+        assertEquals(100, parser.parse("<body>" + repeatNumbered("<b id=", ">", 100)).getElementsByTagName("b").size());
+    }
+
+    @Test
+    void unmatchedFormattingEndTags() {
+        // end tags without an element in the list of active formatting elements, above a tall stack
+        assertLinear(n -> "<body>" + "<i>".repeat(n) + "</b>".repeat(n));
+    }
+
+    @Test
+    void misnestedFormattingElements() {
+        assertLinear(n -> "<body>" + "<b><i><a>x</b>y</i>z</a>".repeat(n));
+    }
+
+    @Test
+    void formattingElementAboveManyBlocks() {
+        // each end tag runs the adoption agency algorithm with a furthest block in a deep stack
+        assertLinear(n -> "<body><b>" + "<div>".repeat(n) + "</b>x".repeat(n));
+        Document document = parser.parse("<body><b>" + "<div>".repeat(10) + "</b>x".repeat(10));
+        assertEquals(11, document.getElementsByTagName("b").size());
+        assertEquals(10, document.getElementsByTagName("div").size());
+    }
+
+    @Test
+    void nestedFormattingElementsAndBlocks() {
+        assertLinear(n -> "<body>" + "<b><i><a><div>".repeat(n) + "</a></i></b>".repeat(n));
+    }
+
+    @Test
+    void reconstructedFormattingElements() {
+        // the formatting elements closed by each paragraph are reconstructed in the next one, the Noah's Ark clause
+        // keeps the list short
+        assertLinear(n -> "<body>" + "<p><b><i><u>x</p>".repeat(n));
+    }
+
+    @Test
+    void formattingEntriesReleasedAtEndOfParsing() {
+        // the unclosed formatting elements are still in the list at the end of the input
+        Document document = parser.parse("<body><b><i><a href=x>x<p>y<table><tr><td><u>z");
+        for (String name : new String[] {"b", "i", "a", "u"}) {
+            for (Element element : document.getElementsByTagName(name)) {
+                assertNull(element.formattingEntry, name);
+            }
+        }
+    }
+
+    private static String repeatNumbered(String before, String after, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(before).append(i).append(after);
+        }
+        return sb.toString();
+    }
+
+    private void assertLinear(IntFunction<String> markup) {
+        String small = markup.apply(SIZE);
+        String large = markup.apply(SIZE * FACTOR);
+        assertLinear(() -> parser.parse(small), () -> parser.parse(large));
+    }
+
+    /**
+     * Assert that the large task, on an input {@link #FACTOR} times larger than the one of the small task, does not
+     * take more than {@link #MAX_TIME_RATIO} times longer.
+     */
+    static void assertLinear(Runnable small, Runnable large) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled());
+        for (int i = 0; i < WARM_UP; i++) {
+            small.run();
+        }
+        // a quadratic cost fails every attempt, a pause only the one it hits
+        long smallTime = 0;
+        long largeTime = 0;
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            smallTime = time(threads, small);
+            largeTime = time(threads, large);
+            if (largeTime < smallTime * MAX_TIME_RATIO) {
+                return;
+            }
+        }
+        fail("time " + smallTime + "ns for the small input, " + largeTime + "ns for the " + FACTOR + " times larger one");
+    }
+
+    // the cpu time of the thread: the other processes and the compiler or collector threads do not count
+    private static long time(ThreadMXBean threads, Runnable task) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = threads.getCurrentThreadCpuTime();
+            task.run();
+            best = Math.min(best, threads.getCurrentThreadCpuTime() - start);
+        }
+        return best;
+    }
+}
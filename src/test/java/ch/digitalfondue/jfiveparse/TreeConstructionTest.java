@@ -67,6 +67,14 @@ public class TreeConstructionTest {
             document = parser.parse(new StringReader(treeTest.data));
             rendered = renderDocument(document);
             assertEquals(treeTest.document, rendered);
+
+            // then fed one character at a time
+            IncrementalSession session = parser.newIncrementalSession();
+            for (char c : treeTest.data.toCharArray()) {
+                session.feed(new char[] { c });
+            }
+            rendered = renderDocument(session.finish());
+            assertEquals(treeTest.document, rendered);
         }
     }
 
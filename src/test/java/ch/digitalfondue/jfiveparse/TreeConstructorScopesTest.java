@@ -0,0 +1,146 @@
+/**
+ * Copyright © 2015 digitalfondue (info@digitalfondue.ch)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package ch.digitalfondue.jfiveparse;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TreeConstructorScopesTest {
+
+    private static final String[] HTML = {"html", "body", "div", "p", "li", "ol", "ul", "button", "table", "template",
+            "td", "th", "tr", "caption", "applet", "object", "marquee", "select", "b", "i", "h1", "dd", "dt", "address", "span", "unknown"};
+
+    @Test
+    void sameAnswersAsScanningTheStack() {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            List<Element> openElements = new ArrayList<>();
+            TreeConstructorScopes scopes = new TreeConstructorScopes();
+            for (int step = 0; step < 300; step++) {
+                int action = random.nextInt(10);
+                if (action < 6 || openElements.isEmpty()) {
+                    Element e = randomElement(random);
+                    openElements.add(e);
+                    scopes.push(e);
+                } else if (action < 9) {
+                    openElements.remove(openElements.size() - 1);
+                    scopes.pop();
+                } else if (random.nextBoolean()) {
+                    // as in the adoption agency algorithm: an element is replaced by a copy placed higher in the stack
+                    int from = random.nextInt(openElements.size());
+                    int to = from + random.nextInt(openElements.size() - from);
+                    Element e = openElements.remove(from);
+                    openElements.add(to, TreeConstructor.buildElement(e.nodeName, e.nodeNameID, e.originalNodeName, e.namespaceURI, e.namespaceID, null));
+                    scopes.reorder(openElements.toArray(new Element[0]), from, to);
+                } else {
+                    int from = random.nextInt(openElements.size());
+                    openElements.remove(from);
+                    if (!openElements.isEmpty()) {
+                        int added = random.nextInt(openElements.size());
+                        openElements.add(added, randomElement(random));
+                        from = Math.min(from, added);
+                    }
+                    scopes.rebuild(openElements.toArray(new Element[0]), openElements.size(), from);
+                }
+                check(openElements, scopes);
+            }
+        }
+    }
+
+    private static Element randomElement(Random random) {
+        int kind = random.nextInt(20);
+        if (kind == 0) {
+            return TreeConstructor.buildElement("title", Common.tagNameToID("title"), "title", Node.NAMESPACE_SVG, Node.NAMESPACE_SVG_ID, null);
+        } else if (kind == 1) {
+            return TreeConstructor.buildElement("mi", 0, "mi", Node.NAMESPACE_MATHML, Node.NAMESPACE_MATHML_ID, null);
+        } else if (kind == 2) {
+            // same name as an html element, but in another namespace
+            return TreeConstructor.buildElement("li", Common.ELEMENT_LI_ID, "li", Node.NAMESPACE_SVG, Node.NAMESPACE_SVG_ID, null);
+        }
+        String name = HTML[random.nextInt(HTML.length)];
+        return TreeConstructor.buildElement(name, Common.tagNameToID(name), name, Node.NAMESPACE_HTML, Node.NAMESPACE_HTML_ID, null);
+    }
+
+    private static void check(List<Element> openElements, TreeConstructorScopes scopes) {
+        for (int id = 1; id < Common.ELEMENT_ID_COUNT; id++) {
+            assertEquals(inScope(openElements, id, TreeConstructorScopes.SCOPE), scopes.hasElementInScope(id, TreeConstructorScopes.SCOPE));
+            assertEquals(inScope(openElements, id, TreeConstructorScopes.BUTTON_SCOPE), scopes.hasElementInScope(id, TreeConstructorScopes.BUTTON_SCOPE));
+            assertEquals(inScope(openElements, id, TreeConstructorScopes.LIST_ITEM_SCOPE), scopes.hasElementInScope(id, TreeConstructorScopes.LIST_ITEM_SCOPE));
+            assertEquals(inScope(openElements, id, TreeConstructorScopes.TABLE_SCOPE), scopes.hasElementInScope(id, TreeConstructorScopes.TABLE_SCOPE));
+            assertEquals(inScope(openElements, id, TreeConstructorScopes.SPECIAL_SCOPE), scopes.hasElementInScope(id, TreeConstructorScopes.SPECIAL_SCOPE));
+            assertEquals(topmost(openElements, id), scopes.topmost(id));
+        }
+        int topmostSpecial = -1;
+        for (int i = 0; i < openElements.size(); i++) {
+            Element e = openElements.get(i);
+            assertEquals(inScope(openElements, e), scopes.isInScope(i, TreeConstructorScopes.SCOPE));
+            if (Common.isSpecialCategory(e)) {
+                topmostSpecial = i;
+            }
+        }
+        assertEquals(topmostSpecial, scopes.topmostSpecial());
+    }
+
+    private static int topmost(List<Element> openElements, int tagNameID) {
+        for (int i = openElements.size() - 1; i >= 0; i--) {
+            if (Common.isHtmlNS(openElements.get(i), tagNameID)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // the reference: walk the stack from the top
+    private static boolean inScope(List<Element> openElements, int tagNameID, int scope) {
+        for (int i = openElements.size() - 1; i >= 0; i--) {
+            Element node = openElements.get(i);
+            if (Common.isHtmlNS(node, tagNameID)) {
+                return true;
+            } else if (isDelimiter(node, scope)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean inScope(List<Element> openElements, Element e) {
+        for (int i = openElements.size() - 1; i >= 0; i--) {
+            Element node = openElements.get(i);
+            if (node == e) {
+                return true;
+            } else if (Common.isInCommonInScope(node)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDelimiter(Element node, int scope) {
+        return switch (scope) {
+            case TreeConstructorScopes.SCOPE -> Common.isInCommonInScope(node);
+            case TreeConstructorScopes.BUTTON_SCOPE -> Common.isInCommonInScope(node) || Common.isHtmlNS(node, Common.ELEMENT_BUTTON_ID);
+            case TreeConstructorScopes.LIST_ITEM_SCOPE -> Common.isInCommonInScope(node) || Common.isHtmlNS(node, Common.ELEMENT_OL_ID) || Common.isHtmlNS(node, Common.ELEMENT_UL_ID);
+            case TreeConstructorScopes.TABLE_SCOPE -> Common.isHtmlNS(node, Common.ELEMENT_HTML_ID) || Common.isHtmlNS(node, Common.ELEMENT_TABLE_ID) || Common.isHtmlNS(node, Common.ELEMENT_TEMPLATE_ID);
+            // the loop of the "li", "dd" and "dt" start tags
+            default -> Common.isSpecialCategory(node) && !(Common.isHtmlNS(node, Common.ELEMENT_ADDRESS_ID) || Common.isHtmlNS(node, Common.ELEMENT_DIV_ID) || Common.isHtmlNS(node, Common.ELEMENT_P_ID));
+        };
+    }
+}